@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.mspmote;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import org.contikios.cooja.mote.memory.MemoryInterface.Symbol;
+
+import se.sics.mspsim.util.DebugInfo;
+import se.sics.mspsim.util.ELF;
+
+/**
+ * Process-wide cache of parsed firmware files.
+ *
+ * Firmwares are identified by path and modification time, so reloaded
+ * simulations and mote types using the same firmware share a single parsed
+ * ELF. A file with a new modification time is hashed, and only parsed again
+ * if its contents changed. Line tables are built on first use.
+ *
+ * The least recently used firmwares are evicted when more than
+ * MAX_FIRMWARES are cached.
+ */
+public class FirmwareCache {
+  private static Logger logger = Logger.getLogger(FirmwareCache.class);
+
+  private static final int MAX_FIRMWARES = 8;
+
+  /* Firmwares by path, in access order */
+  private static final LinkedHashMap<String, Firmware> cache =
+    new LinkedHashMap<String, Firmware>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String, Firmware> eldest) {
+      return size() > MAX_FIRMWARES;
+    }
+  };
+
+  private static class Firmware {
+    long lastModified;
+    final String hash;
+    final ELF elf;
+    LineTable lines = null;
+    Map<String, Symbol> variables = null;
+
+    Firmware(long lastModified, String hash, ELF elf) {
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.elf = elf;
+    }
+  }
+
+  /**
+   * Returns the parsed firmware, parsing it only if the file was not
+   * parsed before or has changed since.
+   *
+   * @param file Firmware file
+   * @return Parsed firmware
+   * @throws IOException Firmware could not be read
+   */
+  public static ELF getELF(File file) throws IOException {
+    return getFirmware(file).elf;
+  }
+
+  /**
+   * Returns the line table of the firmware, building it on first use.
+   *
+   * @param file Firmware file
+   * @return Line table
+   * @throws IOException Firmware could not be read
+   */
+  public static LineTable getLineTable(File file) throws IOException {
+    Firmware firmware = getFirmware(file);
+    synchronized (firmware) {
+      if (firmware.lines == null) {
+        firmware.lines = new LineTable(firmware.elf);
+      }
+      return firmware.lines;
+    }
+  }
+
+  /**
+   * Returns the firmware variables, shared by all motes using the firmware.
+   *
+   * @param file Firmware file
+   * @return Unmodifiable map of variables by name
+   * @throws IOException Firmware could not be read
+   */
+  public static Map<String, Symbol> getVariables(File file) throws IOException {
+    Firmware firmware = getFirmware(file);
+    synchronized (firmware) {
+      if (firmware.variables == null) {
+        firmware.variables = MspMoteMemory.createSymbolMap(firmware.elf.getMap().getAllEntries());
+      }
+      return firmware.variables;
+    }
+  }
+
+  /**
+   * Drops all cached firmwares.
+   */
+  public static synchronized void clear() {
+    cache.clear();
+  }
+
+  private static Firmware getFirmware(File file) throws IOException {
+    String path = file.getPath();
+    long lastModified = file.lastModified();
+
+    Firmware cached;
+    synchronized (FirmwareCache.class) {
+      cached = cache.get(path);
+      if (cached != null && cached.lastModified == lastModified) {
+        return cached;
+      }
+    }
+
+    /* New or touched file: parse only if contents changed */
+    String hash = hashFile(file);
+    if (cached != null && cached.hash.equals(hash)) {
+      synchronized (FirmwareCache.class) {
+        cached.lastModified = lastModified;
+      }
+      return cached;
+    }
+
+    logger.debug("Parsing firmware: " + path);
+    Firmware firmware = new Firmware(lastModified, hash, ELF.readELF(path));
+    synchronized (FirmwareCache.class) {
+      cache.put(path, firmware);
+    }
+    return firmware;
+  }
+
+  private static String hashFile(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw (IOException) new IOException("Error: " + e.getMessage()).initCause(e);
+    }
+
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        digest.update(buf, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (byte b: digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Executable addresses of source code lines.
+   *
+   * Lines and addresses are kept per source file in sorted primitive arrays.
+   * If several addresses belong to the same line, the last one is kept.
+   */
+  public static class LineTable {
+    private final File[] files;
+    private final int[][] lines;
+    private final int[][] addresses;
+
+    public LineTable(ELF elf) {
+      LinkedHashMap<File, ArrayList<int[]>> fileLines = new LinkedHashMap<File, ArrayList<int[]>>();
+      ArrayList<Integer> executable = elf.getDebug() != null ?
+          elf.getDebug().getExecutableAddresses() : null;
+
+      if (executable != null) {
+        /* Source files are canonicalized once per path */
+        HashMap<String, File> canonicalFiles = new HashMap<String, File>();
+
+        for (int address: executable) {
+          DebugInfo info = elf.getDebugInfo(address);
+          if (info == null) {
+            continue;
+          }
+          if (info.getPath() == null && info.getFile() == null) {
+            continue;
+          }
+          if (info.getLine() < 0) {
+            continue;
+          }
+
+          String key = info.getPath() + "\u0000" + info.getFile();
+          File file = canonicalFiles.get(key);
+          if (file == null) {
+            if (info.getPath() != null) {
+              file = new File(info.getPath(), info.getFile());
+            } else {
+              file = new File(info.getFile());
+            }
+            try {
+              file = file.getCanonicalFile();
+            } catch (IOException e) {
+            } catch (java.security.AccessControlException e) {
+            }
+            canonicalFiles.put(key, file);
+          }
+
+          ArrayList<int[]> entries = fileLines.get(file);
+          if (entries == null) {
+            entries = new ArrayList<int[]>();
+            fileLines.put(file, entries);
+          }
+          entries.add(new int[] { info.getLine(), address });
+        }
+      }
+
+      files = fileLines.keySet().toArray(new File[fileLines.size()]);
+      lines = new int[files.length][];
+      addresses = new int[files.length][];
+      for (int f = 0; f < files.length; f++) {
+        ArrayList<int[]> entries = fileLines.get(files[f]);
+
+        /* Sort by line, keeping order of addresses within a line */
+        long[] sorted = new long[entries.size()];
+        for (int i = 0; i < sorted.length; i++) {
+          sorted[i] = ((long) entries.get(i)[0] << 32) | i;
+        }
+        Arrays.sort(sorted);
+
+        int[] l = new int[sorted.length];
+        int[] a = new int[sorted.length];
+        int n = 0;
+        for (long s: sorted) {
+          int[] entry = entries.get((int) s);
+          if (n > 0 && l[n-1] == entry[0]) {
+            a[n-1] = entry[1]; /* Last address wins */
+          } else {
+            l[n] = entry[0];
+            a[n] = entry[1];
+            n++;
+          }
+        }
+        lines[f] = Arrays.copyOf(l, n);
+        addresses[f] = Arrays.copyOf(a, n);
+      }
+    }
+
+    /**
+     * @return Source files with executable lines
+     */
+    public File[] getFiles() {
+      return files.clone();
+    }
+
+    /**
+     * Returns the executable address of a source code line.
+     * If the exact file is not found, a file with the same name is used.
+     *
+     * @param file Source file
+     * @param lineNr Line number
+     * @return Executable address, or -1 if unknown
+     */
+    public int getExecutableAddress(File file, int lineNr) {
+      if (file == null || lineNr < 0) {
+        return -1;
+      }
+
+      int f = -1;
+      for (int i = 0; i < files.length; i++) {
+        if (files[i].equals(file)) {
+          f = i;
+          break;
+        }
+      }
+      if (f < 0) {
+        for (int i = 0; i < files.length; i++) {
+          if (files[i] != null && files[i].getName().equals(file.getName())) {
+            f = i;
+            break;
+          }
+        }
+      }
+      if (f < 0) {
+        return -1;
+      }
+
+      int idx = Arrays.binarySearch(lines[f], lineNr);
+      if (idx < 0) {
+        return -1;
+      }
+      return addresses[f][idx];
+    }
+  }
+}
@@ -36,7 +36,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.HashSet;
 
 import org.apache.log4j.Logger;
 import org.jdom.Element;
@@ -50,6 +50,7 @@ import org.contikios.cooja.Simulation;
 import org.contikios.cooja.Watchpoint;
 import org.contikios.cooja.WatchpointMote;
 import org.contikios.cooja.interfaces.IPAddress;
+import org.contikios.cooja.interfaces.Radio;
 import org.contikios.cooja.mote.memory.MemoryInterface;
 import org.contikios.cooja.motes.AbstractEmulatedMote;
 import org.contikios.cooja.mspmote.interfaces.Msp802154Radio;
@@ -75,7 +76,6 @@ import se.sics.mspsim.util.ConfigManager;
 import se.sics.mspsim.util.DebugInfo;
 import se.sics.mspsim.util.ELF;
 import se.sics.mspsim.util.MapEntry;
-import se.sics.mspsim.util.MapTable;
 import se.sics.mspsim.profiler.SimpleProfiler;
 
 import org.contikios.cooja.mspmote.interfaces.MspClock;
@@ -86,7 +86,7 @@ import org.contikios.cooja.mspmote.interfaces.MspClock;
 public abstract class MspMote extends AbstractEmulatedMote implements Mote, WatchpointMote {
   private static Logger logger = Logger.getLogger(MspMote.class);
 
-  private final static int EXECUTE_DURATION_US = 1; /* We always execute in 1 us steps */
+  private final static int EXECUTE_DURATION_US = 1; /* Active motes execute in 1 us steps */
 
   {
     Visualizer.registerVisualizerSkin(CodeVisualizerSkin.class);
@@ -102,6 +102,22 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
   /* Stack monitoring variables */
   private boolean stopNextInstruction = false;
 
+  /* Breakpoints and watchers that require execution monitoring */
+  private HashSet<Object> executionMonitorUsers = new HashSet<Object>();
+
+  /* Adaptive execution steps, and number of steps per power of two */
+  private int maxQuantum = EXECUTE_DURATION_US;
+  private long quantumTime = -1; /* Wakeup time of the next longer step */
+  private long[] quantumCounts = new long[32];
+  private Radio inputRadio = null;
+  private MspSerial[] inputSerials = null;
+
+  /* Wall-clock time spent executing, and cycles executed */
+  private HashSet<Object> executionTimingUsers = new HashSet<Object>();
+  private volatile boolean timeExecution = false;
+  private long executionNanos = 0;
+  private long executionCycles = 0;
+
   public GenericNode mspNode = null;
 
   public MspMote(MspMoteType moteType, Simulation simulation) {
@@ -116,6 +132,7 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
     if (myMoteType != null) {
       initEmulator(myMoteType.getContikiFirmwareFile());
       myMoteInterfaceHandler = createMoteInterfaceHandler();
+      maxQuantum = myMoteType.getMaxExecutionQuantum();
 
       /* TODO Create COOJA-specific window manager */
       registry.removeComponent("windowManager");
@@ -154,12 +171,6 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
           };
         }
       });
-
-      try {
-        debuggingInfo = ((MspMoteType)getType()).getFirmwareDebugInfo();
-      } catch (IOException e) {
-        throw (RuntimeException) new RuntimeException("Error: " + e.getMessage()).initCause(e);
-      }
     }
   }
 
@@ -214,7 +225,7 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
     node.setup(config);
 
     this.myCpu = node.getCPU();
-    this.myCpu.setMonitorExec(true);
+    this.myCpu.setMonitorExec(false); /* Enabled on demand */
     this.myCpu.setTrace(0); /* TODO Enable */
     
     LogListener ll = new LogListener() {
@@ -232,17 +243,15 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
     
     this.myCpu.getLogger().addLogListener(ll);
 
-    logger.info("Loading firmware from: " + fileELF.getAbsolutePath());
+    logger.debug("Loading firmware from: " + fileELF.getAbsolutePath());
     Cooja.setProgressMessage("Loading " + fileELF.getName());
     node.loadFirmware(((MspMoteType)getType()).getELF());
 
     /* Throw exceptions at bad memory access */
     /*myCpu.setThrowIfWarning(true);*/
 
-    /* Create mote address memory */
-    MapTable map = ((MspMoteType)getType()).getELF().getMap();
-    MapEntry[] allEntries = map.getAllEntries();
-    myMemory = new MspMoteMemory(this, allEntries, myCpu);
+    /* Create mote address memory, with variables shared by all motes of the type */
+    myMemory = new MspMoteMemory(this, ((MspMoteType)getType()).getFirmwareVariables(), myCpu);
 
     myCpu.reset();
   }
@@ -295,7 +304,73 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
   private long skipped = 0;
   
   public void execute(long time) {
-    execute(time, EXECUTE_DURATION_US);
+    /* Steps are only longer when woken as planned */
+    int duration = time == quantumTime ? maxQuantum : EXECUTE_DURATION_US;
+    quantumTime = -1;
+    quantumCounts[31 - Integer.numberOfLeadingZeros(duration)]++;
+    execute(time, duration);
+  }
+
+  /**
+   * Chooses the next execution step when a step ends. If the CPU is in low
+   * power mode, no input is pending and its next scheduled event is at most
+   * the maximum quantum of the mote type away, the mote executes that
+   * quantum when it wakes up for the event. A mote woken at any other time,
+   * for example by input, executes a 1 us step.
+   *
+   * @param stepEnd End of the executed step
+   * @param wakeup Time of the CPU's next scheduled event
+   */
+  private void planExecutionQuantum(long stepEnd, long wakeup) {
+    if (maxQuantum > EXECUTE_DURATION_US
+        && wakeup - stepEnd <= maxQuantum
+        && myCpu.getMode() != MSP430.MODE_ACTIVE
+        && !isInputPending()) {
+      quantumTime = wakeup;
+    }
+  }
+
+  /**
+   * @return True if radio or serial input may soon reach the CPU
+   */
+  protected boolean isInputPending() {
+    if (inputSerials == null) {
+      ArrayList<MspSerial> serials = new ArrayList<MspSerial>();
+      for (MoteInterface intf: myMoteInterfaceHandler.getInterfaces()) {
+        if (intf instanceof MspSerial) {
+          serials.add((MspSerial) intf);
+        }
+      }
+      inputSerials = serials.toArray(new MspSerial[serials.size()]);
+      inputRadio = myMoteInterfaceHandler.getRadio();
+    }
+
+    if (inputRadio != null) {
+      if (inputRadio.isReceiving() || inputRadio.isTransmitting() || inputRadio.isInterfered()) {
+        return true;
+      }
+      if (inputRadio instanceof Msp802154Radio
+          && ((Msp802154Radio) inputRadio).hasPendingInput()) {
+        return true;
+      }
+    }
+    for (MspSerial serial: inputSerials) {
+      if (serial.hasPendingInput()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns how many execution steps of each length the mote has taken.
+   * Element i counts steps of 2^i to 2^(i+1)-1 microseconds.
+   *
+   * @return Number of execution steps per length
+   * @see MspMoteType#setMaxExecutionQuantum(int)
+   */
+  public long[] getExecutionQuanta() {
+    return quantumCounts.clone();
   }
 
   public void execute(long t, int duration) {
@@ -333,9 +408,16 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
     
     /* Execute MSPSim-based mote */
     /* TODO Try-catch overhead */
+    boolean timed = timeExecution;
+    long startNanos = timed ? System.nanoTime() : 0;
+    long startCycles = myCpu.cycles;
     try {
       nextExecute = myCpu.stepMicros(Math.max(0, t-lastExecute), duration) + t + duration;
       lastExecute = t;
+      if (timed) {
+        executionNanos += System.nanoTime() - startNanos;
+      }
+      executionCycles += myCpu.cycles - startCycles;
     } catch (EmulationException e) {
       String trace = e.getMessage() + "\n\n" + getStackTrace();
       throw (ContikiError)
@@ -349,6 +431,7 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
 
     /*logger.debug(t + ": Schedule next wakeup at " + nextExecute);*/
     executed += duration; 
+    planExecutionQuantum(t + duration, nextExecute);
     scheduleNextWakeup(nextExecute);
 
     if (stopNextInstruction) {
@@ -376,6 +459,75 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
     return executeCLICommand("stacktrace");
   }
 
+  /**
+   * Enables MSP430 execution monitoring for the given user.
+   * Monitoring is needed by execution breakpoints and watchers, and stays
+   * enabled until all users have released it.
+   *
+   * @param user Breakpoint or plugin requiring monitoring
+   * @see #releaseExecutionMonitoring(Object)
+   */
+  public synchronized void requestExecutionMonitoring(Object user) {
+    if (executionMonitorUsers.add(user) && executionMonitorUsers.size() == 1) {
+      myCpu.setMonitorExec(true);
+    }
+  }
+
+  /**
+   * @param user Breakpoint or plugin no longer requiring monitoring
+   * @see #requestExecutionMonitoring(Object)
+   */
+  public synchronized void releaseExecutionMonitoring(Object user) {
+    if (executionMonitorUsers.remove(user) && executionMonitorUsers.isEmpty()) {
+      myCpu.setMonitorExec(false);
+    }
+  }
+
+  /**
+   * @return True if MSP430 execution is currently monitored
+   */
+  public synchronized boolean isExecutionMonitored() {
+    return !executionMonitorUsers.isEmpty();
+  }
+
+  /**
+   * Enables measuring the wall-clock time spent executing, for the given user.
+   *
+   * @param user Plugin or visualizer showing the execution speed
+   * @see #releaseExecutionTiming(Object)
+   * @see #getExecutionNanos()
+   */
+  public synchronized void requestExecutionTiming(Object user) {
+    executionTimingUsers.add(user);
+    timeExecution = true;
+  }
+
+  /**
+   * @param user Plugin or visualizer no longer showing the execution speed
+   * @see #requestExecutionTiming(Object)
+   */
+  public synchronized void releaseExecutionTiming(Object user) {
+    executionTimingUsers.remove(user);
+    timeExecution = !executionTimingUsers.isEmpty();
+  }
+
+  /**
+   * Only measured while execution timing is requested.
+   *
+   * @return Wall-clock time spent executing the MSP430 (ns)
+   * @see #requestExecutionTiming(Object)
+   */
+  public long getExecutionNanos() {
+    return executionNanos;
+  }
+
+  /**
+   * @return Number of MSP430 cycles executed by this mote
+   */
+  public long getExecutedCycles() {
+    return executionCycles;
+  }
+
   public int executeCLICommand(String cmd, CommandContext context) {
     return commandHandler.executeCommand(cmd, context);
   }
@@ -413,12 +565,6 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
       myMoteInterfaceHandler = createMoteInterfaceHandler();
     }
 
-    try {
-      debuggingInfo = ((MspMoteType)getType()).getFirmwareDebugInfo();
-    } catch (IOException e) {
-      throw (RuntimeException) new RuntimeException("Error: " + e.getMessage()).initCause(e);
-    }
-
     for (Element element: configXML) {
       String name = element.getName();
 
@@ -553,7 +699,7 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
   /* WatchpointMote */
   private ArrayList<WatchpointListener> watchpointListeners = new ArrayList<WatchpointListener>();
   private ArrayList<MspBreakpoint> watchpoints = new ArrayList<MspBreakpoint>();
-  private Hashtable<File, Hashtable<Integer, Integer>> debuggingInfo = null;
+  private FirmwareCache.LineTable firmwareLines = null; /* Built on first use */
 
   public void addWatchpointListener(WatchpointListener listener) {
     watchpointListeners.add(listener);
@@ -614,36 +760,17 @@ public abstract class MspMote extends AbstractEmulatedMote implements Mote, Watc
   }
 
   public int getExecutableAddressOf(File file, int lineNr) {
-    if (file == null || lineNr < 0 || debuggingInfo == null) {
+    if (file == null || lineNr < 0) {
       return -1;
     }
-
-    /* Match file */
-    Hashtable<Integer, Integer> lineTable = debuggingInfo.get(file);
-    if (lineTable == null) {
-      for (File f: debuggingInfo.keySet()) {
-        if (f != null && f.getName().equals(file.getName())) {
-          lineTable = debuggingInfo.get(f);
-          break;
-        }
-      }
-    }
-    if (lineTable == null) {
-      return -1;
-    }
-
-    /* Match line number */
-    Integer address = lineTable.get(lineNr);
-    if (address != null) {
-      for (Integer l: lineTable.keySet()) {
-        if (l != null && l.intValue() == lineNr) {
-          /* Found line address */
-          return lineTable.get(l);
-        }
+    if (firmwareLines == null) {
+      try {
+        firmwareLines = ((MspMoteType)getType()).getFirmwareLines();
+      } catch (IOException e) {
+        throw (RuntimeException) new RuntimeException("Error: " + e.getMessage()).initCause(e);
       }
     }
-
-    return -1;
+    return firmwareLines.getExecutableAddress(file, lineNr);
   }
 
   private long lastBreakpointCycles = -1;
@@ -32,6 +32,7 @@ package org.contikios.cooja.mspmote;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -48,24 +49,47 @@ import se.sics.mspsim.util.MapEntry;
 
 public class MspMoteMemory implements MemoryInterface {
   private static Logger logger = Logger.getLogger(MspMoteMemory.class);
-  private final ArrayList<MapEntry> mapEntries;
+  private final Map<String, Symbol> symbols;
   private final MemoryLayout memLayout;
 
   private final MSP430 cpu;
 
   public MspMoteMemory(Mote mote, MapEntry[] allEntries, MSP430 cpu) {
-    this.mapEntries = new ArrayList<MapEntry>();
-
-    for (MapEntry entry: allEntries) {
-      if (entry.getType() == MapEntry.TYPE.variable) {
-        mapEntries.add(entry);
-      }
-    }
+    this(mote, createSymbolMap(allEntries), cpu);
+  }
 
+  /**
+   * @param mote Mote
+   * @param symbols Variables, may be shared between motes with the same firmware
+   * @param cpu MSP430 cpu
+   */
+  public MspMoteMemory(Mote mote, Map<String, Symbol> symbols, MSP430 cpu) {
+    this.symbols = symbols;
     this.cpu = cpu;
     memLayout = new MemoryLayout(ByteOrder.LITTLE_ENDIAN, MemoryLayout.ARCH_16BIT, 2);
   }
 
+  /**
+   * Creates an unmodifiable map of the variables among the given entries.
+   *
+   * @param allEntries Firmware map entries
+   * @return Variables by name
+   */
+  public static Map<String, Symbol> createSymbolMap(MapEntry[] allEntries) {
+    Map<String, Symbol> vars = new HashMap<>();
+    for (MapEntry entry : allEntries) {
+      if (entry.getType() != MapEntry.TYPE.variable) {
+        continue;
+      }
+      vars.put(entry.getName(), new Symbol(
+              Symbol.Type.VARIABLE,
+              entry.getName(), 
+              entry.getAddress(), 
+              entry.getSize()));
+    }
+    return Collections.unmodifiableMap(vars);
+  }
+
   @Override
   public int getTotalSize() {
     return cpu.memory.length;
@@ -114,18 +138,7 @@ public class MspMoteMemory implements MemoryInterface {
 
   @Override
   public Map<String, Symbol> getSymbolMap() {
-    Map<String, Symbol> vars = new HashMap<>();
-    for (MapEntry entry : mapEntries) {
-      if (entry.getType() != MapEntry.TYPE.variable) {
-        continue;
-      }
-      vars.put(entry.getName(), new Symbol(
-              Symbol.Type.VARIABLE,
-              entry.getName(), 
-              entry.getAddress(), 
-              entry.getSize()));
-    }
-    return vars;
+    return symbols;
   }
 
   @Override
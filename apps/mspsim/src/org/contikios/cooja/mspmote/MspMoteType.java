@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
+import java.util.Map;
 
 import javax.swing.Icon;
 import javax.swing.JComponent;
@@ -50,6 +51,7 @@ import org.contikios.cooja.MoteType;
 import org.contikios.cooja.ProjectConfig;
 import org.contikios.cooja.Simulation;
 import org.contikios.cooja.interfaces.IPAddress;
+import org.contikios.cooja.mote.memory.MemoryInterface.Symbol;
 import org.contikios.cooja.mspmote.interfaces.Msp802154Radio;
 import org.contikios.cooja.mspmote.interfaces.MspSerial;
 import se.sics.mspsim.util.DebugInfo;
@@ -77,6 +79,9 @@ public abstract class MspMoteType implements MoteType {
 
   private Class<? extends MoteInterface>[] moteInterfaceClasses = null;
 
+  /* Longest execution step of idle motes (us) */
+  private int maxExecutionQuantum = 1;
+
   public String getIdentifier() {
     return identifier;
   }
@@ -125,6 +130,27 @@ public abstract class MspMoteType implements MoteType {
     moteInterfaceClasses = classes;
   }
 
+  /**
+   * Motes may execute in steps longer than one microsecond. When a step
+   * leaves the CPU in low power mode without pending input, and the CPU's
+   * next scheduled event is at most the given quantum away, the mote
+   * executes the given quantum when it wakes up for that event.
+   * Input arriving during such a step is seen by the CPU at the end of
+   * the step. Motes woken early, for example by input, execute 1 us steps.
+   *
+   * @param quantum Longest execution step (us), 1 disables adaptive steps
+   */
+  public void setMaxExecutionQuantum(int quantum) {
+    maxExecutionQuantum = Math.max(1, quantum);
+  }
+
+  /**
+   * @return Longest execution step of idle motes (us)
+   */
+  public int getMaxExecutionQuantum() {
+    return maxExecutionQuantum;
+  }
+
   public final Mote generateMote(Simulation simulation) {
     MspMote mote = createMote(simulation);
     mote.initMote();
@@ -226,6 +252,13 @@ public abstract class MspMoteType implements MoteType {
       config.add(element);
     }
 
+    // Adaptive execution steps
+    if (maxExecutionQuantum > 1) {
+      element = new Element("maxquantum");
+      element.setText("" + maxExecutionQuantum);
+      config.add(element);
+    }
+
     return config;
   }
 
@@ -261,6 +294,8 @@ public abstract class MspMoteType implements MoteType {
         /* Backwards compatibility: elf is now firmware */
         logger.warn("Old simulation config detected: firmware specified as elf");
         fileFirmware = new File(element.getText());
+      } else if (name.equals("maxquantum")) {
+        setMaxExecutionQuantum(Integer.parseInt(element.getText().trim()));
       } else if (name.equals("moteinterface")) {
         String intfClass = element.getText().trim();
 
@@ -328,22 +363,33 @@ public abstract class MspMoteType implements MoteType {
   public abstract Class<? extends MoteInterface>[] getDefaultMoteInterfaceClasses();
   public abstract File getExpectedFirmwareFile(File source);
 
-  private static ELF loadELF(String filepath) throws IOException {
-    return ELF.readELF(filepath);
-  }
-
   private ELF elf; /* cached */
   public ELF getELF() throws IOException {
     if (elf == null) {
       if (Cooja.isVisualizedInApplet()) {
         logger.warn("ELF loading in applet not implemented");
       }
-      elf = loadELF(getContikiFirmwareFile().getPath());
+      elf = FirmwareCache.getELF(getContikiFirmwareFile());
     }
     return elf;
   }
 
+  /**
+   * @return Executable addresses of firmware source code lines
+   * @throws IOException Firmware could not be read
+   */
+  public FirmwareCache.LineTable getFirmwareLines() throws IOException {
+    return FirmwareCache.getLineTable(getContikiFirmwareFile());
+  }
+
   private Hashtable<File, Hashtable<Integer, Integer>> debuggingInfo = null; /* cached */
+
+  /**
+   * @return Executable addresses by source file and line number
+   * @throws IOException Firmware could not be read
+   * @deprecated Use {@link #getFirmwareLines()}
+   */
+  @Deprecated
   public Hashtable<File, Hashtable<Integer, Integer>> getFirmwareDebugInfo()
   throws IOException {
     if (debuggingInfo == null) {
@@ -352,6 +398,12 @@ public abstract class MspMoteType implements MoteType {
     return debuggingInfo;
   }
 
+  /**
+   * @param elf Firmware
+   * @return Executable addresses by source file and line number
+   * @deprecated Use {@link FirmwareCache.LineTable}
+   */
+  @Deprecated
   public static Hashtable<File, Hashtable<Integer, Integer>> getFirmwareDebugInfo(ELF elf) {
     Hashtable<File, Hashtable<Integer, Integer>> fileToLineHash =
       new Hashtable<File, Hashtable<Integer, Integer>>();
@@ -404,4 +456,12 @@ public abstract class MspMoteType implements MoteType {
     return fileToLineHash;
   }
 
+  /**
+   * @return Firmware variables, shared by all motes of this type
+   * @throws IOException Firmware could not be read
+   */
+  public Map<String, Symbol> getFirmwareVariables() throws IOException {
+    return FirmwareCache.getVariables(getContikiFirmwareFile());
+  }
+
 }
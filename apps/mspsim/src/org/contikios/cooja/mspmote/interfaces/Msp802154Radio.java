@@ -38,6 +38,8 @@ import org.jdom.Element;
 
 import org.contikios.cooja.ClassDescription;
 import org.contikios.cooja.Mote;
+import org.contikios.cooja.MoteTimeEvent;
+import org.contikios.cooja.RadioMedium;
 import org.contikios.cooja.RadioPacket;
 import org.contikios.cooja.Simulation;
 import org.contikios.cooja.interfaces.CustomDataRadio;
@@ -46,6 +48,7 @@ import org.contikios.cooja.interfaces.Radio;
 import org.contikios.cooja.interfaces.Radio.RadioEvent;
 import org.contikios.cooja.mspmote.MspMote;
 import org.contikios.cooja.mspmote.MspMoteTimeEvent;
+import org.contikios.cooja.radiomediums.AbstractRadioMedium;
 
 import se.sics.mspsim.chip.CC2420;
 import se.sics.mspsim.chip.ChannelListener;
@@ -84,13 +87,29 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
   protected byte lastOutgoingByte;
   protected byte lastIncomingByte;
 
+  /* Outgoing bytes not yet forwarded, when batching custom data */
+  private long batchTolerance = -1;
+  private byte[] batchBytes = new byte[127 + 6];
+  private long[] batchTimes = new long[127 + 6];
+  private int batchSize = 0;
+  private ByteBatch lastOutgoingBatch = null;
+  private final MoteTimeEvent batchFlushEvent;
+
   protected RadioPacket lastOutgoingPacket = null;
   protected RadioPacket lastIncomingPacket = null;
+
+  private final ByteDeliveryEvent byteDeliveryEvent;
   
 
   public Msp802154Radio(Mote m) { 
     this.mote = (MspMote)m;
     this.radio = this.mote.getCPU().getChip(Radio802154.class);
+    this.byteDeliveryEvent = new ByteDeliveryEvent(mote);
+    this.batchFlushEvent = new MoteTimeEvent(mote, 0) {
+      public void execute(long t) {
+        flushBatch();
+      }
+    };
 
     if (radio == null) {
       throw new IllegalStateException("Mote is not equipped with an IEEE 802.15.4 radio");
@@ -112,13 +131,24 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
           setChanged();
           notifyObservers();
           /*logger.debug("----- 802.15.4 TRANSMISSION STARTED -----");*/
+
+          RadioMedium radioMedium = mote.getSimulation().getRadioMedium();
+          if (radioMedium instanceof AbstractRadioMedium) {
+            batchTolerance = ((AbstractRadioMedium) radioMedium).getCustomDataBatchTolerance();
+          } else {
+            batchTolerance = -1;
+          }
         }
 
         /* send this byte to all nodes */
         lastOutgoingByte = data;
-        lastEvent = RadioEvent.CUSTOM_DATA_TRANSMITTED;
-        setChanged();
-        notifyObservers();
+        if (batchTolerance < 0) {
+          lastEvent = RadioEvent.CUSTOM_DATA_TRANSMITTED;
+          setChanged();
+          notifyObservers();
+        } else {
+          addToBatch(data);
+        }
 
         if (len < buffer.length)
           buffer[len] = data;
@@ -145,6 +175,7 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
         }
 
         if (((expMpduLen & 0x80) == 0) && len == expMpduLen + 6 && isSynchronized) {
+          flushBatch();
           lastOutgoingPacket = CC2420RadioPacketConverter.fromCC2420ToCooja(buffer);
           if (lastOutgoingPacket != null) {
             lastEvent = RadioEvent.PACKET_TRANSMITTED;
@@ -204,6 +235,7 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
   }
 
   protected void finishTransmission() {
+    flushBatch();
     if (isTransmitting()) {
       //logger.debug("----- 802.15.4 TRANSMISSION FINISHED -----");
       isTransmitting = false;
@@ -223,6 +255,66 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
     notifyObservers();
   }
 
+  private void addToBatch(byte data) {
+    long now = mote.getSimulation().getSimulationTime();
+    if (batchSize == batchBytes.length) {
+      /* Frame longer than expected */
+      flushBatch();
+    }
+    if (batchSize == 0) {
+      if (batchFlushEvent.isScheduled()) {
+        batchFlushEvent.remove();
+      }
+      mote.getSimulation().scheduleEvent(batchFlushEvent, now + batchTolerance);
+    }
+    batchBytes[batchSize] = data;
+    batchTimes[batchSize] = now;
+    batchSize++;
+  }
+
+  /**
+   * Forwards all batched outgoing bytes as a single custom data object.
+   */
+  private void flushBatch() {
+    if (batchSize == 0) {
+      return;
+    }
+    if (batchFlushEvent.isScheduled()) {
+      batchFlushEvent.remove();
+    }
+
+    byte[] data = new byte[batchSize];
+    long[] times = new long[batchSize];
+    System.arraycopy(batchBytes, 0, data, 0, batchSize);
+    System.arraycopy(batchTimes, 0, times, 0, batchSize);
+    batchSize = 0;
+
+    lastOutgoingBatch = new ByteBatch(data, times);
+    lastEvent = RadioEvent.CUSTOM_DATA_TRANSMITTED;
+    setChanged();
+    notifyObservers();
+    lastOutgoingBatch = null;
+  }
+
+  /**
+   * Outgoing bytes forwarded together, with the times they were transmitted.
+   *
+   * @see AbstractRadioMedium#setCustomDataBatchTolerance(long)
+   */
+  public static class ByteBatch {
+    public final byte[] data;
+    public final long[] times;
+
+    public ByteBatch(byte[] data, long[] times) {
+      this.data = data;
+      this.times = times;
+    }
+
+    public String toString() {
+      return data.length + " bytes";
+    }
+  }
+
   /* Packet radio support */
   public RadioPacket getLastPacketTransmitted() {
     return lastOutgoingPacket;
@@ -253,20 +345,16 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
         b = (byte) 0xFF;
       }
 
-      final byte byteToDeliver = b;
-      getMote().getSimulation().scheduleEvent(new MspMoteTimeEvent(mote, 0) {
-        public void execute(long t) {
-          super.execute(t);
-          radio.receivedByte(byteToDeliver);
-          mote.requestImmediateWakeup();
-        }
-      }, deliveryTime);
+      byteDeliveryEvent.deliver(b, deliveryTime, false);
       deliveryTime += DELAY_BETWEEN_BYTES;
     }
   }
 
   /* Custom data radio support */
   public Object getLastCustomDataTransmitted() {
+    if (lastOutgoingBatch != null) {
+      return lastOutgoingBatch;
+    }
     return lastOutgoingByte;
   }
 
@@ -275,6 +363,10 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
   }
 
   public void receiveCustomData(Object data) {
+    if (data instanceof ByteBatch) {
+      receiveByteBatch((ByteBatch) data);
+      return;
+    }
     if (!(data instanceof Byte)) {
       logger.fatal("Bad custom data: " + data);
       return;
@@ -287,14 +379,165 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
     } else {
       inputByte = lastIncomingByte;
     }
-    mote.getSimulation().scheduleEvent(new MspMoteTimeEvent(mote, 0) {
-      public void execute(long t) {
-        super.execute(t);
-        radio.receivedByte(inputByte);
-        mote.requestImmediateWakeup();
+    byteDeliveryEvent.deliver(inputByte, mote.getSimulation().getSimulationTime(), false);
+
+  }
+
+  private void receiveByteBatch(ByteBatch batch) {
+    /* All bytes are delayed as much as the first byte, keeping their spacing.
+     * Interference is checked per byte when it is delivered, and bytes still
+     * pending when the reception ends are delivered then. */
+    long delay = mote.getSimulation().getSimulationTime() - batch.times[0];
+    for (int i = 0; i < batch.data.length; i++) {
+      lastIncomingByte = batch.data[i];
+      byteDeliveryEvent.deliver(batch.data[i], batch.times[i] + delay, true);
+    }
+  }
+
+  /**
+   * Delivers all received bytes that are still waiting, at the current time.
+   * Called when the reception ends, so that no byte arrives after it.
+   */
+  protected void deliverPendingBytes() {
+    byteDeliveryEvent.flush();
+  }
+
+  /**
+   * Passes a received byte to the MSPSim radio.
+   *
+   * @param data Byte
+   */
+  protected void deliverReceivedByte(byte data) {
+    radio.receivedByte(data);
+  }
+
+  /**
+   * @return True if received bytes are waiting to be delivered to the MSPSim radio
+   */
+  public boolean hasPendingInput() {
+    return byteDeliveryEvent.isScheduled();
+  }
+
+  /**
+   * Delivers received bytes to the MSPSim radio.
+   *
+   * Bytes are queued with their delivery times, and a single event
+   * is rescheduled to the time of the next pending byte.
+   * Bytes with the same delivery time are delivered in the order they
+   * were queued.
+   */
+  private class ByteDeliveryEvent extends MspMoteTimeEvent {
+    private byte[] bytes = new byte[128];
+    private long[] times = new long[128];
+    /* Byte of a batch: delivered no later than the reception end,
+     * and replaced if the radio is interfered when it is delivered */
+    private boolean[] batched = new boolean[128];
+    private int first = 0;
+    private int size = 0;
+
+    public ByteDeliveryEvent(MspMote mote) {
+      super(mote, 0);
+    }
+
+    public void deliver(byte data, long time, boolean isBatched) {
+      if (size > 0 && !isScheduled()) {
+        /* Event was removed from simulation, drop stale bytes */
+        first = 0;
+        size = 0;
+      }
+      if (size == bytes.length) {
+        grow();
+      }
+
+      /* Keep bytes ordered by delivery time, normally appended last */
+      int mask = bytes.length - 1;
+      int pos = size;
+      while (pos > 0 && times[(first + pos - 1) & mask] > time) {
+        bytes[(first + pos) & mask] = bytes[(first + pos - 1) & mask];
+        times[(first + pos) & mask] = times[(first + pos - 1) & mask];
+        batched[(first + pos) & mask] = batched[(first + pos - 1) & mask];
+        pos--;
       }
-    }, mote.getSimulation().getSimulationTime());
+      bytes[(first + pos) & mask] = data;
+      times[(first + pos) & mask] = time;
+      batched[(first + pos) & mask] = isBatched;
+      size++;
+
+      if (pos == 0) {
+        /* New first byte */
+        if (isScheduled()) {
+          remove();
+        }
+        mote.getSimulation().scheduleEvent(this, time);
+      }
+    }
+
+    private void grow() {
+      byte[] newBytes = new byte[bytes.length * 2];
+      long[] newTimes = new long[times.length * 2];
+      boolean[] newBatched = new boolean[batched.length * 2];
+      for (int i = 0; i < size; i++) {
+        newBytes[i] = bytes[(first + i) & (bytes.length - 1)];
+        newTimes[i] = times[(first + i) & (times.length - 1)];
+        newBatched[i] = batched[(first + i) & (batched.length - 1)];
+      }
+      bytes = newBytes;
+      times = newTimes;
+      batched = newBatched;
+      first = 0;
+    }
+
+    public void execute(long t) {
+      super.execute(t);
+
+      int count = 0;
+      while (count < size && times[(first + count) & (bytes.length - 1)] <= t) {
+        count++;
+      }
+      deliverFirst(count);
+
+      if (size > 0 && !isScheduled()) {
+        mote.getSimulation().scheduleEvent(this, times[first]);
+      }
+    }
 
+    /**
+     * Delivers all pending bytes up to the last batched byte now.
+     */
+    public void flush() {
+      if (!isScheduled()) {
+        return;
+      }
+      int count = size;
+      while (count > 0 && !batched[(first + count - 1) & (bytes.length - 1)]) {
+        count--;
+      }
+      if (count == 0) {
+        return;
+      }
+
+      remove();
+      super.execute(mote.getSimulation().getSimulationTime());
+      deliverFirst(count);
+
+      if (size > 0) {
+        mote.getSimulation().scheduleEvent(this, times[first]);
+      }
+    }
+
+    private void deliverFirst(int count) {
+      int mask = bytes.length - 1;
+      for (int i = 0; i < count; i++) {
+        byte data = bytes[first];
+        if (batched[first] && isInterfered()) {
+          data = (byte) 0xFF;
+        }
+        first = (first + 1) & mask;
+        size--;
+        deliverReceivedByte(data);
+      }
+      mote.requestImmediateWakeup();
+    }
   }
   
   public boolean isGeneratingCarrier() {
@@ -332,6 +575,7 @@ public class Msp802154Radio extends Radio implements CustomDataRadio {
 
   public void signalReceptionEnd() {
     /* Deliver packet data */
+    deliverPendingBytes();
     isReceiving = false;
     isInterfered = false;
 
@@ -31,12 +31,7 @@
 package org.contikios.cooja.mspmote.interfaces;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.*;
 
 import org.apache.log4j.Logger;
 
@@ -48,7 +43,6 @@ import org.contikios.cooja.interfaces.CustomDataRadio;
 import org.contikios.cooja.RadioConnection;
 
 import org.contikios.cooja.interfaces.Radio.RadioEvent;
-import org.contikios.cooja.mspmote.MspMoteTimeEvent;
 import org.contikios.cooja.radiomediums.AbstractRadioMedium;
 import org.contikios.cooja.radiomediums.UDGMCA;
 
@@ -81,12 +75,95 @@ public class Msp802154Tag extends Msp802154Radio {
 
 
   
-  /* Keeps a record of the transmitted power from the tag */
-  private Hashtable<Integer, Hashtable<RadioConnection, Double>> tagTXPower = 
-                                                new Hashtable<Integer, Hashtable<RadioConnection, Double>>();
-  
-  private ReentrantLock lock = new ReentrantLock();
-//  private MyReentrantLock lock = new MyReentrantLock();
+  /* Keeps a record of the transmitted power from the tag, indexed by TX channel.
+   * Only accessed from the simulation thread. */
+  private ChannelTXPower[] tagTXPower = new ChannelTXPower[0];
+  /* Number of channels with at least one connection */
+  private int tagTXPowerChannels = 0;
+
+  /**
+   * Tag TX powers of one channel, one per connection in insertion order.
+   * The connection with maximum power is tracked incrementally.
+   */
+  private static class ChannelTXPower {
+    RadioConnection[] conns = new RadioConnection[2];
+    double[] powers = new double[2];
+    int size = 0;
+    /* Index of first connection with maximum power, -1 if empty */
+    int max = -1;
+
+    int indexOf(RadioConnection conn) {
+      for (int i=0; i < size; i++) {
+        if (conns[i] == conn) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    void put(RadioConnection conn, double power) {
+      int idx = indexOf(conn);
+      if (idx < 0) {
+        if (size == conns.length) {
+          RadioConnection[] newConns = new RadioConnection[size*2];
+          double[] newPowers = new double[size*2];
+          System.arraycopy(conns, 0, newConns, 0, size);
+          System.arraycopy(powers, 0, newPowers, 0, size);
+          conns = newConns;
+          powers = newPowers;
+        }
+        idx = size++;
+        conns[idx] = conn;
+        powers[idx] = power;
+      } else {
+        double old = powers[idx];
+        powers[idx] = power;
+        if (idx == max && power < old) {
+          updateMax();
+          return;
+        }
+      }
+      if (max < 0 || power > powers[max] || (power == powers[max] && idx < max)) {
+        max = idx;
+      }
+    }
+
+    boolean remove(RadioConnection conn) {
+      int idx = indexOf(conn);
+      if (idx < 0) {
+        return false;
+      }
+      System.arraycopy(conns, idx+1, conns, idx, size-idx-1);
+      System.arraycopy(powers, idx+1, powers, idx, size-idx-1);
+      conns[--size] = null;
+      if (idx == max) {
+        updateMax();
+      } else if (idx < max) {
+        max--;
+      }
+      return true;
+    }
+
+    private void updateMax() {
+      max = -1;
+      for (int i=0; i < size; i++) {
+        if (max < 0 || powers[i] > powers[max]) {
+          max = i;
+        }
+      }
+    }
+  }
+
+  private ChannelTXPower getChannelTXPower(int channel) {
+    if (channel < 0 || channel >= tagTXPower.length) {
+      return null;
+    }
+    ChannelTXPower txPower = tagTXPower[channel];
+    if (txPower == null || txPower.size == 0) {
+      return null;
+    }
+    return txPower;
+  }
 
   public Msp802154Tag(Mote m) {
     super(m);
@@ -233,6 +310,7 @@ public class Msp802154Tag extends Msp802154Radio {
   /* Concerns the end of the carrier listening */
   @Override
   public void signalReceptionEnd() {
+    deliverPendingBytes();
 	  isReceiving = false;
     lastEvent = RadioEvent.RECEPTION_FINISHED;
     setChanged();
@@ -241,171 +319,105 @@ public class Msp802154Tag extends Msp802154Radio {
   
   public void interfereAnyReception() {
     isInterfered = false;
-    lock.lock();
-    try {
-      if (tagTXPower !=null) {
-        Enumeration<Integer> channels = tagTXPower.keys();
-        while (channels.hasMoreElements()) {
-          Integer channel = (Integer)channels.nextElement();
-          if (interfere_anyway || this.getNumberOfConnectionsFromChannel(channel) >= 2) {
-        	  interfere_anyway = false;
-            isInterfered = true;
-            lastEvent = RadioEvent.RECEPTION_INTERFERED;
-            setChanged();
-            notifyObservers();
-          }
-        }
+    for (int channel=0; channel < tagTXPower.length; channel++) {
+      if (getChannelTXPower(channel) == null) {
+        continue;
+      }
+      if (interfere_anyway || this.getNumberOfConnectionsFromChannel(channel) >= 2) {
+        interfere_anyway = false;
+        isInterfered = true;
+        lastEvent = RadioEvent.RECEPTION_INTERFERED;
+        setChanged();
+        notifyObservers();
       }
-    } finally {
-      lock.unlock();
     }
-        
   }
   
   public void updateTagTXPower(RadioConnection conn) {
-    lock.lock();
-    try {
-      int tagTXChannel = conn.getSource().getChannel()+FREQSHIFT;
-      if (tagTXPower.get(tagTXChannel) != null) {
-        tagTXPower.get(tagTXChannel).remove(conn);
-        if (tagTXPower.get(tagTXChannel).isEmpty()) {
-          tagTXPower.remove(tagTXChannel);
-        }
-      } 
-    } finally {
-      lock.unlock();
+    int tagTXChannel = conn.getSource().getChannel()+FREQSHIFT;
+    ChannelTXPower txPower = getChannelTXPower(tagTXChannel);
+    if (txPower != null && txPower.remove(conn) && txPower.size == 0) {
+      tagTXPowerChannels--;
     }
-    
   }
   
   public void putTagTXPower(int channel, RadioConnection conn, double tagCurrentTXPower) {
-    lock.lock();
-    try {
-      if (channel >= 0 && tagTXPower.containsKey(channel)) {
-        tagTXPower.get(channel).put(conn, tagCurrentTXPower);
-      } else {
-        Hashtable<RadioConnection, Double> txPower = new Hashtable<RadioConnection, Double>();
-        txPower.put(conn, tagCurrentTXPower);
-        tagTXPower.put(channel, txPower);
-      }
-    } finally {
-      lock.unlock();
+    if (channel < 0) {
+      /* Never read back: all lookups require a valid channel */
+      return;
     }
-    
+    if (channel >= tagTXPower.length) {
+      ChannelTXPower[] arr = new ChannelTXPower[channel + 1];
+      System.arraycopy(tagTXPower, 0, arr, 0, tagTXPower.length);
+      tagTXPower = arr;
+    }
+    ChannelTXPower txPower = tagTXPower[channel];
+    if (txPower == null) {
+      txPower = new ChannelTXPower();
+      tagTXPower[channel] = txPower;
+    }
+    if (txPower.size == 0) {
+      tagTXPowerChannels++;
+    }
+    txPower.put(conn, tagCurrentTXPower);
   }
   
   public double getTagCurrentOutputPower(Radio radio, int channel) {
-    lock.lock();
-    /* When there is no entry in the Hashtable 
+    /* When there is no entry for the channel
      * return something really small */
     double power = Double.NEGATIVE_INFINITY;
-    try {
-      if (channel >= 0 && tagTXPower.containsKey(channel)) {
-        Enumeration<RadioConnection> conns = tagTXPower.get(channel).keys();
-        while (conns.hasMoreElements()) {
-          RadioConnection conn = (RadioConnection)conns.nextElement();
-          if (conn.getSource() == radio) {
-            power = tagTXPower.get(channel).get(conn);
-          }
+    ChannelTXPower txPower = getChannelTXPower(channel);
+    if (txPower != null) {
+      for (int i=0; i < txPower.size; i++) {
+        if (txPower.conns[i].getSource() == radio) {
+          power = txPower.powers[i];
         }
       }
-    } finally {
-      lock.unlock();
     }
-    
     return power;
-        
   }
   
   public double getTagCurrentOutputPowerMax(int channel) {
-    double maxValue = 0.0;
-
-    lock.lock();
-    try {
-      if (channel >= 0 && tagTXPower.containsKey(channel)) {
-        maxValue = Collections.max(tagTXPower.get(channel).values());
-      } else {
-        /* When there is no entry in the Hashtable 
-         * return something really small */
-        maxValue = Double.NEGATIVE_INFINITY;
-      }
-    } finally {
-      lock.unlock();
+    ChannelTXPower txPower = getChannelTXPower(channel);
+    if (txPower == null) {
+      /* When there is no entry for the channel
+       * return something really small */
+      return Double.NEGATIVE_INFINITY;
     }
-
-    return maxValue;
-
+    return txPower.powers[txPower.max];
   }
   
   public RadioConnection getConnectionFromMaxOutputPower(int channel) {
-    RadioConnection activeConn = null;
-    
-    lock.lock();
-    try {
-      if (channel >= 0 && tagTXPower.containsKey(channel)) {
-        double maxPower = this.getTagCurrentOutputPowerMax(channel);
-        Enumeration<RadioConnection> carrierConns = tagTXPower.get(channel).keys();
-        while (carrierConns.hasMoreElements()) {
-          RadioConnection carrierConn = (RadioConnection)carrierConns.nextElement();
-          if (tagTXPower.get(channel).get(carrierConn) == maxPower) {
-            activeConn = carrierConn;
-          }
-        }
-      }
-    } finally {
-      lock.unlock();
+    ChannelTXPower txPower = getChannelTXPower(channel);
+    if (txPower == null) {
+      return null;
     }
-    
-    return activeConn;
-
+    return txPower.conns[txPower.max];
   }
   
   public boolean isTXChannelFromActiveTransmitter(int channel) {
-    boolean isTXChannelFromActiveTransmitter = false;
-    
-    lock.lock();
-    try {
-      if (channel >= 0 && tagTXPower.containsKey(channel)) {
-       Enumeration<RadioConnection> conns = tagTXPower.get(channel).keys();
-        while (conns.hasMoreElements()) {
-          RadioConnection activeConn = (RadioConnection)conns.nextElement();
-          if (!activeConn.getSource().isGeneratingCarrier()) {
-           isTXChannelFromActiveTransmitter = true;
-           break;
-          }
-        }
+    ChannelTXPower txPower = getChannelTXPower(channel);
+    if (txPower == null) {
+      return false;
+    }
+    for (int i=0; i < txPower.size; i++) {
+      if (!txPower.conns[i].getSource().isGeneratingCarrier()) {
+        return true;
       }
-    } finally {
-      lock.unlock();
     }
-    
-    return isTXChannelFromActiveTransmitter;
-  
+    return false;
   }
   
   public int getNumberOfConnectionsFromChannel(int channel) {
-    int size = 0;
-    
-    lock.lock();
-    try {
-      if (channel >=0 && tagTXPower.containsKey(channel)) {
-        size = tagTXPower.get(channel).size();
-      } 
-    } finally {
-      lock.unlock();
+    ChannelTXPower txPower = getChannelTXPower(channel);
+    if (txPower == null) {
+      return 0;
     }
-    
-    return size;
-        
+    return txPower.size;
   }
   
   public boolean isTagTXPowersEmpty() {
-    if (tagTXPower.isEmpty()) {
-      return true;
-    } else {
-      return false;
-    }
-    
+    return tagTXPowerChannels == 0;
   }
    
   @Override
@@ -422,41 +434,8 @@ public class Msp802154Tag extends Msp802154Radio {
     return false;
   }
   
-  public void receiveCustomData(Object data) {
-	    if (!(data instanceof Byte)) {
-	      logger.fatal("Bad custom data: " + data);
-	      return;
-	    }
-	    lastIncomingByte = (Byte) data;
-
-	    final byte inputByte;
-	    if (isInterfered()) {
-	      inputByte = (byte)0xFF;
-	    } else {
-	      inputByte = lastIncomingByte;
-	    }
-	    mote.getSimulation().scheduleEvent(new MspMoteTimeEvent(mote, 0) {
-	      public void execute(long t) {
-	        super.execute(t);
-	        radio.receivedByte(inputByte);
-	        mote.requestImmediateWakeup();
-	      }
-	    }, mote.getSimulation().getSimulationTime());
+  protected void deliverReceivedByte(byte data) {
+    radio.receivedByte(data);
   }
   
-//  /* Found on the internet in case the owner (thread) of the lock
-//   * is needed to be found. */
-//  class MyReentrantLock extends ReentrantLock {
-//      
-//      String owner() {
-//        Thread t =  this.getOwner();
-//        if (t != null) {
-//          return t.getName();
-//        } else {
-//          return "none";
-//        }
-//      }
-//    }
-
-  
 }
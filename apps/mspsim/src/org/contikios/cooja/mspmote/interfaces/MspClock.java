@@ -30,9 +30,13 @@
 
 package org.contikios.cooja.mspmote.interfaces;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.Collection;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import org.apache.log4j.Logger;
 import org.jdom.Element;
@@ -41,6 +45,7 @@ import org.contikios.cooja.ClassDescription;
 import org.contikios.cooja.Mote;
 import org.contikios.cooja.Simulation;
 import org.contikios.cooja.interfaces.Clock;
+import org.contikios.cooja.mspmote.MspMote;
 
 /**
  * @author Fredrik Osterlind
@@ -50,12 +55,14 @@ public class MspClock extends Clock {
   private static Logger logger = Logger.getLogger(MspClock.class);
 
   private Simulation simulation;
+  private Mote mote;
   
   private long timeDrift; /* Microseconds */
   private double deviation;
 
   public MspClock(Mote mote) {
     simulation = mote.getSimulation();
+    this.mote = mote;
     deviation = 1.0;
   }
 
@@ -83,4 +90,76 @@ public class MspClock extends Clock {
   public double getDeviation() {
     return deviation;
   }
+
+  public JPanel getInterfaceVisualizer() {
+    JPanel panel = super.getInterfaceVisualizer();
+    if (!(mote instanceof MspMote)) {
+      return panel;
+    }
+    final MspMote mspMote = (MspMote) mote;
+
+    /* Execution monitoring, and execution speed since last update */
+    final JLabel monitorLabel = new JLabel();
+    final JLabel speedLabel = new JLabel();
+    final JLabel quantaLabel = new JLabel();
+    panel.add(new JLabel("Execution monitoring"));
+    panel.add(monitorLabel);
+    panel.add(new JLabel("Execution speed"));
+    panel.add(speedLabel);
+    panel.add(new JLabel("Execution steps"));
+    panel.add(quantaLabel);
+
+    mspMote.requestExecutionTiming(panel);
+    Timer updateTimer = new Timer(1000, new ActionListener() {
+      private long lastNanos = mspMote.getExecutionNanos();
+      private long lastCycles = mspMote.getExecutedCycles();
+      public void actionPerformed(ActionEvent e) {
+        monitorLabel.setText(mspMote.isExecutionMonitored() ? "on" : "off");
+
+        long nanos = mspMote.getExecutionNanos();
+        long cycles = mspMote.getExecutedCycles();
+        if (nanos > lastNanos) {
+          speedLabel.setText(String.format("%.2f Mcycles/s",
+              1000.0 * (cycles - lastCycles) / (nanos - lastNanos)));
+        }
+        lastNanos = nanos;
+        lastCycles = cycles;
+
+        /* Distribution of step lengths, by power of two */
+        long[] quanta = mspMote.getExecutionQuanta();
+        long total = 0;
+        for (long count: quanta) {
+          total += count;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < quanta.length && total > 0; i++) {
+          if (quanta[i] == 0) {
+            continue;
+          }
+          if (sb.length() > 0) {
+            sb.append(", ");
+          }
+          sb.append(String.format("%dus: %.1f%%", 1L << i, 100.0 * quanta[i] / total));
+        }
+        quantaLabel.setText(sb.length() > 0 ? sb.toString() : "-");
+      }
+    });
+    monitorLabel.setText(mspMote.isExecutionMonitored() ? "on" : "off");
+    speedLabel.setText("-");
+    quantaLabel.setText("-");
+    updateTimer.start();
+    panel.putClientProperty("intf_timer", updateTimer);
+    return panel;
+  }
+
+  public void releaseInterfaceVisualizer(JPanel panel) {
+    Timer updateTimer = (Timer) panel.getClientProperty("intf_timer");
+    if (updateTimer != null) {
+      updateTimer.stop();
+    }
+    if (mote instanceof MspMote) {
+      ((MspMote) mote).releaseExecutionTiming(panel);
+    }
+    super.releaseInterfaceVisualizer(panel);
+  }
 }
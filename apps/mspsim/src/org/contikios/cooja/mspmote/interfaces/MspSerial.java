@@ -130,6 +130,13 @@ public class MspSerial extends SerialUI implements SerialPort {
     }
   }
 
+  /**
+   * @return True if written bytes are waiting to be received by the mote
+   */
+  public boolean hasPendingInput() {
+    return !incomingData.isEmpty();
+  }
+
   private void tryWriteNextByte() {
     byte b;
 
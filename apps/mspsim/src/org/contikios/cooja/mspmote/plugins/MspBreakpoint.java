@@ -141,6 +141,7 @@ public class MspBreakpoint implements Watchpoint {
       }
     };
     mspMote.getCPU().addWatchPoint(address, memoryMonitor);
+    mspMote.requestExecutionMonitoring(this);
 
 
     /* Remember Contiki code, to verify it when reloaded */
@@ -158,6 +159,7 @@ public class MspBreakpoint implements Watchpoint {
 
   public void unregisterBreakpoint() {
     mspMote.getCPU().removeWatchPoint(address, memoryMonitor);
+    mspMote.releaseExecutionMonitoring(this);
   }
 
   public Collection<Element> getConfigXML() {
@@ -231,6 +231,8 @@ public class MspCodeWatcher extends VisPlugin implements MotePlugin {
 
     add(BorderLayout.CENTER, mainPane);
 
+    mspMote.requestExecutionMonitoring(this);
+
     /* Listen for breakpoint changes */
     watchpointMote.addWatchpointListener(watchpointListener = new WatchpointListener() {
       public void watchpointTriggered(final Watchpoint watchpoint) {
@@ -326,6 +328,7 @@ public class MspCodeWatcher extends VisPlugin implements MotePlugin {
   public void closePlugin() {
     watchpointMote.removeWatchpointListener(watchpointListener);
     watchpointListener = null;
+    mspMote.releaseExecutionMonitoring(this);
 
     simulation.deleteObserver(simObserver);
     simObserver = null;
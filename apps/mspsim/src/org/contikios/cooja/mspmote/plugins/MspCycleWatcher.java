@@ -74,6 +74,7 @@ public class MspCycleWatcher extends VisPlugin implements MotePlugin {
     this.mspMote = (MspMote) mote;
     cpu = mspMote.getCPU();
     simulation = simulationToVisualize;
+    mspMote.requestExecutionMonitoring(this);
 
     cycleTextField.setEditable(false);
     resetTextField.setEditable(false);
@@ -131,6 +132,7 @@ public class MspCycleWatcher extends VisPlugin implements MotePlugin {
 
   public void closePlugin() {
     simulation.deleteObserver(simObserver);
+    mspMote.releaseExecutionMonitoring(this);
   }
 
   public Mote getMote() {
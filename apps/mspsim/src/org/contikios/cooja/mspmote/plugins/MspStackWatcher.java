@@ -207,6 +207,7 @@ public class MspStackWatcher extends VisPlugin implements MotePlugin {
         }
       };
       cpu.addRegisterWriteMonitor(MSP430.SP, registerMonitor);
+      mspMote.requestExecutionMonitoring(this);
     } catch (IOException e) {
       logger.warn("Stack monitoring failed: " + e.getMessage(), e);
       registerMonitor = null;
@@ -220,6 +221,7 @@ public class MspStackWatcher extends VisPlugin implements MotePlugin {
     if (registerMonitor != null) {
       cpu.removeRegisterWriteMonitor(MSP430.SP, registerMonitor);
       registerMonitor = null;
+      mspMote.releaseExecutionMonitoring(this);
     }
   }
 
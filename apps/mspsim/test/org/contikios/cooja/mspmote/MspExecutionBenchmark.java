@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.mspmote;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.contikios.cooja.Cooja;
+import org.contikios.cooja.Mote;
+import org.contikios.cooja.Simulation;
+import org.contikios.cooja.TimeEvent;
+
+/**
+ * MSP430 execution speed benchmark.
+ *
+ * Runs a simulation of MSPSim motes with execution monitoring disabled and
+ * enabled, as if a breakpoint or watcher was attached to every mote, and
+ * reports MSP430 cycles executed per second of wall-clock time spent
+ * executing. MSPSim does not count instructions, so cycles are reported.
+ *
+ * The simulation defaults to benchmark.csc: ten ESB motes running the
+ * example hello world firmware. Each configuration runs warmup iterations
+ * before the measured ones. Run with "ant benchmark" in apps/mspsim,
+ * optionally with -Dcsc=sim.csc.
+ */
+public class MspExecutionBenchmark {
+  private static final int WARMUP_ITERATIONS = 1;
+  private static final int ITERATIONS = 5;
+  private static final long DURATION = 60*1000*Simulation.MILLISECOND;
+  private static final long RANDOM_SEED = 123456;
+
+  private static final Object BENCHMARK = new Object();
+
+  /**
+   * @return MSP430 cycles per second of execution (Mcycles/s)
+   */
+  private static double run(File config, boolean monitored) throws InterruptedException {
+    final Simulation simulation = Cooja.quickStartSimulationConfig(config, false, RANDOM_SEED);
+    if (simulation == null) {
+      throw new RuntimeException("Could not load simulation: " + config);
+    }
+    ArrayList<MspMote> motes = new ArrayList<MspMote>();
+    for (Mote mote: simulation.getMotes()) {
+      if (mote instanceof MspMote) {
+        motes.add((MspMote) mote);
+      }
+    }
+    if (motes.isEmpty()) {
+      throw new RuntimeException("No MSPSim motes in simulation: " + config);
+    }
+    for (MspMote mote: motes) {
+      mote.requestExecutionTiming(BENCHMARK);
+      if (monitored) {
+        mote.requestExecutionMonitoring(BENCHMARK);
+      }
+    }
+
+    simulation.scheduleEvent(new TimeEvent(0) {
+      public void execute(long t) {
+        simulation.stopSimulation();
+      }
+    }, simulation.getSimulationTime() + DURATION);
+    simulation.startSimulation();
+    while (simulation.isRunning()) {
+      Thread.sleep(10);
+    }
+
+    long cycles = 0, nanos = 0;
+    for (MspMote mote: motes) {
+      cycles += mote.getExecutedCycles();
+      nanos += mote.getExecutionNanos();
+    }
+    simulation.getCooja().doRemoveSimulation(false);
+    return 1000.0*cycles/nanos;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    File config = new File(args.length > 0 ? args[0] : "test/benchmark.csc");
+    System.out.println("monitoring\tMcycles/s\tmax Mcycles/s");
+    for (boolean monitored: new boolean[] { false, true }) {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        run(config, monitored);
+      }
+      double sum = 0, max = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        double mcps = run(config, monitored);
+        sum += mcps;
+        max = Math.max(max, mcps);
+      }
+      System.out.println(String.format("%s\t%.1f\t%.1f", monitored?"on":"off", sum/ITERATIONS, max));
+    }
+    System.exit(0);
+  }
+}
@@ -9,6 +9,9 @@
 //TIMEOUT(100000); /* milliseconds. no action at timeout */
 TIMEOUT(100000, log.log("last msg: " + msg + "\n")); /* milliseconds. print last msg at timeout */
 
+/* Only wake script for output from mote 1 matching a regular expression */
+//LOG_FILTER("^Hello", 1); /* LOG_FILTER() clears the filter */
+
 log.log("first mote output: '" + msg + "'\n");
 
 YIELD(); /* wait for another mote output */
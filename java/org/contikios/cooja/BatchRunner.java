@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+
+/**
+ * Runs one simulation config without GUI for a range of random seeds,
+ * several simulations at a time, in a single JVM.
+ *
+ * The config is parsed once and every run loads its simulation from a copy.
+ * Parsed firmware is shared via the process-wide firmware caches.
+ * Simulations are loaded one at a time, since mote type creation is not
+ * thread safe, and then execute concurrently until their test script quits.
+ *
+ * Each run writes its own test log. When all runs have finished, the exit
+ * codes and test logs are collected in a summary file.
+ *
+ * @see Cooja#isBatchRun()
+ */
+public class BatchRunner {
+  private static Logger logger = Logger.getLogger(BatchRunner.class);
+
+  /* Time a stopped simulation is given to quit, before its run fails (ms) */
+  private static final long QUIT_TIMEOUT = 5000;
+
+  private final File configFile;
+  private final long firstSeed;
+  private final long lastSeed;
+  private final int threads;
+  private final File summaryFile;
+
+  private Element config = null;
+
+  /* Simulations are loaded one at a time */
+  private final Object loadLock = new Object();
+
+  /**
+   * @param configFile Simulation config
+   * @param firstSeed First random seed
+   * @param lastSeed Last random seed, inclusive
+   * @param threads Maximum number of concurrent simulations
+   * @param summaryFile Summary file
+   */
+  public BatchRunner(File configFile, long firstSeed, long lastSeed, int threads, File summaryFile) {
+    this.configFile = configFile;
+    this.firstSeed = firstSeed;
+    this.lastSeed = lastSeed;
+    this.threads = threads;
+    this.summaryFile = summaryFile;
+  }
+
+  /**
+   * Runs all seeds and writes the summary file.
+   *
+   * @return Process exit code: 0 if all tests succeeded, otherwise 1
+   */
+  public int run() {
+    try {
+      SAXBuilder builder = new SAXBuilder();
+      InputStream in = new FileInputStream(configFile);
+      if (configFile.getName().endsWith(".gz")) {
+        in = new GZIPInputStream(in);
+      }
+      Document doc = builder.build(in);
+      in.close();
+      config = doc.getRootElement();
+    } catch (JDOMException e) {
+      logger.fatal("Config not wellformed: " + configFile, e);
+      return 1;
+    } catch (IOException e) {
+      logger.fatal("Load simulation error: " + configFile, e);
+      return 1;
+    }
+
+    logger.info("Running " + configFile + " with random seeds " + firstSeed + "-" + lastSeed +
+        ", " + threads + " simulation" + (threads==1?"":"s") + " at a time");
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "batch run " + (++count));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    ArrayList<Run> runs = new ArrayList<Run>();
+    ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (long seed = firstSeed; seed <= lastSeed; seed++) {
+      Run run = new Run(seed);
+      runs.add(run);
+      results.add(executor.submit(run));
+    }
+    executor.shutdown();
+
+    int failed = 0;
+    for (int i = 0; i < runs.size(); i++) {
+      int exitCode;
+      try {
+        exitCode = results.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        exitCode = -1;
+      } catch (ExecutionException e) {
+        logger.fatal("Batch run error, seed " + runs.get(i).seed + ": ", e.getCause());
+        exitCode = -1;
+      }
+      runs.get(i).exitCode = exitCode;
+      if (exitCode != 0) {
+        failed++;
+      }
+    }
+    logger.info("Batch finished: " + (runs.size() - failed) + " of " + runs.size() + " tests succeeded");
+
+    writeSummary(runs, failed);
+    return failed == 0 ? 0 : 1;
+  }
+
+  private void writeSummary(ArrayList<Run> runs, int failed) {
+    try {
+      BufferedWriter out = new BufferedWriter(new FileWriter(summaryFile));
+      out.write("Config: " + configFile.getPath() + "\n");
+      out.write("Random seeds: " + firstSeed + "-" + lastSeed + "\n");
+      out.write("Tests succeeded: " + (runs.size() - failed) + " of " + runs.size() + "\n");
+      out.write("\n");
+      out.write("seed\texit\tsimulation time\treal time (ms)\ttest log\n");
+      for (Run run: runs) {
+        out.write(run.seed + "\t" + run.exitCode + "\t" + run.simulationTime + "\t" +
+            run.realTime + "\t" + run.logFile.getPath() + "\n");
+      }
+      for (Run run: runs) {
+        out.write("\n== Random seed " + run.seed + ", exit code " + run.exitCode + " ==\n");
+        appendFile(out, run.logFile);
+      }
+      out.close();
+      logger.info("Batch summary written to " + summaryFile);
+    } catch (IOException e) {
+      logger.fatal("Error when writing batch summary: " + summaryFile, e);
+    }
+  }
+
+  /**
+   * Copies test log to summary, without reading the whole log into memory.
+   */
+  private static void appendFile(Writer out, File file) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    InputStream in = new FileInputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    Reader reader = new InputStreamReader(in, Charset.forName("UTF-8"));
+    try {
+      char[] buf = new char[8192];
+      int n;
+      while ((n = reader.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * A single simulation run.
+   */
+  class Run implements Callable<Integer> {
+    final long seed;
+    final File logFile;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private int exitCode = -1;
+    private long simulationTime = 0;
+    private long realTime = 0;
+
+    Run(long seed) {
+      this.seed = seed;
+
+      /* COOJA.testlog -> COOJA-<seed>.testlog */
+      String name = Cooja.getTestLogFilename();
+      String suffix = "";
+      if (name.endsWith(".gz")) {
+        suffix = ".gz";
+        name = name.substring(0, name.length() - suffix.length());
+      }
+      int dot = name.lastIndexOf('.');
+      if (dot > name.lastIndexOf(File.separatorChar)) {
+        suffix = name.substring(dot) + suffix;
+        name = name.substring(0, dot);
+      }
+      this.logFile = new File(name + "-" + seed + suffix);
+    }
+
+    public Integer call() throws Exception {
+      long startRealTime = System.currentTimeMillis();
+      Cooja gui;
+      Simulation sim;
+      synchronized (loadLock) {
+        logger.info("Starting simulation with random seed " + seed);
+        gui = new Cooja(Cooja.createDesktopPane());
+        gui.setBatchRun(this);
+        try {
+          sim = gui.loadSimulationConfig((Element) config.clone(), configFile, true, seed);
+        } catch (Exception e) {
+          logger.fatal("Exception when loading simulation: ", e);
+          return -1;
+        }
+        if (sim == null) {
+          return -1;
+        }
+        gui.setSimulation(sim, false);
+        if (!Cooja.startSimulationControl(gui, sim, configFile)) {
+          gui.doRemoveSimulation(false);
+          return -1;
+        }
+      }
+
+      /* Wait for test script to quit */
+      done.await();
+      simulationTime = sim.getSimulationTime();
+      realTime = System.currentTimeMillis() - startRealTime;
+      logger.info("Simulation with random seed " + seed + " finished with exit code " + exitCode);
+      return exitCode;
+    }
+
+    /**
+     * Called when Cooja quits instead of terminating the JVM.
+     *
+     * @param exitCode Exit code
+     */
+    void quit(int exitCode) {
+      if (done.getCount() == 0) {
+        return;
+      }
+      this.exitCode = exitCode;
+      done.countDown();
+    }
+
+    /**
+     * Called when the simulation thread ends without an error.
+     * A test script normally quits shortly after stopping the simulation.
+     * Nothing can resume a stopped batch simulation, so if it neither
+     * quits nor runs again within QUIT_TIMEOUT, the run fails.
+     *
+     * @param gui Cooja running the simulation
+     */
+    void simulationStopped(final Cooja gui) {
+      if (done.getCount() == 0) {
+        return;
+      }
+      Thread t = new Thread(new Runnable() {
+        public void run() {
+          try {
+            if (done.await(QUIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+              return;
+            }
+          } catch (InterruptedException e) {
+            return;
+          }
+          Simulation sim = gui.getSimulation();
+          if (sim != null && sim.isRunning()) {
+            return;
+          }
+          logger.fatal("Simulation with random seed " + seed + " stopped without quitting");
+          gui.doQuit(false, 1);
+        }
+      }, "batch run " + seed + " quit");
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+}
@@ -199,6 +199,12 @@ public class Cooja extends Observable {
 
   private static String specifiedContikiPath = null;
 
+  /**
+   * Test log written by test scripts in simulations without GUI.
+   */
+  public static final String TEST_LOG_FILENAME = "COOJA.testlog";
+  private static String testLogFilename = TEST_LOG_FILENAME; /* -testlog=, compressed if ending with .gz */
+
   /**
    * Logger settings filename.
    */
@@ -296,6 +302,8 @@ public class Cooja extends Observable {
 
   private Simulation mySimulation;
 
+  private BatchRunner.Run batchRun = null;
+
   protected GUIEventHandler guiEventHandler = new GUIEventHandler();
 
   private JMenu menuMoteTypeClasses, menuMoteTypes;
@@ -483,6 +491,45 @@ public class Cooja extends Observable {
     return isVisualizedInFrame() || isVisualizedInApplet();
   }
 
+  /**
+   * Simulations run by a {@link BatchRunner} share the JVM with other
+   * simulations: quitting reports the exit code instead of terminating.
+   *
+   * @return True if this Cooja runs a simulation of a batch
+   */
+  public boolean isBatchRun() {
+    return batchRun != null;
+  }
+
+  void setBatchRun(BatchRunner.Run batchRun) {
+    this.batchRun = batchRun;
+  }
+
+  /**
+   * Called when the simulation thread of a batch simulation ends.
+   *
+   * @see BatchRunner.Run#simulationStopped(Cooja)
+   */
+  void batchSimulationStopped() {
+    if (batchRun != null) {
+      batchRun.simulationStopped(this);
+    }
+  }
+
+  /**
+   * @return Test log file for simulations without GUI
+   */
+  public File getTestLogFile() {
+    if (batchRun != null) {
+      return batchRun.logFile;
+    }
+    return new File(testLogFilename);
+  }
+
+  static String getTestLogFilename() {
+    return testLogFilename;
+  }
+
   public static Container getTopParentContainer() {
     if (isVisualizedInFrame()) {
       return frame;
@@ -1279,7 +1326,7 @@ public class Cooja extends Observable {
     desktop.revalidate();
   }
 
-  private static JDesktopPane createDesktopPane() {
+  static JDesktopPane createDesktopPane() {
     final JDesktopPane desktop = new JDesktopPane() {
 			private static final long serialVersionUID = -8272040875621119329L;
 			public void setBounds(int x, int y, int w, int h) {
@@ -1340,6 +1387,46 @@ public class Cooja extends Observable {
     }
   }
 
+  /**
+   * Makes sure at least one plugin controls a simulation started without GUI.
+   *
+   * For backwards compatibility, a simulation without control plugin but with
+   * an external (old style) test script gets a test editor started manually.
+   *
+   * @param gui Cooja
+   * @param sim Simulation
+   * @param configFile Simulation config
+   * @return True if the simulation is controlled by a plugin
+   */
+  static boolean startSimulationControl(Cooja gui, Simulation sim, File configFile) {
+    for (Plugin startedPlugin : gui.startedPlugins) {
+      int pluginType = startedPlugin.getClass().getAnnotation(PluginType.class).value();
+      if (pluginType == PluginType.SIM_CONTROL_PLUGIN) {
+        return true;
+      }
+    }
+
+    String config = configFile.getPath();
+    File scriptFile = new File(config.substring(0, config.length()-4) + ".js");
+    if (!scriptFile.exists()) {
+      logger.fatal("No plugin controlling simulation, aborting");
+      return false;
+    }
+    logger.info("Detected old simulation test, starting test editor manually from: " + scriptFile);
+    ScriptRunner plugin = (ScriptRunner) gui.tryStartPlugin(ScriptRunner.class, gui, sim, null);
+    if (plugin == null) {
+      return false;
+    }
+    plugin.updateScript(scriptFile);
+    try {
+      plugin.setScriptActive(true);
+    } catch (Exception e) {
+      logger.fatal("Error: " + e.getMessage(), e);
+      return false;
+    }
+    return true;
+  }
+
   /**
    * Allows user to create a simulation with a single mote type.
    *
@@ -2741,6 +2828,11 @@ public class Cooja extends Observable {
         setExternalToolsSetting("FRAME_HEIGHT", "" + frame.getHeight());
       }
     }
+
+    if (batchRun != null) {
+      batchRun.quit(exitCode);
+      return;
+    }
     saveExternalToolsUserSettings();
 
     System.exit(exitCode);
@@ -3132,6 +3224,9 @@ public class Cooja extends Observable {
   public static void main(String[] args) {
     String logConfigFile = null;
     Long randomSeed = null;
+    String batchSeeds = null;
+    int batchThreads = Runtime.getRuntime().availableProcessors();
+    String batchSummary = "COOJA.batchlog";
     
     
     for (String element : args) {
@@ -3200,6 +3295,25 @@ public class Cooja extends Observable {
           logger.error("Failed to convert \"" + arg +"\" to an integer.");
         }
       }
+
+      if (element.startsWith("-testlog=")) {
+        testLogFilename = element.substring("-testlog=".length());
+      }
+
+      if (element.startsWith("-batch-seeds=")) {
+        batchSeeds = element.substring("-batch-seeds=".length());
+      }
+      if (element.startsWith("-batch-threads=")) {
+        String arg = element.substring("-batch-threads=".length());
+        try {
+          batchThreads = Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+          logger.error("Failed to convert \"" + arg +"\" to an integer.");
+        }
+      }
+      if (element.startsWith("-batch-summary=")) {
+        batchSummary = element.substring("-batch-summary=".length());
+      }
     }
 
     // Check if simulator should be quick-started
@@ -3236,47 +3350,36 @@ public class Cooja extends Observable {
       /* Load simulation */
       String config = args[0].substring("-nogui=".length());
       File configFile = new File(config);
-      Simulation sim = quickStartSimulationConfig(configFile, false, randomSeed);
-      if (sim == null) {
-        System.exit(1);
-      }
-      Cooja gui = sim.getCooja();
-
-      /* Make sure at least one plugin controlling the simulation */
-      boolean hasController = false;
-      for (Plugin startedPlugin : gui.startedPlugins) {
-    	int pluginType = startedPlugin.getClass().getAnnotation(PluginType.class).value();
-    	if (pluginType == PluginType.SIM_CONTROL_PLUGIN) {
-    	  hasController = true;
-    	}
-      }
 
-      /* Backwards compatibility:
-       * simulation has no control plugin, but has external (old style) test script.
-       * We will manually start a test editor from here. */
-      if (!hasController) {
-        File scriptFile = new File(config.substring(0, config.length()-4) + ".js");
-        if (scriptFile.exists()) {
-          logger.info("Detected old simulation test, starting test editor manually from: " + scriptFile);
-          ScriptRunner plugin = (ScriptRunner) gui.tryStartPlugin(ScriptRunner.class, gui, sim, null);
-          if (plugin == null) {
-            System.exit(1);
-          }
-          plugin.updateScript(scriptFile);
-          try {
-            plugin.setScriptActive(true);
-          } catch (Exception e) {
-            logger.fatal("Error: " + e.getMessage(), e);
-            System.exit(1);
-          }
-        } else {
-          logger.fatal("No plugin controlling simulation, aborting");
+      if (batchSeeds != null) {
+        /* Run config for a range of random seeds: -batch-seeds=<first>-<last> */
+        long firstSeed, lastSeed;
+        try {
+          int sep = batchSeeds.indexOf('-', 1);
+          firstSeed = Long.parseLong(batchSeeds.substring(0, sep));
+          lastSeed = Long.parseLong(batchSeeds.substring(sep + 1));
+        } catch (Exception e) {
+          logger.fatal("Bad random seed range, expected <first>-<last>: " + batchSeeds);
+          System.exit(1);
+          return;
+        }
+        if (firstSeed > lastSeed || batchThreads < 1) {
+          logger.fatal("Bad batch arguments: seeds " + batchSeeds + ", threads " + batchThreads);
           System.exit(1);
         }
+        BatchRunner batch = new BatchRunner(
+            configFile, firstSeed, lastSeed, batchThreads, new File(batchSummary));
+        System.exit(batch.run());
       }
 
+      Simulation sim = quickStartSimulationConfig(configFile, false, randomSeed);
+      if (sim == null) {
+        System.exit(1);
+      }
+      if (!startSimulationControl(sim.getCooja(), sim, configFile)) {
+        System.exit(1);
+      }
 
-      
     } else if (args.length > 0 && args[0].startsWith("-applet")) {
 
       String tmpWebPath=null, tmpBuildPath=null, tmpEsbFirmware=null, tmpSkyFirmware=null;
@@ -3366,6 +3469,23 @@ public class Cooja extends Observable {
     }
   }
 
+  /**
+   * Loads a simulation configuration from an already parsed config.
+   *
+   * @param root Config root element, detached by this method
+   * @param file Config file, used to restore config relative paths
+   * @return New simulation or null
+   */
+  Simulation loadSimulationConfig(Element root, File file, boolean quick, Long manualRandomSeed)
+  throws SimulationCreationException {
+    this.currentConfigFile = file; /* Used to generate config relative paths */
+    try {
+      this.currentConfigFile = this.currentConfigFile.getCanonicalFile();
+    } catch (IOException e) {
+    }
+    return loadSimulationConfig(root, quick, manualRandomSeed);
+  }
+
   public Simulation loadSimulationConfig(Element root, boolean quick, Long manualRandomSeed)
   throws SimulationCreationException {
     Simulation newSim = null;
@@ -30,13 +30,24 @@
 
 package org.contikios.cooja;
 
+import java.util.List;
+
 /**
+ * Simulation event queue.
+ *
+ * Events are ordered by execution time. Events scheduled for the same time
+ * are executed in the order they were added (FIFO).
+ *
+ * Removing an event via {@link TimeEvent#remove()} only clears its scheduled
+ * flag; the event is skipped when it reaches the head of the queue.
+ *
+ * @see LinkedEventQueue
+ * @see HeapEventQueue
  * @author Joakim Eriksson (ported to COOJA by Fredrik Osterlind)
  */
-public class EventQueue {
+public abstract class EventQueue {
 
-  private TimeEvent first;
-  private int eventCount = 0;
+  protected int eventCount = 0;
 
   /**
    * Should only be called from simulation thread!
@@ -45,76 +56,45 @@ public class EventQueue {
    * @param time Time
    */
   public void addEvent(TimeEvent event, long time) {
-    event.time = time;
-    addEvent(event);
-  }
-
-  private void addEvent(TimeEvent event) {
     if (event.queue != null) {
       if (event.isScheduled) {
         throw new IllegalStateException("Event is already scheduled: " + event);
       }
-      removeFromQueue(event);
-    }
-
-    if (first == null) {
-      first = event;
-    } else {
-      TimeEvent pos = first;
-      TimeEvent lastPos = first;
-      while (pos != null && pos.time <= event.time) {
-        lastPos = pos;
-        pos = pos.nextEvent;
-      }
-      // Here pos will be the first TE after event
-      // and lastPos the first before
-      if (pos == first) {
-        // Before all other
-        event.nextEvent = pos;
-        first = event;
-      } else {
-        event.nextEvent = pos;
-        lastPos.nextEvent = event;
+      EventQueue old = event.queue;
+      if (old.removeFromQueue(event)) {
+        old.eventCount--;
       }
+      event.queue = null;
     }
+    event.time = time;
+    addEvent(event);
     event.queue = this;
     event.isScheduled = true;
     eventCount++;
   }
 
   /**
-   * Should only be called from simulation thread!
+   * Inserts event in queue, ordered by time.
+   * The event is not part of any queue when this method is called.
    *
    * @param event Event
-   * @return True if event was removed
    */
-  private boolean removeFromQueue(TimeEvent event) {
-    TimeEvent pos = first;
-    TimeEvent lastPos = first;
+  protected abstract void addEvent(TimeEvent event);
 
-    while (pos != null && pos != event) {
-      lastPos = pos;
-      pos = pos.nextEvent;
-    }
-    if (pos == null) {
-      return false;
-    }
-    // pos == event!
-    if (pos == first) {
-      // remove it from first pos.
-      first = pos.nextEvent;
-    } else {
-      // else link prev to next...
-      lastPos.nextEvent = pos.nextEvent;
-    }
-    // unlink
-    pos.nextEvent = null;
+  /**
+   * Unlinks event from queue.
+   *
+   * @param event Event
+   * @return True if event was removed
+   */
+  protected abstract boolean removeFromQueue(TimeEvent event);
 
-    event.queue = null;
-    event.isScheduled = false;
-    eventCount--;
-    return true;
-  }
+  /**
+   * Unlinks and returns the first event, scheduled or not.
+   *
+   * @return Event or null
+   */
+  protected abstract TimeEvent removeFirst();
 
   public void removeAll() {
     TimeEvent event = popFirst();
@@ -129,32 +109,66 @@ public class EventQueue {
    * @return Event
    */
   public TimeEvent popFirst() {
-    TimeEvent tmp = first;
-    if (tmp == null) {
-      return null;
+    TimeEvent tmp = removeFirst();
+    while (tmp != null) {
+      /* No longer scheduled! */
+      tmp.queue = null;
+      eventCount--;
+
+      if (tmp.isScheduled) {
+        tmp.isScheduled = false;
+        return tmp;
+      }
+
+      /* pop and return another event instead */
+      tmp = removeFirst();
     }
+    return null;
+  }
+
+  /**
+   * @return First event in queue, possibly removed. May be null.
+   */
+  public abstract TimeEvent peekFirst();
 
-    first = tmp.nextEvent;
-    // Unlink.
-    tmp.nextEvent = null;
+  /**
+   * Returns all events in queue, including removed events that have not yet
+   * been popped. The events are not ordered.
+   *
+   * @return Events
+   */
+  public abstract TimeEvent[] getEvents();
 
-    // No longer scheduled!
-    tmp.queue = null;
-    eventCount--;
+  /**
+   * Adds all scheduled events with given execution time to list.
+   * The events are not ordered.
+   *
+   * @param time Execution time, not later than the first event in queue
+   * @param events List to add events to
+   */
+  public abstract void collectEvents(long time, List<TimeEvent> events);
 
-    if (!tmp.isScheduled) {
-      /* pop and return another event instead */
-      return popFirst();
-    }
-    tmp.isScheduled = false;
-    return tmp;
+  /**
+   * @return Number of events in queue, including removed events
+   */
+  public int size() {
+    return eventCount;
   }
 
-  public TimeEvent peekFirst() {
-    return first;
+  /**
+   * Moves all scheduled events from this queue to the given queue,
+   * keeping the execution order.
+   *
+   * @param queue Destination queue
+   */
+  public void transferTo(EventQueue queue) {
+    TimeEvent event;
+    while ((event = popFirst()) != null) {
+      queue.addEvent(event, event.time);
+    }
   }
 
   public String toString() {
-    return "EventQueue with " + eventCount + " events";
+    return getClass().getSimpleName() + " with " + eventCount + " events";
   }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event queue implemented as a binary min-heap.
+ *
+ * Insertion, removal and popping the first event are O(log n).
+ * Events scheduled for the same time are ordered by an insertion sequence
+ * number, which gives the same execution order as {@link LinkedEventQueue}.
+ *
+ * @author Fredrik Osterlind
+ */
+public class HeapEventQueue extends EventQueue {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private TimeEvent[] heap = new TimeEvent[INITIAL_CAPACITY];
+  private int size = 0;
+  private long nextSequence = 0;
+
+  protected void addEvent(TimeEvent event) {
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, 2*heap.length);
+    }
+    event.sequence = nextSequence++;
+    heap[size] = event;
+    event.heapIndex = size;
+    size++;
+    siftUp(event.heapIndex);
+  }
+
+  protected boolean removeFromQueue(TimeEvent event) {
+    int i = event.heapIndex;
+    if (i < 0 || i >= size || heap[i] != event) {
+      return false;
+    }
+    removeAt(i);
+    return true;
+  }
+
+  protected TimeEvent removeFirst() {
+    if (size == 0) {
+      return null;
+    }
+    TimeEvent first = heap[0];
+    removeAt(0);
+    return first;
+  }
+
+  public TimeEvent peekFirst() {
+    if (size == 0) {
+      return null;
+    }
+    return heap[0];
+  }
+
+  public TimeEvent[] getEvents() {
+    return Arrays.copyOf(heap, size);
+  }
+
+  public void collectEvents(long time, List<TimeEvent> events) {
+    collectEvents(0, time, events);
+  }
+
+  /* Events at given time form a subtree at the top of the heap */
+  private void collectEvents(int i, long time, List<TimeEvent> events) {
+    if (i >= size || heap[i].time != time) {
+      return;
+    }
+    if (heap[i].isScheduled) {
+      events.add(heap[i]);
+    }
+    collectEvents(2*i + 1, time, events);
+    collectEvents(2*i + 2, time, events);
+  }
+
+  private void removeAt(int i) {
+    TimeEvent removed = heap[i];
+    size--;
+    if (i != size) {
+      heap[i] = heap[size];
+      heap[i].heapIndex = i;
+      heap[size] = null;
+      if (!siftUp(i)) {
+        siftDown(i);
+      }
+    } else {
+      heap[size] = null;
+    }
+    removed.heapIndex = -1;
+  }
+
+  private static boolean before(TimeEvent a, TimeEvent b) {
+    if (a.time != b.time) {
+      return a.time < b.time;
+    }
+    return a.sequence < b.sequence;
+  }
+
+  /**
+   * @return True if event was moved
+   */
+  private boolean siftUp(int i) {
+    TimeEvent event = heap[i];
+    int start = i;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!before(event, heap[parent])) {
+        break;
+      }
+      heap[i] = heap[parent];
+      heap[i].heapIndex = i;
+      i = parent;
+    }
+    heap[i] = event;
+    event.heapIndex = i;
+    return i != start;
+  }
+
+  private void siftDown(int i) {
+    TimeEvent event = heap[i];
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2*i + 1;
+      int right = child + 1;
+      if (right < size && before(heap[right], heap[child])) {
+        child = right;
+      }
+      if (!before(heap[child], event)) {
+        break;
+      }
+      heap[i] = heap[child];
+      heap[i].heapIndex = i;
+      i = child;
+    }
+    heap[i] = event;
+    event.heapIndex = i;
+  }
+}
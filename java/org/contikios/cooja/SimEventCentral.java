@@ -29,9 +29,10 @@
 package org.contikios.cooja;
 
 import java.io.File;
-import java.util.ArrayDeque;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Vector;
@@ -42,12 +43,19 @@ import org.jdom.Element;
 import org.contikios.cooja.MoteType.MoteTypeCreationException;
 import org.contikios.cooja.interfaces.Log;
 import org.contikios.cooja.util.ArrayUtils;
+import org.contikios.cooja.util.LogBuffer;
+import org.contikios.cooja.util.LogStore;
 
 /**
  * Simulation event central. Simplifies implementations of plugins that observe
  * motes and mote interfaces by keeping track of added and removed motes. For a
  * selected set of interfaces, the event central also maintains an event
  * history.
+ *
+ * Log output history is kept in a compact in-memory buffer, limited by the
+ * log output buffer size and memory budget. If the log output store is
+ * enabled, all log output is also written to disk, and the in-memory
+ * history acts as a cache of the most recent output.
  * 
  * @see LogOutputEvent
  * @author Fredrik Osterlind
@@ -62,6 +70,8 @@ public class SimEventCentral {
 
     /* Default buffer sizes */
     logOutputBufferSize = Integer.parseInt(Cooja.getExternalToolsSetting("BUFFERSIZE_LOGOUTPUT", "" + 40000));
+    logOutputMemoryBudget = Long.parseLong(Cooja.getExternalToolsSetting("BUFFERMEMORY_LOGOUTPUT", "" + 64))*1024*1024;
+    logOutputStoreEnabled = Boolean.parseBoolean(Cooja.getExternalToolsSetting("LOGOUTPUT_STORE", "false"));
 
     
     moteObservations = new ArrayList<MoteObservation>();
@@ -71,7 +81,11 @@ public class SimEventCentral {
 
     /* Log output: notifications and history */
     logOutputListeners = new LogOutputListener[0];
-    logOutputEvents = new ArrayDeque<LogOutputEvent>();
+    removedLogOutputListeners = new LogOutputListener[0];
+    logOutputEvents = new LogBuffer(logOutputMemoryBudget, true);
+    if (logOutputStoreEnabled) {
+      createLogOutputStore();
+    }
   }
   
 
@@ -188,21 +202,40 @@ public class SimEventCentral {
   /* LOG OUTPUT */
   public static class LogOutputEvent extends MoteEvent {
     public final String msg;
+    private final int moteID;
     public LogOutputEvent(Mote mote, long time, String msg) {
+      this(mote, mote.getID(), time, msg);
+    }
+    /**
+     * @param mote Mote, or null if no longer in simulation
+     * @param moteID Mote ID
+     * @param time Simulation time
+     * @param msg Log message
+     */
+    public LogOutputEvent(Mote mote, int moteID, long time, String msg) {
       super(mote, time);
+      this.moteID = moteID;
       this.msg = msg;
     }
+    public int getMoteID() {
+      return moteID;
+    }
     public String getMessage() {
       return msg;
     }
   }
   private int logOutputBufferSize;
-  private ArrayDeque<LogOutputEvent> logOutputEvents;
+  private long logOutputMemoryBudget;
+  private LogBuffer logOutputEvents;
+  private HashMap<Integer, Mote> logOutputMotes = new HashMap<Integer, Mote>();
+  private boolean logOutputStoreEnabled;
+  private LogStore logOutputStore = null;
   public interface LogOutputListener extends MoteCountListener {
     public void removedLogOutput(LogOutputEvent ev);
     public void newLogOutput(LogOutputEvent ev);
   }
   private LogOutputListener[] logOutputListeners;
+  private LogOutputListener[] removedLogOutputListeners; /* Notified of removed log output */
   private Observer logOutputObserver = new Observer() {
     public void update(Observable obs, Object obj) {
       Mote mote = (Mote) obj;
@@ -215,23 +248,26 @@ public class SimEventCentral {
       }
 
       /* We may have to remove some events now */
-      while (logOutputEvents.size() > logOutputBufferSize-1) {
-        LogOutputEvent removed;
-        synchronized (logOutputEvents) {
-          removed = logOutputEvents.pollFirst();
-        }
-        if (removed == null) {
+      while (logOutputEvents.size() > logOutputBufferSize-1 || logOutputEvents.isFull()) {
+        if (!removeFirstLogOutput()) {
           break;
         }
-        for (LogOutputListener l: logOutputListeners) {
-          l.removedLogOutput(removed);
-        }
       }
 
       /* Store log output, and notify listeners */
       LogOutputEvent ev = new LogOutputEvent(mote, simulation.getSimulationTime(), msg);
       synchronized (logOutputEvents) {
-        logOutputEvents.add(ev);
+        if (logOutputStore != null) {
+          try {
+            logOutputStore.append(ev.getTime(), mote.getID(), msg);
+          } catch (IOException e) {
+            logger.fatal("Error when storing log output, disabling log output store: " + e.getMessage(), e);
+            logOutputStore.close();
+            logOutputStore = null;
+            logOutputStoreEnabled = false;
+          }
+        }
+        logOutputEvents.add(ev.getTime(), ev.getMoteID(), msg);
       }
       for (LogOutputListener l: logOutputListeners) {
         l.newLogOutput(ev);
@@ -239,6 +275,19 @@ public class SimEventCentral {
     }
   };
   public void addLogOutputListener(LogOutputListener listener) {
+    addLogOutputListener(listener, true);
+  }
+
+  /**
+   * Adds log output listener.
+   *
+   * Removing log output from the history creates an event per removed line.
+   * Listeners that ignore removed log output should not be notified of it.
+   *
+   * @param listener Listener
+   * @param notifyRemoved True if listener should be notified of removed log output
+   */
+  public void addLogOutputListener(LogOutputListener listener, boolean notifyRemoved) {
     if (logOutputListeners.length == 0) {
       /* Start observing all log interfaces */
       Mote[] motes = simulation.getMotes();
@@ -252,10 +301,14 @@ public class SimEventCentral {
     }
 
     logOutputListeners = ArrayUtils.add(logOutputListeners, listener);
+    if (notifyRemoved) {
+      removedLogOutputListeners = ArrayUtils.add(removedLogOutputListeners, listener);
+    }
     addMoteCountListener(listener);
   }
   public void removeLogOutputListener(LogOutputListener listener) {
     logOutputListeners = ArrayUtils.remove(logOutputListeners, listener);
+    removedLogOutputListeners = ArrayUtils.remove(removedLogOutputListeners, listener);
     removeMoteCountListener(listener);
 
     if (logOutputListeners.length == 0) {
@@ -269,13 +322,244 @@ public class SimEventCentral {
       }
 
       /* Clear logs (TODO config) */
-      logOutputEvents.clear();
+      synchronized (logOutputEvents) {
+        logOutputEvents.clear();
+        if (logOutputStore != null) {
+          if (logOutputStoreEnabled) {
+            logOutputStore.clear();
+          } else {
+            logOutputStore.close();
+            logOutputStore = null;
+          }
+        }
+      }
     }
   }
 
+  /**
+   * @return Log output kept in memory, at most log output buffer size
+   */
   public LogOutputEvent[] getLogOutputHistory() {
     synchronized (logOutputEvents) {
-      return logOutputEvents.toArray(new LogOutputEvent[0]);
+      LogOutputEvent[] events = new LogOutputEvent[logOutputEvents.size()];
+      for (int i = 0; i < events.length; i++) {
+        events[i] = createLogOutputEvent(i);
+      }
+      return events;
+    }
+  }
+
+  /**
+   * Returns the number of log output messages in the history. If the log
+   * output store is enabled, this is all log output since the last log
+   * output listener was added to an empty list of listeners. Otherwise this
+   * is the in-memory history, and indices shift as old output is removed.
+   *
+   * @return Log output history size
+   * @see #getLogOutputHistory(long, int)
+   */
+  public long getLogOutputHistorySize() {
+    synchronized (logOutputEvents) {
+      if (logOutputStore != null) {
+        return logOutputStore.size();
+      }
+      return logOutputEvents.size();
+    }
+  }
+
+  /**
+   * Returns a page of the log output history. Recent output is read from
+   * memory, older output from the log output store.
+   *
+   * Events read from the store refer to the mote with the same ID in the
+   * simulation, or to no mote if it has been removed.
+   *
+   * @param first Index of first message
+   * @param count Maximum number of messages
+   * @return Log output, fewer than count at the end of the history
+   * @see #getLogOutputHistorySize()
+   */
+  public LogOutputEvent[] getLogOutputHistory(long first, int count) {
+    LogStore store;
+    long stored;
+    ArrayList<LogOutputEvent> tail = new ArrayList<LogOutputEvent>();
+    synchronized (logOutputEvents) {
+      first = Math.max(0, first);
+      store = logOutputStore;
+      long size = store != null ? store.size() : logOutputEvents.size();
+      long tailStart = size - Math.min(size, logOutputEvents.size());
+      count = (int) Math.max(0, Math.min(count, size - first));
+      stored = Math.max(0, Math.min(count, tailStart - first));
+      for (long i = Math.max(first, tailStart); i < first + count; i++) {
+        tail.add(createLogOutputEvent((int) (logOutputEvents.size() - (size - i))));
+      }
+    }
+
+    LogOutputEvent[] events = new LogOutputEvent[count];
+    if (stored > 0) {
+      try {
+        LogStore.Entry[] entries = store.read(first, (int) stored);
+        for (int i = 0; i < entries.length; i++) {
+          events[i] = createLogOutputEvent(entries[i]);
+        }
+      } catch (IOException e) {
+        logger.fatal("Error when reading log output store: " + e.getMessage(), e);
+        return new LogOutputEvent[0];
+      }
+    }
+    for (int i = 0; i < tail.size(); i++) {
+      events[(int) stored + i] = tail.get(i);
+    }
+    return events;
+  }
+
+  /**
+   * Returns log output of a single mote. If the log output store is enabled,
+   * parts of the store without output of the mote are skipped without being
+   * read.
+   *
+   * @param first Index to start searching from
+   * @param count Maximum number of messages
+   * @param moteID Mote ID
+   * @return Log output, fewer than count at the end of the history
+   */
+  public LogOutputEvent[] getLogOutputHistory(long first, int count, int moteID) {
+    LogStore store = logOutputStore;
+    if (store == null) {
+      ArrayList<LogOutputEvent> events = new ArrayList<LogOutputEvent>();
+      synchronized (logOutputEvents) {
+        for (int i = (int) Math.max(0, first); i < logOutputEvents.size() && events.size() < count; i++) {
+          if (logOutputEvents.getMoteID(i) == moteID) {
+            events.add(createLogOutputEvent(i));
+          }
+        }
+      }
+      return events.toArray(new LogOutputEvent[events.size()]);
+    }
+
+    try {
+      LogStore.Entry[] entries = store.read(first, count, moteID, null);
+      LogOutputEvent[] events = new LogOutputEvent[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        events[i] = createLogOutputEvent(entries[i]);
+      }
+      return events;
+    } catch (IOException e) {
+      logger.fatal("Error when reading log output store: " + e.getMessage(), e);
+      return new LogOutputEvent[0];
+    }
+  }
+
+  /**
+   * @param time Simulation time
+   * @return Index of first log output at or after given time
+   * @see #getLogOutputHistory(long, int)
+   */
+  public long findLogOutputHistory(long time) {
+    LogStore store = logOutputStore;
+    if (store != null) {
+      try {
+        return store.indexOf(time);
+      } catch (IOException e) {
+        logger.fatal("Error when reading log output store: " + e.getMessage(), e);
+      }
+    }
+    synchronized (logOutputEvents) {
+      int low = 0, high = logOutputEvents.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (logOutputEvents.getTime(mid) < time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  private LogOutputEvent createLogOutputEvent(LogStore.Entry entry) {
+    return new LogOutputEvent(
+        getLogOutputMote(entry.moteID), entry.moteID, entry.time, entry.msg);
+  }
+  private LogOutputEvent createLogOutputEvent(int index) {
+    int moteID = logOutputEvents.getMoteID(index);
+    return new LogOutputEvent(getLogOutputMote(moteID), moteID,
+        logOutputEvents.getTime(index), logOutputEvents.getMessage(index));
+  }
+  private Mote getLogOutputMote(int moteID) {
+    synchronized (logOutputMotes) {
+      Mote mote = logOutputMotes.get(moteID);
+      if (mote == null || mote.getID() != moteID) {
+        mote = simulation.getMoteWithID(moteID);
+        if (mote != null) {
+          logOutputMotes.put(moteID, mote);
+        }
+      }
+      return mote;
+    }
+  }
+  /**
+   * Removes oldest log output from history, and notifies listeners.
+   * The removed event is only created if a listener is notified.
+   *
+   * @return True if log output was removed, false if history was empty
+   */
+  private boolean removeFirstLogOutput() {
+    LogOutputListener[] listeners = removedLogOutputListeners;
+    LogOutputEvent removed = null;
+    synchronized (logOutputEvents) {
+      if (logOutputEvents.isEmpty()) {
+        return false;
+      }
+      if (listeners.length > 0) {
+        removed = createLogOutputEvent(0);
+      }
+      logOutputEvents.removeFirst();
+    }
+    for (LogOutputListener l: listeners) {
+      l.removedLogOutput(removed);
+    }
+    return true;
+  }
+
+  /**
+   * @return True if all log output is stored on disk
+   */
+  public boolean isLogOutputStored() {
+    return logOutputStore != null;
+  }
+  public boolean isLogOutputStoreEnabled() {
+    return logOutputStoreEnabled;
+  }
+
+  /**
+   * Enables or disables the log output store. When disabled while log output
+   * listeners remain, the store is kept until the last listener is removed.
+   *
+   * @param enabled Store all log output on disk
+   */
+  public void setLogOutputStoreEnabled(boolean enabled) {
+    logOutputStoreEnabled = enabled;
+    if (enabled && logOutputStore == null) {
+      createLogOutputStore();
+    } else if (!enabled && logOutputStore != null && logOutputListeners.length == 0) {
+      synchronized (logOutputEvents) {
+        logOutputStore.close();
+        logOutputStore = null;
+      }
+    }
+  }
+
+  private void createLogOutputStore() {
+    try {
+      LogStore store = LogStore.createTemporary("cooja-log");
+      synchronized (logOutputEvents) {
+        logOutputStore = store;
+      }
+    } catch (IOException e) {
+      logger.fatal("Could not create log output store: " + e.getMessage(), e);
+      logOutputStoreEnabled = false;
     }
   }
   public int getLogOutputBufferSize() {
@@ -286,15 +570,17 @@ public class SimEventCentral {
     
     /* We may have to remove some events now */
     while (logOutputEvents.size() > logOutputBufferSize) {
-      LogOutputEvent removed = logOutputEvents.pollFirst();
-      if (removed == null) {
+      if (!removeFirstLogOutput()) {
         break;
       }
-      for (LogOutputListener l: logOutputListeners) {
-        l.removedLogOutput(removed);
-      }
     }
   }
+  /**
+   * @return Memory budget of in-memory log output history (bytes)
+   */
+  public long getLogOutputMemoryBudget() {
+    return logOutputMemoryBudget;
+  }
   public int getLogOutputObservationsCount() {
     int count=0;
     MoteObservation[] observations = moteObservations.toArray(new MoteObservation[0]);
@@ -322,6 +608,10 @@ public class SimEventCentral {
     /* ... */
   }
   private void moteWasRemoved(Mote mote) {
+    synchronized (logOutputMotes) {
+      logOutputMotes.remove(mote.getID());
+    }
+
     /* Disconnect and remove mote observations */
     MoteObservation[] observations = moteObservations.toArray(new MoteObservation[0]);
     for (MoteObservation o: observations) {
@@ -339,9 +629,22 @@ public class SimEventCentral {
     "\nMote count listeners: " + moteCountListeners.length +
     "\n" +
     "\nLog output listeners: " + logOutputListeners.length +
-    "\nLog output history: " + logOutputEvents.size()
+    "\nLog output history: " + logOutputEvents +
+    (logOutputStore != null ? "\nLog output store: " + logOutputStore.size() : "")
     ;
   }
+
+  /**
+   * Called when the simulation is removed. Removes the log output store.
+   */
+  public void removed() {
+    synchronized (logOutputEvents) {
+      if (logOutputStore != null) {
+        logOutputStore.close();
+        logOutputStore = null;
+      }
+    }
+  }
   
 
   public Collection<Element> getConfigXML() {
@@ -353,6 +656,13 @@ public class SimEventCentral {
     element.setText("" + logOutputBufferSize);
     config.add(element);
 
+    /* Log output store */
+    if (logOutputStoreEnabled) {
+      element = new Element("logoutputstore");
+      element.setText("true");
+      config.add(element);
+    }
+
     return config;
   }
 
@@ -363,6 +673,8 @@ public class SimEventCentral {
       String name = element.getName();
       if (name.equals("logoutput")) {
         logOutputBufferSize = Integer.parseInt(element.getText());
+      } else if (name.equals("logoutputstore")) {
+        setLogOutputStoreEnabled(Boolean.parseBoolean(element.getText()));
       }
     }
     return true;
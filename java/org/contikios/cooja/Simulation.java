@@ -31,10 +31,14 @@ package org.contikios.cooja;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
 
@@ -106,7 +110,7 @@ public class Simulation extends Observable implements Runnable {
   }
 
   /* Event queue */
-  private EventQueue eventQueue = new EventQueue();
+  private EventQueue eventQueue = new LinkedEventQueue();
 
   /* Poll requests */
   private boolean hasPollRequests = false;
@@ -195,6 +199,136 @@ public class Simulation extends Observable implements Runnable {
     eventQueue.addEvent(e, time);
   }
 
+  /**
+   * @return True if events are kept in a heap instead of a sorted list
+   */
+  public boolean isHeapEventQueue() {
+    return eventQueue instanceof HeapEventQueue;
+  }
+
+  /**
+   * Selects the event queue implementation.
+   * Already scheduled events are moved to the new queue.
+   *
+   * The heap queue scales to large number of motes.
+   * Both queues execute events in the same order.
+   *
+   * @see HeapEventQueue
+   * @see LinkedEventQueue
+   * @param heap True if events should be kept in a heap
+   */
+  public void setHeapEventQueue(final boolean heap) {
+    Runnable r = new Runnable() {
+      public void run() {
+        if (heap == isHeapEventQueue()) {
+          return;
+        }
+        EventQueue newQueue = heap?new HeapEventQueue():new LinkedEventQueue();
+        eventQueue.transferTo(newQueue);
+        eventQueue = newQueue;
+        logger.info("Simulation event queue: " + (heap?"heap":"list"));
+      }
+    };
+    if (!isRunning()) {
+      r.run();
+    } else {
+      invokeSimulationThread(r);
+    }
+  }
+
+  /* Parallel mote execution */
+  private int parallelThreads = 0;
+  private ExecutorService parallelExecutor = null;
+  private long speculationTime = -1;
+  private ArrayList<TimeEvent> speculationEvents = new ArrayList<TimeEvent>();
+  private HashSet<Object> speculationResources = new HashSet<Object>();
+
+  /**
+   * @return Number of worker threads for parallel mote execution, 0 if disabled
+   */
+  public int getParallelExecution() {
+    return parallelThreads;
+  }
+
+  /**
+   * Enables or disables parallel mote execution.
+   *
+   * When enabled, motes scheduled to execute at the current simulation time
+   * are executed speculatively on worker threads, if they support it.
+   * A speculative result is only used if it is identical to what sequential
+   * execution would have produced.
+   *
+   * Motes sharing an execution resource never run concurrently. All Contiki
+   * motes of a type share one loaded Contiki library, so only motes of
+   * different types run in parallel. Emulated motes, such as MSPSim motes,
+   * do not support speculative execution and always run sequentially.
+   *
+   * @see SpeculativeMote
+   * @param threads Number of worker threads, 0 to disable
+   */
+  public void setParallelExecution(final int threads) {
+    Runnable r = new Runnable() {
+      public void run() {
+        if (threads == parallelThreads) {
+          return;
+        }
+        if (parallelExecutor != null) {
+          parallelExecutor.shutdown();
+          parallelExecutor = null;
+        }
+        parallelThreads = threads;
+        speculationTime = -1;
+        if (threads > 0) {
+          parallelExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "mote worker");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+        }
+        logger.info("Parallel mote execution: " + (threads > 0?threads + " threads":"disabled"));
+      }
+    };
+    if (!isRunning()) {
+      r.run();
+    } else {
+      invokeSimulationThread(r);
+    }
+  }
+
+  /**
+   * Starts speculative execution of motes scheduled at the current simulation
+   * time. Motes sharing execution resource with the given event are skipped.
+   *
+   * @param current Event about to be executed
+   */
+  private void startSpeculation(TimeEvent current) {
+    speculationResources.clear();
+    if (current instanceof MoteTimeEvent
+        && ((MoteTimeEvent)current).getMote() instanceof SpeculativeMote) {
+      speculationResources.add(
+          ((SpeculativeMote)((MoteTimeEvent)current).getMote()).getExecutionResource());
+    }
+
+    speculationEvents.clear();
+    eventQueue.collectEvents(currentSimulationTime, speculationEvents);
+    for (TimeEvent event: speculationEvents) {
+      if (!(event instanceof MoteTimeEvent)
+          || !(((MoteTimeEvent)event).getMote() instanceof SpeculativeMote)) {
+        continue;
+      }
+      SpeculativeMote mote = (SpeculativeMote) ((MoteTimeEvent)event).getMote();
+      if (speculationResources.contains(mote.getExecutionResource())) {
+        continue;
+      }
+      if (mote.startSpeculation(currentSimulationTime, parallelExecutor)) {
+        speculationResources.add(mote.getExecutionResource());
+      }
+    }
+    speculationEvents.clear();
+  }
+
   private TimeEvent delayEvent = new TimeEvent(0) {
     public void execute(long t) {
       if (speedLimitNone) {
@@ -260,6 +394,7 @@ public class Simulation extends Observable implements Runnable {
     this.notifyObservers(this);
 
     TimeEvent nextEvent = null;
+    boolean failed = false;
     try {
       while (isRunning) {
 
@@ -277,6 +412,10 @@ public class Simulation extends Observable implements Runnable {
           throw new RuntimeException("Next event is in the past: " + nextEvent.time + " < " + currentSimulationTime + ": " + nextEvent);
         }
         currentSimulationTime = nextEvent.time;
+        if (parallelExecutor != null && currentSimulationTime != speculationTime) {
+          speculationTime = currentSimulationTime;
+          startSpeculation(nextEvent);
+        }
         /*logger.info("Executing event #" + EVENT_COUNTER++ + " @ " + currentSimulationTime + ": " + nextEvent);*/
         nextEvent.execute(currentSimulationTime);
 
@@ -288,10 +427,15 @@ public class Simulation extends Observable implements Runnable {
     	if ("MSPSim requested simulation stop".equals(e.getMessage())) {
     		/* XXX Should be*/
     		logger.info("Simulation stopped due to MSPSim breakpoint");
+    		/* Batch simulations cannot be resumed */
+    		failed = cooja.isBatchRun();
     	} else {
 
     		logger.fatal("Simulation stopped due to error: " + e.getMessage(), e);
-    		if (!Cooja.isVisualized()) {
+    		if (cooja != null && cooja.isBatchRun()) {
+    		  /* Other simulations of the batch are still running */
+    		  failed = true;
+    		} else if (!Cooja.isVisualized()) {
     			/* Quit simulator if in test mode */
     			System.exit(1);
     		} else {
@@ -316,6 +460,12 @@ public class Simulation extends Observable implements Runnable {
                 " ms\tRatio " +
                 ((double)getSimulationTimeMillis() /
                  (double)(System.currentTimeMillis() - lastStartTime)));
+
+    if (failed) {
+      cooja.doQuit(false, 1);
+    } else if (cooja != null && cooja.isBatchRun()) {
+      cooja.batchSimulationStopped();
+    }
   }
 
   /**
@@ -496,6 +646,21 @@ public class Simulation extends Observable implements Runnable {
     element.setText(Long.toString(maxMoteStartupDelay));
     config.add(element);
 
+    /* Event queue */
+    if (isHeapEventQueue()) {
+      element = new Element("eventqueue");
+      element.setText("heap");
+      config.add(element);
+    }
+
+    /* Parallel mote execution: number of worker threads.
+     * Only Contiki motes of different types run concurrently. */
+    if (parallelThreads > 0) {
+      element = new Element("parallelexecution");
+      element.setText(Integer.toString(parallelThreads));
+      config.add(element);
+    }
+
     // Radio Medium
     element = new Element("radiomedium");
     element.setText(currentRadioMedium.getClass().getName());
@@ -611,6 +776,16 @@ public class Simulation extends Observable implements Runnable {
         maxMoteStartupDelay = Integer.parseInt(element.getText());
       }
 
+      /* Event queue */
+      if (element.getName().equals("eventqueue")) {
+        setHeapEventQueue(element.getText().trim().equals("heap"));
+      }
+
+      /* Parallel mote execution */
+      if (element.getName().equals("parallelexecution")) {
+        setParallelExecution(Integer.parseInt(element.getText().trim()));
+      }
+
       // Radio medium
       if (element.getName().equals("radiomedium")) {
         String radioMediumClassName = element.getText().trim();
@@ -785,14 +960,12 @@ public class Simulation extends Observable implements Runnable {
 
         /* Loop through all scheduled events.
          * Delete all events associated with deleted mote. */
-        TimeEvent ev = eventQueue.peekFirst();
-        while (ev != null) {
+        for (TimeEvent ev: eventQueue.getEvents()) {
           if (ev instanceof MoteTimeEvent) {
             if (((MoteTimeEvent)ev).getMote() == mote) {
               ev.remove();
             }
           }
-          ev = ev.nextEvent;
         }
       }
     };
@@ -813,6 +986,12 @@ public class Simulation extends Observable implements Runnable {
    * This method is called just before the simulation is removed.
    */
   public void removed() {
+    /* Stop worker threads */
+    if (parallelExecutor != null) {
+      parallelExecutor.shutdown();
+      parallelExecutor = null;
+    }
+
   	/* Remove radio medium */
   	if (currentRadioMedium != null) {
   		currentRadioMedium.removed();
@@ -823,6 +1002,8 @@ public class Simulation extends Observable implements Runnable {
     for (Mote m: motes) {
       removeMote(m);
     }
+    /* Remove stored log output */
+    eventCentral.removed();
   }
 
   /**
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Mote that can compute its next execution ahead of time on a worker thread.
+ *
+ * The simulation starts speculative execution for motes that are scheduled
+ * to execute at the current simulation time. When the mote later executes,
+ * it may use the speculative result only if nothing the computation depended
+ * on has changed in between. Otherwise it executes as usual. Simulation
+ * results are hence identical to sequential execution.
+ *
+ * @see Simulation#setParallelExecution(int)
+ */
+public interface SpeculativeMote extends Mote {
+
+  /**
+   * Motes sharing a resource are never executed concurrently.
+   *
+   * @return Resource used during execution
+   */
+  public Object getExecutionResource();
+
+  /**
+   * Starts computing mote execution at given time on a worker thread.
+   * Only called from the simulation thread.
+   *
+   * @param time Simulation time
+   * @param executor Worker threads
+   * @return True if speculative execution was started
+   */
+  public boolean startSpeculation(long time, ExecutorService executor);
+}
@@ -38,6 +38,8 @@ public abstract class TimeEvent {
   TimeEvent prevEvent;
 
   EventQueue queue = null;
+  int heapIndex = -1;
+  long sequence;
   String name;
 
   protected long time;
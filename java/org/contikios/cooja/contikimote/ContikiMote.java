@@ -32,6 +32,10 @@ package org.contikios.cooja.contikimote;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.jdom.Element;
@@ -41,7 +45,14 @@ import org.contikios.cooja.MoteInterfaceHandler;
 import org.contikios.cooja.MoteType;
 import org.contikios.cooja.mote.memory.SectionMoteMemory;
 import org.contikios.cooja.Simulation;
+import org.contikios.cooja.SpeculativeMote;
+import org.contikios.cooja.contikimote.interfaces.ContikiClock;
+import org.contikios.cooja.interfaces.PolledBeforeActiveTicks;
+import org.contikios.cooja.interfaces.PolledBeforeAllTicks;
+import org.contikios.cooja.mote.memory.ArrayMemory;
+import org.contikios.cooja.mote.memory.Memory;
 import org.contikios.cooja.mote.memory.MemoryInterface;
+import org.contikios.cooja.mote.memory.VarMemory;
 import org.contikios.cooja.motes.AbstractWakeupMote;
 
 /**
@@ -57,15 +68,30 @@ import org.contikios.cooja.motes.AbstractWakeupMote;
  * memory to the core, lets the Contiki system handle one event,
  * fetches the updated memory and finally polls all interfaces again.
  *
+ * With parallel execution enabled, the Contiki system may instead be ticked
+ * ahead of time on a worker thread using a copy of the mote memory.
+ * The result replaces the mote memory if the memory was not changed before
+ * the mote executes, and is discarded otherwise. Motes of the same type
+ * share the loaded Contiki system, and are never ticked concurrently.
+ *
  * @author      Fredrik Osterlind
  */
-public class ContikiMote extends AbstractWakeupMote implements Mote {
+public class ContikiMote extends AbstractWakeupMote implements Mote, SpeculativeMote {
   private static Logger logger = Logger.getLogger(ContikiMote.class);
 
   private ContikiMoteType myType = null;
   private SectionMoteMemory myMemory = null;
   private MoteInterfaceHandler myInterfaceHandler = null;
 
+  /* Speculative tick, see startSpeculation() */
+  private SectionMoteMemory speculativeMemory = null;
+  private Memory speculativeAccess = null;
+  private SectionMoteMemory speculativeSource = null;
+  private Future<?> speculativeTick = null;
+  private long speculativeTime = -1;
+  private long speculativeDrift = 0;
+  private long speculativeModifications = 0;
+
   /**
    * Creates a new mote of given type.
    * Both the initial mote memory and the interface handler
@@ -104,6 +130,7 @@ public class ContikiMote extends AbstractWakeupMote implements Mote {
 
   public void setMemory(SectionMoteMemory memory) {
     myMemory = memory;
+    speculativeTime = -1;
   }
 
   @Override
@@ -128,6 +155,12 @@ public class ContikiMote extends AbstractWakeupMote implements Mote {
   @Override
   public void execute(long simTime) {
 
+    /* Speculative tick is only valid if mote memory is still the same */
+    boolean speculated = speculativeTime == simTime
+        && speculativeSource == myMemory
+        && speculativeModifications == myMemory.getModificationCount();
+    speculativeTime = -1;
+
     /* Poll mote interfaces */
     myInterfaceHandler.doActiveActionsBeforeTick();
     myInterfaceHandler.doPassiveActionsBeforeTick();
@@ -138,14 +171,29 @@ public class ContikiMote extends AbstractWakeupMote implements Mote {
       return;
     }
 
-    /* Copy mote memory to Contiki */
-    myType.setCoreMemory(myMemory);
+    /* Contiki system may be in use by a worker thread */
+    myType.awaitSpeculativeTick();
+
+    if (speculated
+        && speculativeDrift == myInterfaceHandler.getClock().getDrift()
+        && canSpeculate()
+        && isCompleted(speculativeTick)) {
+      /* Use memory ticked by worker thread */
+      for (Map.Entry<String, MemoryInterface> entry : myMemory.getSections().entrySet()) {
+        ((ArrayMemory) entry.getValue()).swapMemory(
+            (ArrayMemory) speculativeMemory.getSections().get(entry.getKey()));
+      }
+    } else {
+      /* Copy mote memory to Contiki */
+      myType.setCoreMemory(myMemory);
 
-    /* Handle a single Contiki events */
-    myType.tick();
+      /* Handle a single Contiki events */
+      myType.tick();
 
-    /* Copy mote memory from Contiki */
-    myType.getCoreMemory(myMemory);
+      /* Copy mote memory from Contiki */
+      myType.getCoreMemory(myMemory);
+    }
+    speculativeTick = null;
 
     /* Poll mote interfaces */
     myMemory.pollForMemoryChanges();
@@ -153,6 +201,104 @@ public class ContikiMote extends AbstractWakeupMote implements Mote {
     myInterfaceHandler.doPassiveActionsAfterTick();
   }
 
+  @Override
+  public Object getExecutionResource() {
+    /* Motes of the same type share the Contiki system */
+    return myType;
+  }
+
+  /**
+   * Ticks a copy of the mote memory on a worker thread, as if the mote was
+   * executed now. Only the clock may be polled before ticks, and its
+   * variables are written to the copy.
+   *
+   * @see #execute(long)
+   */
+  @Override
+  public boolean startSpeculation(final long time, ExecutorService executor) {
+    if (getNextWakeupTime() != time || !canSpeculate()) {
+      return false;
+    }
+    final ContikiClock clock = (ContikiClock) myInterfaceHandler.getClock();
+    final long drift = clock.getDrift();
+    if (time + drift < 0) {
+      /* Pre-boot time */
+      return false;
+    }
+
+    if (speculativeSource != myMemory) {
+      speculativeMemory = myMemory.clone();
+      speculativeAccess = new VarMemory(speculativeMemory);
+      speculativeSource = myMemory;
+    }
+    final SectionMoteMemory source = myMemory;
+    final SectionMoteMemory target = speculativeMemory;
+    final Memory targetAccess = speculativeAccess;
+    long modifications = source.getModificationCount();
+
+    Future<?> tick = myType.startSpeculativeTick(executor, new Runnable() {
+      public void run() {
+        /* Memory changed meanwhile is detected when executing */
+        for (Map.Entry<String, MemoryInterface> entry : source.getSections().entrySet()) {
+          ArrayMemory copy = (ArrayMemory) target.getSections().get(entry.getKey());
+          System.arraycopy(entry.getValue().getMemory(), 0, copy.getMemory(), 0, copy.getTotalSize());
+          copy.markModified();
+        }
+        clock.writeTickTime(targetAccess, time, drift);
+
+        myType.setCoreMemory(target);
+        myType.tick();
+        myType.getCoreMemory(target);
+      }
+    });
+    if (tick == null) {
+      return false;
+    }
+    speculativeTick = tick;
+    speculativeTime = time;
+    speculativeDrift = drift;
+    speculativeModifications = modifications;
+    return true;
+  }
+
+  /**
+   * @return True if clock is the only interface polled before ticks and
+   * all memory sections are array backed
+   */
+  private boolean canSpeculate() {
+    MoteInterface clock = myInterfaceHandler.getClock();
+    if (!(clock instanceof ContikiClock)) {
+      return false;
+    }
+    for (MoteInterface intf : myInterfaceHandler.getInterfaces()) {
+      if (intf != clock
+          && (intf instanceof PolledBeforeActiveTicks || intf instanceof PolledBeforeAllTicks)) {
+        return false;
+      }
+    }
+    for (MemoryInterface section : myMemory.getSections().values()) {
+      if (!(section instanceof ArrayMemory)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isCompleted(Future<?> tick) {
+    if (tick == null || !tick.isDone()) {
+      return false;
+    }
+    try {
+      tick.get();
+      return true;
+    } catch (InterruptedException e) {
+      return false;
+    } catch (ExecutionException e) {
+      logger.debug("Speculative tick failed: " + e.getCause());
+      return false;
+    }
+  }
+
   /**
    * Returns the current Contiki mote config represented by XML elements.
    * This config also includes all mote interface configs.
@@ -183,6 +329,7 @@ public class ContikiMote extends AbstractWakeupMote implements Mote {
   public boolean setConfigXML(Simulation simulation, Collection<Element> configXML, boolean visAvailable) {
     setSimulation(simulation);
     myMemory = myType.createInitialMemory();
+    speculativeTime = -1;
     myInterfaceHandler = new MoteInterfaceHandler(this, myType.getMoteInterfaceClasses());
 
     for (Element element: configXML) {
@@ -45,6 +45,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -211,6 +214,23 @@ public class ContikiMoteType implements MoteType {
   // Initial memory for all motes of this type
   private SectionMoteMemory initialMemory = null;
 
+  /* Reused when reading monitored core memory, see getCoreMemory() */
+  private byte[] coreMemoryBuffer = new byte[0];
+
+  /* Copy of the memory held by the Contiki library, per section, when only
+   * changed pages are copied to the library. See setDirtyMemorySync() */
+  private HashMap<String, byte[]> residentMemory = null;
+  private byte[] changedPagesBuffer = new byte[ArrayMemory.PAGE_SIZE];
+
+  /* Memory copy statistics */
+  private long coreMemoryTicks = 0;
+  private long coreMemoryBytesSet = 0;
+  private long coreMemoryBytesGot = 0;
+  private int lastTickBytesCopied = 0;
+
+  /* Tick running on a worker thread, see ContikiMote */
+  private Future<?> speculativeTick = null;
+
   /** Offset between native (cooja) and contiki address space */
   long offset;
 
@@ -795,6 +815,7 @@ public class ContikiMoteType implements MoteType {
    */
   public void tick() {
     myCoreComm.tick();
+    coreMemoryTicks++;
   }
 
   /**
@@ -816,12 +837,46 @@ public class ContikiMoteType implements MoteType {
    *          Memory to set
    */
   public void getCoreMemory(SectionMoteMemory mem) {
-    for (MemoryInterface section : mem.getSections().values()) {
+    int copied = 0;
+    for (Map.Entry<String, MemoryInterface> entry : mem.getSections().entrySet()) {
+      MemoryInterface section = entry.getValue();
+      int size = section.getTotalSize();
+
+      /* Monitored array sections are read via a buffer, and only changed
+       * pages copied, so that monitors see unchanged sections as unmodified.
+       * Other sections are read in place. */
+      byte[] data = section.getMemory();
+      boolean compare = section instanceof ArrayMemory && mem.isMonitored(section);
+      if (compare) {
+        if (coreMemoryBuffer.length < size) {
+          coreMemoryBuffer = new byte[size];
+        }
+        data = coreMemoryBuffer;
+      }
+
       getCoreMemory(
               (int) (section.getStartAddr() - offset),
-              section.getTotalSize(),
-              section.getMemory());
+              size,
+              data);
+      copied += size;
+
+      /* Java memory is now identical to Contiki memory */
+      if (compare) {
+        ((ArrayMemory) section).copyFrom(data);
+      } else if (section instanceof ArrayMemory) {
+        ((ArrayMemory) section).markModified();
+      }
+      if (residentMemory != null) {
+        byte[] resident = residentMemory.get(entry.getKey());
+        if (resident == null || resident.length != size) {
+          resident = new byte[size];
+          residentMemory.put(entry.getKey(), resident);
+        }
+        System.arraycopy(data, 0, resident, 0, size);
+      }
     }
+    coreMemoryBytesGot += copied;
+    lastTickBytesCopied += copied;
   }
 
   private void getCoreMemory(int relAddr, int length, byte[] data) {
@@ -832,22 +887,183 @@ public class ContikiMoteType implements MoteType {
    * Copy given memory to the Contiki system. This should not be used directly,
    * but instead via ContikiMote.setMemory().
    *
+   * If dirty memory sync is enabled, only pages that differ from the memory
+   * currently held by the Contiki system are transferred.
+   *
+   * @see #setDirtyMemorySync(boolean)
    * @param mem
    * New memory
    */
   public void setCoreMemory(SectionMoteMemory mem) {
-    for (MemoryInterface section : mem.getSections().values()) {
+    int copied = 0;
+    for (Map.Entry<String, MemoryInterface> entry : mem.getSections().entrySet()) {
+      MemoryInterface section = entry.getValue();
+      byte[] resident = residentMemory == null ? null : residentMemory.get(entry.getKey());
+      if (resident != null && resident.length == section.getTotalSize()) {
+        copied += setCoreMemoryChangedPages(section, resident);
+        continue;
+      }
       setCoreMemory(
               (int) (section.getStartAddr() - offset),
               section.getTotalSize(),
               section.getMemory());
+      copied += section.getTotalSize();
     }
+    coreMemoryBytesSet += copied;
+    lastTickBytesCopied = copied;
   }
 
   private void setCoreMemory(int relAddr, int length, byte[] mem) {
     myCoreComm.setMemory(relAddr, length, mem);
   }
 
+  /**
+   * Copies consecutive runs of pages of given section that differ from the
+   * memory held by the Contiki system, and updates the resident copy.
+   *
+   * @param section Section
+   * @param resident Copy of the section memory held by the Contiki system
+   * @return Number of copied bytes
+   */
+  private int setCoreMemoryChangedPages(MemoryInterface section, byte[] resident) {
+    byte[] data = section.getMemory();
+    int relAddr = (int) (section.getStartAddr() - offset);
+    int copied = 0;
+
+    int start = 0;
+    while (start < data.length) {
+      if (!pageDiffers(data, resident, start)) {
+        start += ArrayMemory.PAGE_SIZE;
+        continue;
+      }
+      int end = start + ArrayMemory.PAGE_SIZE;
+      while (end < data.length && pageDiffers(data, resident, end)) {
+        end += ArrayMemory.PAGE_SIZE;
+      }
+      end = Math.min(end, data.length);
+
+      int length = end - start;
+      System.arraycopy(data, start, resident, start, length);
+      if (start == 0) {
+        setCoreMemory(relAddr, length, data);
+      } else {
+        if (changedPagesBuffer.length < length) {
+          changedPagesBuffer = new byte[length];
+        }
+        System.arraycopy(data, start, changedPagesBuffer, 0, length);
+        setCoreMemory(relAddr + start, length, changedPagesBuffer);
+      }
+      copied += length;
+      start = end;
+    }
+    return copied;
+  }
+
+  private static boolean pageDiffers(byte[] data, byte[] resident, int page) {
+    int end = Math.min(page + ArrayMemory.PAGE_SIZE, data.length);
+    for (int i = page; i < end; i++) {
+      if (data[i] != resident[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Enables copying only changed memory pages to the Contiki system.
+   *
+   * All motes of a type share the same Contiki library. A copy of the memory
+   * held by the library is kept, and before each tick only the pages where
+   * the ticked mote's memory differs from that copy are transferred. Motes
+   * running the same firmware typically share most pages, such as constant
+   * data and unused buffers. Memory is always fully copied back from the
+   * Contiki system after each tick.
+   *
+   * @param dirtySync True to enable dirty memory sync
+   */
+  public void setDirtyMemorySync(boolean dirtySync) {
+    residentMemory = dirtySync ? new HashMap<String, byte[]>() : null;
+  }
+
+  /**
+   * @return True if only changed memory pages are copied to the Contiki system
+   */
+  public boolean isDirtyMemorySync() {
+    return residentMemory != null;
+  }
+
+  /**
+   * @return Number of ticks executed by motes of this type
+   */
+  public long getCoreMemoryTicks() {
+    return coreMemoryTicks;
+  }
+
+  /**
+   * @return Total number of bytes copied to the Contiki system
+   */
+  public long getCoreMemoryBytesSet() {
+    return coreMemoryBytesSet;
+  }
+
+  /**
+   * @return Total number of bytes copied from the Contiki system
+   */
+  public long getCoreMemoryBytesGot() {
+    return coreMemoryBytesGot;
+  }
+
+  /**
+   * @return Number of bytes copied to and from the Contiki system during last tick
+   */
+  public int getLastTickBytesCopied() {
+    return lastTickBytesCopied;
+  }
+
+  /**
+   * Runs given task on a worker thread. The task may use the Contiki system
+   * of this type. The simulation thread must call
+   * {@link #awaitSpeculativeTick()} before using the Contiki system again.
+   *
+   * @see ContikiMote#startSpeculation(long, ExecutorService)
+   * @param executor Worker threads
+   * @param task Task
+   * @return Task future, or null if a previous task is still running
+   */
+  public Future<?> startSpeculativeTick(ExecutorService executor, Runnable task) {
+    if (speculativeTick != null && !speculativeTick.isDone()) {
+      return null;
+    }
+    speculativeTick = executor.submit(task);
+    return speculativeTick;
+  }
+
+  /**
+   * Waits until the task started by
+   * {@link #startSpeculativeTick(ExecutorService, Runnable)}, if any, has
+   * finished. Task failures are handled by the submitting mote.
+   */
+  public void awaitSpeculativeTick() {
+    if (speculativeTick == null) {
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        speculativeTick.get();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException e) {
+        break;
+      }
+    }
+    speculativeTick = null;
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public String getIdentifier() {
     return identifier;
@@ -1162,6 +1378,16 @@ public class ContikiMoteType implements MoteType {
     sb.append("<tr><td>JNI library</td><td>")
             .append(this.javaClassName).append("</td></tr>");
 
+    /* JNI memory copy statistics */
+    sb.append("<tr><td>JNI memory sync</td><td>")
+            .append(isDirtyMemorySync() ? "changed pages" : "full copy");
+    if (coreMemoryTicks > 0) {
+      sb.append(", ")
+              .append((coreMemoryBytesSet + coreMemoryBytesGot) / coreMemoryTicks)
+              .append(" bytes/tick");
+    }
+    sb.append("</td></tr>");
+
     /* Contiki sensors */
     sb.append("<tr><td valign=\"top\">Contiki sensors</td><td>");
     for (String sensor : sensors) {
@@ -1226,6 +1452,12 @@ public class ContikiMoteType implements MoteType {
       config.add(element);
     }
 
+    if (isDirtyMemorySync()) {
+      element = new Element("dirtymemory");
+      element.setText(Boolean.toString(true));
+      config.add(element);
+    }
+
     return config;
   }
 
@@ -1273,6 +1505,9 @@ public class ContikiMoteType implements MoteType {
         case "netstack":
           netStack = NetworkStack.parseConfig(element.getText());
           break;
+        case "dirtymemory":
+          setDirtyMemorySync(Boolean.parseBoolean(element.getText()));
+          break;
         case "moteinterface":
           String intfClass = element.getText().trim();
           /* Backwards compatibility: se.sics -> org.contikios */
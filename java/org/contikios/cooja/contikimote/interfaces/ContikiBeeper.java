@@ -48,6 +48,7 @@ import org.contikios.cooja.mote.memory.SectionMoteMemory;
 import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.Beeper;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -71,7 +72,7 @@ import org.contikios.cooja.mote.memory.VarMemory;
  */
 public class ContikiBeeper extends Beeper implements ContikiMoteInterface, PolledAfterActiveTicks {
   private Mote mote = null;
-  private VarMemory moteMem = null;
+  private final SymbolHandle beepedVar;
   private static Logger logger = Logger.getLogger(ContikiBeeper.class);
 
   /**
@@ -84,11 +85,12 @@ public class ContikiBeeper extends Beeper implements ContikiMoteInterface, Polle
    */
   public ContikiBeeper(Mote mote) {
     this.mote = mote;
-    this.moteMem = new VarMemory(mote.getMemory());
+    VarMemory moteMem = new VarMemory(mote.getMemory());
+    beepedVar = moteMem.getSymbolHandle("simBeeped");
   }
 
   public boolean isBeeping() {
-    return moteMem.getByteValueOf("simBeeped") == 1;
+    return beepedVar.getByte() == 1;
   }
 
   public static String[] getCoreInterfaceDependencies() {
@@ -96,11 +98,11 @@ public class ContikiBeeper extends Beeper implements ContikiMoteInterface, Polle
   }
 
   public void doActionsAfterTick() {
-    if (moteMem.getByteValueOf("simBeeped") == 1) {
+    if (beepedVar.getByte() == 1) {
       this.setChanged();
       this.notifyObservers(mote);
 
-      moteMem.setByteValueOf("simBeeped", (byte) 0);
+      beepedVar.setByte((byte) 0);
     }
   }
 
@@ -43,6 +43,7 @@ import org.jdom.Element;
 import org.contikios.cooja.*;
 import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -72,7 +73,11 @@ public class ContikiCFS extends MoteInterface implements ContikiMoteInterface, P
 
   public int FILESYSTEM_SIZE = 4000; /* Configure CFS size here and in cfs-cooja.c */
   private Mote mote = null;
-  private VarMemory moteMem = null;
+  private final SymbolHandle cfsChangedVar;
+  private final SymbolHandle cfsReadVar;
+  private final SymbolHandle cfsWrittenVar;
+  private final SymbolHandle cfsDataVar;
+  private final SymbolHandle cfsSizeVar;
 
   private int lastRead = 0;
   private int lastWritten = 0;
@@ -86,7 +91,12 @@ public class ContikiCFS extends MoteInterface implements ContikiMoteInterface, P
    */
   public ContikiCFS(Mote mote) {
     this.mote = mote;
-    this.moteMem = new VarMemory(mote.getMemory());
+    VarMemory moteMem = new VarMemory(mote.getMemory());
+    cfsChangedVar = moteMem.getSymbolHandle("simCFSChanged");
+    cfsReadVar = moteMem.getSymbolHandle("simCFSRead");
+    cfsWrittenVar = moteMem.getSymbolHandle("simCFSWritten");
+    cfsDataVar = moteMem.getSymbolHandle("simCFSData");
+    cfsSizeVar = moteMem.getSymbolHandle("simCFSSize");
   }
 
   public static String[] getCoreInterfaceDependencies() {
@@ -94,13 +104,13 @@ public class ContikiCFS extends MoteInterface implements ContikiMoteInterface, P
   }
 
   public void doActionsAfterTick() {
-    if (moteMem.getByteValueOf("simCFSChanged") == 1) {
-      lastRead = moteMem.getIntValueOf("simCFSRead");
-      lastWritten = moteMem.getIntValueOf("simCFSWritten");
+    if (cfsChangedVar.getByte() == 1) {
+      lastRead = cfsReadVar.getInt();
+      lastWritten = cfsWrittenVar.getInt();
 
-      moteMem.setIntValueOf("simCFSRead", 0);
-      moteMem.setIntValueOf("simCFSWritten", 0);
-      moteMem.setByteValueOf("simCFSChanged", (byte) 0);
+      cfsReadVar.setInt(0);
+      cfsWrittenVar.setInt(0);
+      cfsChangedVar.setByte((byte) 0);
 
       this.setChanged();
       this.notifyObservers(mote);
@@ -119,8 +129,8 @@ public class ContikiCFS extends MoteInterface implements ContikiMoteInterface, P
       return false;
     }
 
-    moteMem.setByteArray("simCFSData", data);
-    moteMem.setIntValueOf("simCFSSize", data.length);
+    cfsDataVar.setByteArray(data);
+    cfsSizeVar.setInt(data.length);
     return true;
   }
 
@@ -130,8 +140,8 @@ public class ContikiCFS extends MoteInterface implements ContikiMoteInterface, P
    * @return Filesystem data
    */
   public byte[] getFilesystemData() {
-    int size = moteMem.getIntValueOf("simCFSSize");
-    return moteMem.getByteArray("simCFSData", size);
+    int size = cfsSizeVar.getInt();
+    return cfsDataVar.getByteArray(size);
   }
 
   /**
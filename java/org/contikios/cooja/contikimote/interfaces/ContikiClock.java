@@ -44,6 +44,8 @@ import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.Clock;
 import org.contikios.cooja.interfaces.PolledAfterAllTicks;
 import org.contikios.cooja.interfaces.PolledBeforeActiveTicks;
+import org.contikios.cooja.mote.memory.Memory;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -75,7 +77,13 @@ public class ContikiClock extends Clock implements ContikiMoteInterface, PolledB
 
   private Simulation simulation;
   private ContikiMote mote;
-  private VarMemory moteMem;
+  private final SymbolHandle currentTimeVar;
+  private final SymbolHandle rtimerCurrentTicksVar;
+  private final SymbolHandle rtimerPendingVar;
+  private final SymbolHandle rtimerNextExpirationTimeVar;
+  private final SymbolHandle processRunValueVar;
+  private final SymbolHandle etimerPendingVar;
+  private final SymbolHandle etimerNextExpirationTimeVar;
 
   private long moteTime; /* Microseconds */
   private long timeDrift; /* Microseconds */
@@ -89,7 +97,14 @@ public class ContikiClock extends Clock implements ContikiMoteInterface, PolledB
   public ContikiClock(Mote mote) {
     this.simulation = mote.getSimulation();
     this.mote = (ContikiMote) mote;
-    this.moteMem = new VarMemory(mote.getMemory());
+    VarMemory moteMem = new VarMemory(mote.getMemory());
+    currentTimeVar = moteMem.getSymbolHandle("simCurrentTime");
+    rtimerCurrentTicksVar = moteMem.getSymbolHandle("simRtimerCurrentTicks");
+    rtimerPendingVar = moteMem.getSymbolHandle("simRtimerPending");
+    rtimerNextExpirationTimeVar = moteMem.getSymbolHandle("simRtimerNextExpirationTime");
+    processRunValueVar = moteMem.getSymbolHandle("simProcessRunValue");
+    etimerPendingVar = moteMem.getSymbolHandle("simEtimerPending");
+    etimerNextExpirationTimeVar = moteMem.getSymbolHandle("simEtimerNextExpirationTime");
     timeDrift = 0;
     moteTime = 0;
   }
@@ -101,7 +116,7 @@ public class ContikiClock extends Clock implements ContikiMoteInterface, PolledB
   public void setTime(long newTime) {
     moteTime = newTime;
     if (moteTime > 0) {
-      moteMem.setIntValueOf("simCurrentTime", (int)(newTime/1000));
+      currentTimeVar.setInt((int)(newTime/1000));
     }
   }
 
@@ -130,33 +145,49 @@ public class ContikiClock extends Clock implements ContikiMoteInterface, PolledB
     /* Update time */
     long currentSimulationTime = simulation.getSimulationTime();
     setTime(currentSimulationTime + timeDrift);
-    moteMem.setInt64ValueOf("simRtimerCurrentTicks", currentSimulationTime);
+    rtimerCurrentTicksVar.setInt64(currentSimulationTime);
+  }
+
+  /**
+   * Writes the variables updated by {@link #doActionsBeforeTick()} at given
+   * simulation time to a copy of the mote memory. Does not change this clock.
+   *
+   * @param memory Copy of mote memory
+   * @param simulationTime Simulation time
+   * @param drift Time drift, see {@link #getDrift()}
+   */
+  public void writeTickTime(Memory memory, long simulationTime, long drift) {
+    long newTime = simulationTime + drift;
+    if (newTime > 0) {
+      memory.setIntValueOf(currentTimeVar.getAddress(), (int)(newTime/1000));
+    }
+    memory.setInt64ValueOf(rtimerCurrentTicksVar.getAddress(), simulationTime);
   }
 
   public void doActionsAfterTick() {
     long currentSimulationTime = mote.getSimulation().getSimulationTime();
 
     /* Always schedule for Rtimer if anything pending */
-    if (moteMem.getIntValueOf("simRtimerPending") != 0) {
-      mote.scheduleNextWakeup(moteMem.getInt64ValueOf("simRtimerNextExpirationTime"));
+    if (rtimerPendingVar.getInt() != 0) {
+      mote.scheduleNextWakeup(rtimerNextExpirationTimeVar.getInt64());
     }
 
     /* Request next tick for remaining events / timers */
-    int processRunValue = moteMem.getIntValueOf("simProcessRunValue");
+    int processRunValue = processRunValueVar.getInt();
     if (processRunValue != 0) {
       /* Handle next Contiki event in one millisecond */
       mote.scheduleNextWakeup(currentSimulationTime + Simulation.MILLISECOND);
       return;
     }
 
-    int etimersPending = moteMem.getIntValueOf("simEtimerPending");
+    int etimersPending = etimerPendingVar.getInt();
     if (etimersPending == 0) {
       /* No timers */
       return;
     }
 
     /* Request tick next wakeup time for Etimer */
-    long etimerNextExpirationTime = (long)moteMem.getInt32ValueOf("simEtimerNextExpirationTime") * Simulation.MILLISECOND;
+    long etimerNextExpirationTime = (long)etimerNextExpirationTimeVar.getInt32() * Simulation.MILLISECOND;
     long etimerTimeToNextExpiration = etimerNextExpirationTime - moteTime;
     if (etimerTimeToNextExpiration <= 0) {
       /* logger.warn(mote.getID() + ": Event timer already expired, but has been delayed: " + etimerTimeToNextExpiration); */
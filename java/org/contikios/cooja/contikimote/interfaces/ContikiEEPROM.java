@@ -45,6 +45,7 @@ import org.jdom.Element;
 import org.contikios.cooja.*;
 import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -74,7 +75,10 @@ public class ContikiEEPROM extends MoteInterface implements ContikiMoteInterface
 
   public int EEPROM_SIZE = 1024; /* Configure EEPROM size here and in eeprom.c. Should really be multiple of 16 */
   private Mote mote = null;
-  private VarMemory moteMem = null;
+  private final SymbolHandle eepromChangedVar;
+  private final SymbolHandle eepromReadVar;
+  private final SymbolHandle eepromWrittenVar;
+  private final SymbolHandle eepromDataVar;
 
   private int lastRead = 0;
   private int lastWritten = 0;
@@ -88,7 +92,11 @@ public class ContikiEEPROM extends MoteInterface implements ContikiMoteInterface
    */
   public ContikiEEPROM(Mote mote) {
     this.mote = mote;
-    this.moteMem = new VarMemory(mote.getMemory());
+    VarMemory moteMem = new VarMemory(mote.getMemory());
+    eepromChangedVar = moteMem.getSymbolHandle("simEEPROMChanged");
+    eepromReadVar = moteMem.getSymbolHandle("simEEPROMRead");
+    eepromWrittenVar = moteMem.getSymbolHandle("simEEPROMWritten");
+    eepromDataVar = moteMem.getSymbolHandle("simEEPROMData");
   }
 
   public static String[] getCoreInterfaceDependencies() {
@@ -96,13 +104,13 @@ public class ContikiEEPROM extends MoteInterface implements ContikiMoteInterface
   }
 
   public void doActionsAfterTick() {
-    if (moteMem.getByteValueOf("simEEPROMChanged") == 1) {
-      lastRead = moteMem.getIntValueOf("simEEPROMRead");
-      lastWritten = moteMem.getIntValueOf("simEEPROMWritten");
+    if (eepromChangedVar.getByte() == 1) {
+      lastRead = eepromReadVar.getInt();
+      lastWritten = eepromWrittenVar.getInt();
 
-      moteMem.setIntValueOf("simEEPROMRead", 0);
-      moteMem.setIntValueOf("simEEPROMWritten", 0);
-      moteMem.setByteValueOf("simEEPROMChanged", (byte) 0);
+      eepromReadVar.setInt(0);
+      eepromWrittenVar.setInt(0);
+      eepromChangedVar.setByte((byte) 0);
 
       this.setChanged();
       this.notifyObservers(mote);
@@ -121,7 +129,7 @@ public class ContikiEEPROM extends MoteInterface implements ContikiMoteInterface
       return false;
     }
 
-    moteMem.setByteArray("simEEPROMData", data);
+    eepromDataVar.setByteArray(data);
     return true;
   }
 
@@ -131,7 +139,7 @@ public class ContikiEEPROM extends MoteInterface implements ContikiMoteInterface
    * @return Filesystem data
    */
   public byte[] getEEPROMData() {
-    return moteMem.getByteArray("simEEPROMData", EEPROM_SIZE);
+    return eepromDataVar.getByteArray(EEPROM_SIZE);
   }
 
   /**
@@ -40,6 +40,7 @@ import org.contikios.cooja.*;
 import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.LED;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -65,7 +66,7 @@ public class ContikiLED extends LED implements ContikiMoteInterface, PolledAfter
   private static Logger logger = Logger.getLogger(ContikiLED.class);
 
   private Mote mote = null;
-  private VarMemory moteMem = null;
+  private final SymbolHandle ledsValueVar;
   private byte currentLedValue = 0;
 
   private static final byte LEDS_GREEN = 1;
@@ -80,6 +81,7 @@ public class ContikiLED extends LED implements ContikiMoteInterface, PolledAfter
   private static final Color RED = new Color(255, 0, 0);
 
   public ContikiLED() {
+    ledsValueVar = null;
   }
 
   /**
@@ -92,7 +94,8 @@ public class ContikiLED extends LED implements ContikiMoteInterface, PolledAfter
    */
   public ContikiLED(Mote mote) {
     this.mote = mote;
-    this.moteMem = new VarMemory(mote.getMemory());
+    VarMemory moteMem = new VarMemory(mote.getMemory());
+    ledsValueVar = moteMem.getSymbolHandle("simLedsValue");
   }
 
   public static String[] getCoreInterfaceDependencies() {
@@ -118,7 +121,7 @@ public class ContikiLED extends LED implements ContikiMoteInterface, PolledAfter
   public void doActionsAfterTick() {
     boolean ledChanged;
 
-    byte newLedsValue = moteMem.getByteValueOf("simLedsValue");
+    byte newLedsValue = ledsValueVar.getByte();
     if (newLedsValue != currentLedValue) {
       ledChanged = true;
     } else {
@@ -38,6 +38,7 @@ import org.contikios.cooja.contikimote.ContikiMote;
 import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.dialogs.SerialUI;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 
 /**
@@ -70,6 +71,9 @@ public class ContikiRS232 extends SerialUI implements ContikiMoteInterface, Poll
 
   private ContikiMote mote = null;
   private VarMemory moteMem = null;
+  private final SymbolHandle loggedFlagVar;
+  private final SymbolHandle loggedLengthVar;
+  private final SymbolHandle loggedDataVar;
 
   static final int SERIAL_BUF_SIZE = 16 * 1024; /* rs232.c:40 */
 
@@ -84,6 +88,9 @@ public class ContikiRS232 extends SerialUI implements ContikiMoteInterface, Poll
   public ContikiRS232(Mote mote) {
     this.mote = (ContikiMote) mote;
     this.moteMem = new VarMemory(mote.getMemory());
+    loggedFlagVar = moteMem.getSymbolHandle("simLoggedFlag");
+    loggedLengthVar = moteMem.getSymbolHandle("simLoggedLength");
+    loggedDataVar = moteMem.getSymbolHandle("simLoggedData");
   }
 
   public static String[] getCoreInterfaceDependencies() {
@@ -91,12 +98,12 @@ public class ContikiRS232 extends SerialUI implements ContikiMoteInterface, Poll
   }
 
   public void doActionsAfterTick() {
-    if (moteMem.getByteValueOf("simLoggedFlag") == 1) {
-      int len = moteMem.getIntValueOf("simLoggedLength");
-      byte[] bytes = moteMem.getByteArray("simLoggedData", len);
+    if (loggedFlagVar.getByte() == 1) {
+      int len = loggedLengthVar.getInt();
+      byte[] bytes = loggedDataVar.getByteArray(len);
 
-      moteMem.setByteValueOf("simLoggedFlag", (byte) 0);
-      moteMem.setIntValueOf("simLoggedLength", 0);
+      loggedFlagVar.setByte((byte) 0);
+      loggedLengthVar.setInt(0);
 
       for (byte b: bytes) {
         dataReceived(b);
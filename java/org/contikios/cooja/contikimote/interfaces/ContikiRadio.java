@@ -46,6 +46,7 @@ import org.contikios.cooja.contikimote.ContikiMoteInterface;
 import org.contikios.cooja.interfaces.PolledAfterActiveTicks;
 import org.contikios.cooja.interfaces.Position;
 import org.contikios.cooja.interfaces.Radio;
+import org.contikios.cooja.mote.memory.SymbolHandle;
 import org.contikios.cooja.mote.memory.VarMemory;
 import org.contikios.cooja.radiomediums.UDGM;
 import org.contikios.cooja.util.CCITT_CRC;
@@ -91,7 +92,17 @@ import org.contikios.cooja.util.CCITT_CRC;
 public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledAfterActiveTicks {
   private ContikiMote mote;
 
-  private VarMemory myMoteMemory;
+  private final SymbolHandle radioHWOnVar;
+  private final SymbolHandle receivingVar;
+  private final SymbolHandle radioChannelVar;
+  private final SymbolHandle lastPacketTimestampVar;
+  private final SymbolHandle inSizeVar;
+  private final SymbolHandle inDataBufferVar;
+  private final SymbolHandle powerVar;
+  private final SymbolHandle signalStrengthVar;
+  private final SymbolHandle lqiVar;
+  private final SymbolHandle outSizeVar;
+  private final SymbolHandle outDataBufferVar;
 
   private static Logger logger = Logger.getLogger(ContikiRadio.class);
 
@@ -136,9 +147,20 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
         ContikiRadio.class, "RADIO_TRANSMISSION_RATE_kbps");
 
     this.mote = (ContikiMote) mote;
-    this.myMoteMemory = new VarMemory(mote.getMemory());
-
-    radioOn = myMoteMemory.getByteValueOf("simRadioHWOn") == 1;
+    VarMemory myMoteMemory = new VarMemory(mote.getMemory());
+    radioHWOnVar = myMoteMemory.getSymbolHandle("simRadioHWOn");
+    receivingVar = myMoteMemory.getSymbolHandle("simReceiving");
+    radioChannelVar = myMoteMemory.getSymbolHandle("simRadioChannel");
+    lastPacketTimestampVar = myMoteMemory.getSymbolHandle("simLastPacketTimestamp");
+    inSizeVar = myMoteMemory.getSymbolHandle("simInSize");
+    inDataBufferVar = myMoteMemory.getSymbolHandle("simInDataBuffer");
+    powerVar = myMoteMemory.getSymbolHandle("simPower");
+    signalStrengthVar = myMoteMemory.getSymbolHandle("simSignalStrength");
+    lqiVar = myMoteMemory.getSymbolHandle("simLQI");
+    outSizeVar = myMoteMemory.getSymbolHandle("simOutSize");
+    outDataBufferVar = myMoteMemory.getSymbolHandle("simOutDataBuffer");
+
+    radioOn = radioHWOnVar.getByte() == 1;
   }
 
   /* Contiki mote interface support */
@@ -173,7 +195,7 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
   }
 
   public boolean isReceiving() {
-    return myMoteMemory.getByteValueOf("simReceiving") == 1;
+    return receivingVar.getByte() == 1;
   }
 
   public boolean isInterfered() {
@@ -181,7 +203,7 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
   }
 
   public int getChannel() {
-    return myMoteMemory.getIntValueOf("simRadioChannel");
+    return radioChannelVar.getInt();
   }
 
   public void signalReceptionStart() {
@@ -191,13 +213,13 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
       return;
     }
 
-    myMoteMemory.setByteValueOf("simReceiving", (byte) 1);
+    receivingVar.setByte((byte) 1);
     mote.requestImmediateWakeup();
 
     lastEventTime = mote.getSimulation().getSimulationTime();
     lastEvent = RadioEvent.RECEPTION_STARTED;
 
-    myMoteMemory.setInt64ValueOf("simLastPacketTimestamp", lastEventTime);
+    lastPacketTimestampVar.setInt64(lastEventTime);
 
     this.setChanged();
     this.notifyObservers();
@@ -207,13 +229,13 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
     if (isInterfered || packetToMote == null) {
       isInterfered = false;
       packetToMote = null;
-      myMoteMemory.setIntValueOf("simInSize", 0);
+      inSizeVar.setInt(0);
     } else {
-      myMoteMemory.setIntValueOf("simInSize", packetToMote.getPacketData().length - 2);
-      myMoteMemory.setByteArray("simInDataBuffer", packetToMote.getPacketData());
+      inSizeVar.setInt(packetToMote.getPacketData().length - 2);
+      inDataBufferVar.setByteArray(packetToMote.getPacketData());
     }
 
-    myMoteMemory.setByteValueOf("simReceiving", (byte) 0);
+    receivingVar.setByte((byte) 0);
     mote.requestImmediateWakeup();
     lastEventTime = mote.getSimulation().getSimulationTime();
     lastEvent = RadioEvent.RECEPTION_FINISHED;
@@ -249,15 +271,15 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
   }
 
   public int getCurrentOutputPowerIndicator() {
-    return myMoteMemory.getByteValueOf("simPower");
+    return powerVar.getByte();
   }
 
   public double getCurrentSignalStrength() {
-    return myMoteMemory.getIntValueOf("simSignalStrength");
+    return signalStrengthVar.getInt();
   }
 
   public void setCurrentSignalStrength(double signalStrength) {
-    myMoteMemory.setIntValueOf("simSignalStrength", (int) signalStrength);
+    signalStrengthVar.setInt((int) signalStrength);
   }
 
   /** Set LQI to a value between 0 and 255.
@@ -271,11 +293,11 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
     else if(lqi>0xff) {
       lqi=0xff;
     }
-    myMoteMemory.setIntValueOf("simLQI", lqi);
+    lqiVar.setInt(lqi);
   }
 
   public int getLQI(){
-    return myMoteMemory.getIntValueOf("simLQI");
+    return lqiVar.getInt();
   }
 
   public Position getPosition() {
@@ -286,13 +308,13 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
     long now = mote.getSimulation().getSimulationTime();
 
     /* Check if radio hardware status changed */
-    if (radioOn != (myMoteMemory.getByteValueOf("simRadioHWOn") == 1)) {
+    if (radioOn != (radioHWOnVar.getByte() == 1)) {
       radioOn = !radioOn;
 
       if (!radioOn) {
-        myMoteMemory.setByteValueOf("simReceiving", (byte) 0);
-        myMoteMemory.setIntValueOf("simInSize", 0);
-        myMoteMemory.setIntValueOf("simOutSize", 0);
+        receivingVar.setByte((byte) 0);
+        inSizeVar.setInt(0);
+        outSizeVar.setInt(0);
         isTransmitting = false;
         lastEvent = RadioEvent.HW_OFF;
       } else {
@@ -308,8 +330,8 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
     }
 
     /* Check if radio output power changed */
-    if (myMoteMemory.getByteValueOf("simPower") != oldOutputPowerIndicator) {
-      oldOutputPowerIndicator = myMoteMemory.getByteValueOf("simPower");
+    if (powerVar.getByte() != oldOutputPowerIndicator) {
+      oldOutputPowerIndicator = powerVar.getByte();
       lastEvent = RadioEvent.UNKNOWN;
       this.setChanged();
       this.notifyObservers();
@@ -325,7 +347,7 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
 
     /* Ongoing transmission */
     if (isTransmitting && now >= transmissionEndTime) {
-      myMoteMemory.setIntValueOf("simOutSize", 0);
+      outSizeVar.setInt(0);
       isTransmitting = false;
       mote.requestImmediateWakeup();
 
@@ -337,13 +359,13 @@ public class ContikiRadio extends Radio implements ContikiMoteInterface, PolledA
     }
 
     /* New transmission */
-    int size = myMoteMemory.getIntValueOf("simOutSize");
+    int size = outSizeVar.getInt();
     if (!isTransmitting && size > 0) {
-      packetFromMote = new COOJARadioPacket(myMoteMemory.getByteArray("simOutDataBuffer", size + 2));
+      packetFromMote = new COOJARadioPacket(outDataBufferVar.getByteArray(size + 2));
 
       if (packetFromMote.getPacketData() == null || packetFromMote.getPacketData().length == 0) {
         logger.warn("Skipping zero sized Contiki packet (no buffer)");
-        myMoteMemory.setIntValueOf("simOutSize", 0);
+        outSizeVar.setInt(0);
         mote.requestImmediateWakeup();
         return;
       }
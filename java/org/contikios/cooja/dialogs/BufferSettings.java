@@ -32,6 +32,7 @@ package org.contikios.cooja.dialogs;
 
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -43,6 +44,7 @@ import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JDesktopPane;
 import javax.swing.JDialog;
@@ -103,6 +105,18 @@ public class BufferSettings extends JDialog {
       }
     });
 
+    final JCheckBox storeCheckBox = new JCheckBox("Store all log output on disk");
+    storeCheckBox.setSelected(central.isLogOutputStoreEnabled());
+    storeCheckBox.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        central.setLogOutputStoreEnabled(storeCheckBox.isSelected());
+      }
+    });
+    Box box = Box.createHorizontalBox();
+    box.add(storeCheckBox);
+    box.add(Box.createHorizontalGlue());
+    main.add(box);
+
     main.add(Box.createVerticalStrut(10));
 
     Box line = Box.createHorizontalBox();
@@ -146,6 +160,7 @@ public class BufferSettings extends JDialog {
       }
 
       Cooja.setExternalToolsSetting("BUFFERSIZE_LOGOUTPUT", "" + central.getLogOutputBufferSize());
+      Cooja.setExternalToolsSetting("LOGOUTPUT_STORE", "" + central.isLogOutputStoreEnabled());
     }
   };
 
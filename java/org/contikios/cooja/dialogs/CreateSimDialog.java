@@ -80,6 +80,8 @@ public class CreateSimDialog extends JDialog {
 
   private JFormattedTextField randomSeed, delayedStartup;
   private JCheckBox randomSeedGenerated;
+  private JCheckBox heapEventQueue;
+  private JCheckBox parallelExecution;
 
   private JTextField title;
   private JComboBox radioMediumBox;
@@ -139,6 +141,12 @@ public class CreateSimDialog extends JDialog {
       dialog.randomSeed.setValue(new Long(simulation.getRandomSeed()));
     }
 
+    // Set event queue
+    dialog.heapEventQueue.setSelected(simulation.isHeapEventQueue());
+
+    // Set parallel execution
+    dialog.parallelExecution.setSelected(simulation.getParallelExecution() > 0);
+
     // Set delayed mote startup time (ms)
     dialog.delayedStartup.setValue(new Long(simulation.getDelayedMoteStartupTime()/Simulation.MILLISECOND));
 
@@ -323,6 +331,38 @@ public class CreateSimDialog extends JDialog {
     advancedBox.add(horizBox);
     advancedBox.add(Box.createVerticalStrut(5));
 
+    // Event queue
+    horizBox = Box.createHorizontalBox();
+    horizBox.setMaximumSize(new Dimension(Integer.MAX_VALUE,LABEL_HEIGHT));
+    horizBox.setAlignmentX(Component.LEFT_ALIGNMENT);
+    label = new JLabel("Heap event queue");
+    label.setPreferredSize(new Dimension(LABEL_WIDTH,LABEL_HEIGHT));
+    heapEventQueue = new JCheckBox();
+    heapEventQueue.setToolTipText("Use a heap event queue. Recommended for simulations with many motes");
+
+    horizBox.add(label);
+    horizBox.add(Box.createHorizontalStrut(144));
+    horizBox.add(heapEventQueue);
+
+    advancedBox.add(horizBox);
+    advancedBox.add(Box.createVerticalStrut(5));
+
+    // Parallel execution
+    horizBox = Box.createHorizontalBox();
+    horizBox.setMaximumSize(new Dimension(Integer.MAX_VALUE,LABEL_HEIGHT));
+    horizBox.setAlignmentX(Component.LEFT_ALIGNMENT);
+    label = new JLabel("Parallel mote execution");
+    label.setPreferredSize(new Dimension(LABEL_WIDTH,LABEL_HEIGHT));
+    parallelExecution = new JCheckBox();
+    parallelExecution.setToolTipText("Tick Contiki motes ahead of time on worker threads. Motes of the same type share one Contiki library and never run concurrently; emulated motes always run sequentially. Does not change simulation results");
+
+    horizBox.add(label);
+    horizBox.add(Box.createHorizontalStrut(144));
+    horizBox.add(parallelExecution);
+
+    advancedBox.add(horizBox);
+    advancedBox.add(Box.createVerticalStrut(5));
+
     vertBox.add(advancedBox);
     vertBox.add(Box.createVerticalGlue());
 
@@ -363,6 +403,14 @@ public class CreateSimDialog extends JDialog {
         mySimulation.setRandomSeed(((Number) randomSeed.getValue()).longValue());
       }
 
+      mySimulation.setHeapEventQueue(heapEventQueue.isSelected());
+
+      if (!parallelExecution.isSelected()) {
+        mySimulation.setParallelExecution(0);
+      } else if (mySimulation.getParallelExecution() == 0) {
+        mySimulation.setParallelExecution(Runtime.getRuntime().availableProcessors());
+      }
+
       mySimulation.setDelayedMoteStartupTime((int) ((Number) delayedStartup.getValue()).intValue()*Simulation.MILLISECOND);
 
       dispose();
@@ -39,12 +39,18 @@ import java.util.Map;
  */
 public class ArrayMemory implements MemoryInterface {
 
-  private final byte memory[];
+  /** Granularity of page-wise memory comparisons (bytes) */
+  public static final int PAGE_SIZE = 64;
+
+  private byte memory[];
   private final long startAddress;
   private final MemoryLayout layout;
   private final boolean readonly;
   private final Map<String, Symbol> symbols;// XXX Allow to set symbols
 
+  /* Incremented whenever memory contents may have changed */
+  private long modificationCount = 0;
+
   public ArrayMemory(long address, int size, MemoryLayout layout, Map<String, Symbol> symbols) {
     this(address, layout, new byte[size], symbols);
   }
@@ -86,11 +92,123 @@ public class ArrayMemory implements MemoryInterface {
       throw new MoteMemoryException("Invalid write access for readonly memory");
     }
     System.arraycopy(data, 0, memory, (int) (addr - startAddress), data.length);
+    modificationCount++;
+  }
+
+  /**
+   * Reads a single byte without copying.
+   *
+   * @param addr Absolute address
+   * @return Byte at address
+   */
+  public byte getByte(long addr) {
+    return memory[(int) (addr - startAddress)];
+  }
+
+  /**
+   * Writes a single byte without copying.
+   *
+   * @param addr Absolute address
+   * @param value Byte to write
+   * @throws org.contikios.cooja.mote.memory.MemoryInterface.MoteMemoryException if memory is readonly
+   */
+  public void setByte(long addr, byte value) throws MoteMemoryException {
+    if (readonly) {
+      throw new MoteMemoryException("Invalid write access for readonly memory");
+    }
+    int offset = (int) (addr - startAddress);
+    memory[offset] = value;
+    modificationCount++;
   }
 
   @Override
   public void clearMemory() {
     Arrays.fill(memory, (byte) 0x00);
+    modificationCount++;
+  }
+
+  /**
+   * Compares memory segment with given snapshot, and updates the snapshot
+   * if they differ. Does not allocate.
+   *
+   * @param addr Absolute start address of segment
+   * @param snapshot Previous segment contents, same length as segment
+   * @return True if segment differed from snapshot
+   */
+  public boolean updateSnapshot(long addr, byte[] snapshot) {
+    int offset = (int) (addr - startAddress);
+    for (int i = 0; i < snapshot.length; i++) {
+      if (memory[offset + i] != snapshot[i]) {
+        System.arraycopy(memory, offset + i, snapshot, i, snapshot.length - i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Exchanges contents with another memory of same address range.
+   * Both memories are marked as modified.
+   *
+   * @param other Memory to exchange contents with
+   * @throws org.contikios.cooja.mote.memory.MemoryInterface.MoteMemoryException if address ranges differ or memory is readonly
+   */
+  public void swapMemory(ArrayMemory other) throws MoteMemoryException {
+    if (readonly || other.readonly) {
+      throw new MoteMemoryException("Invalid write access for readonly memory");
+    }
+    if (startAddress != other.startAddress || memory.length != other.memory.length) {
+      throw new MoteMemoryException("Swapping memory [0x%x,0x%x] failed: different address range",
+              startAddress, startAddress + memory.length - 1);
+    }
+    byte[] tmp = memory;
+    memory = other.memory;
+    other.memory = tmp;
+    modificationCount++;
+    other.modificationCount++;
+  }
+
+  /**
+   * Copies new contents to the backing array page by page, and only marks
+   * memory modified if a page differs.
+   *
+   * @param data New contents, at least as long as memory
+   * @return True if memory changed
+   */
+  public boolean copyFrom(byte[] data) {
+    boolean changed = false;
+    for (int page = 0; page < memory.length; page += PAGE_SIZE) {
+      int end = Math.min(page + PAGE_SIZE, memory.length);
+      for (int i = page; i < end; i++) {
+        if (memory[i] != data[i]) {
+          System.arraycopy(data, i, memory, i, end - i);
+          changed = true;
+          break;
+        }
+      }
+    }
+    if (changed) {
+      modificationCount++;
+    }
+    return changed;
+  }
+
+  /**
+   * Notes that the backing array was changed without using this interface,
+   * for example by copying memory to the array returned by {@link #getMemory()}.
+   */
+  public void markModified() {
+    modificationCount++;
+  }
+
+  /**
+   * Returns a counter that changes whenever memory contents may have changed.
+   * Memory is unchanged as long as the counter stays the same.
+   *
+   * @return Modification counter
+   */
+  public long getModificationCount() {
+    return modificationCount;
   }
 
   @Override
@@ -148,6 +148,23 @@ public class SectionMoteMemory implements MemoryInterface {
     return sections;
   }
 
+  /**
+   * Returns the sum of the modification counters of all array backed
+   * sections. Their contents are unchanged as long as the sum stays the same.
+   *
+   * @see ArrayMemory#getModificationCount()
+   * @return Modification counter
+   */
+  public long getModificationCount() {
+    long count = 0;
+    for (MemoryInterface section : sections.values()) {
+      if (section instanceof ArrayMemory) {
+        count += ((ArrayMemory) section).getModificationCount();
+      }
+    }
+    return count;
+  }
+
   /**
    * True if given address is part of this memory section.
    *
@@ -277,6 +294,21 @@ public class SectionMoteMemory implements MemoryInterface {
     return false;
   }
 
+  /**
+   * Returns true if a segment monitor watches memory within given section.
+   *
+   * @param section Section of this memory
+   * @return True if section is monitored
+   */
+  public boolean isMonitored(MemoryInterface section) {
+    for (PolledMemorySegments mcm: polledMemories) {
+      if (mcm.section == section) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Copies seciton memory to new (array backed) one
    * @return Cloned memory
    */
@@ -306,24 +338,63 @@ public class SectionMoteMemory implements MemoryInterface {
     public final SegmentMonitor mm;
     public final long address;
     public final int size;
-    private byte[] oldMem;
+    private final byte[] oldMem;
+
+    /* Section holding the segment, null if not within a single section */
+    private final MemoryInterface section;
+    private long modificationCount;
 
     public PolledMemorySegments(SegmentMonitor mm, long address, int size) {
       this.mm = mm;
       this.address = address;
       this.size = size;
-      
+
+      MemoryInterface sec = null;
+      for (MemoryInterface candidate : sections.values()) {
+        if (inSection(candidate, address, size)) {
+          sec = candidate;
+          break;
+        }
+      }
+      section = sec;
+      if (section instanceof ArrayMemory) {
+        modificationCount = ((ArrayMemory) section).getModificationCount();
+      }
+
       oldMem = getMemorySegment(address, size);
     }
 
     private void notifyIfChanged() {
-      byte[] newMem = getMemorySegment(address, size);
-      if (Arrays.equals(oldMem, newMem)) {
+      if (!updateSnapshot()) {
         return;
       }
-      
+
       mm.memoryChanged(SectionMoteMemory.this, SegmentMonitor.EventType.WRITE, address);
-      oldMem = newMem;
+    }
+
+    /**
+     * Compares segment with snapshot in place, skipping the comparison if
+     * the section has not been modified since last poll.
+     *
+     * @return True if segment changed
+     */
+    private boolean updateSnapshot() {
+      if (section instanceof ArrayMemory) {
+        ArrayMemory array = (ArrayMemory) section;
+        long count = array.getModificationCount();
+        if (count == modificationCount) {
+          return false;
+        }
+        modificationCount = count;
+        return array.updateSnapshot(address, oldMem);
+      }
+
+      byte[] newMem = getMemorySegment(address, size);
+      if (Arrays.equals(oldMem, newMem)) {
+        return false;
+      }
+      System.arraycopy(newMem, 0, oldMem, 0, size);
+      return true;
     }
   }
 
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.mote.memory;
+
+import java.nio.ByteOrder;
+
+import org.contikios.cooja.mote.memory.MemoryInterface.MoteMemoryException;
+import org.contikios.cooja.mote.memory.MemoryInterface.Symbol;
+
+/**
+ * Resolved variable for repeated typed access.
+ *
+ * The symbol and the memory section holding it are looked up once when the
+ * handle is created. Accesses to array backed sections read and
+ * write single bytes in place and do not allocate.
+ *
+ * A handle stays bound to the memory it was created for.
+ *
+ * @see VarMemory#getSymbolHandle(String)
+ */
+public class SymbolHandle {
+
+  private final Symbol symbol;
+  private final long address;
+  private final boolean bigEndian;
+  private final int intSize;
+  private final int addrSize;
+
+  /* Section holding the variable, and its direct access type if any */
+  private final MemoryInterface section;
+  private final ArrayMemory arrayMemory;
+
+  SymbolHandle(MemoryInterface memory, Symbol symbol) {
+    this.symbol = symbol;
+    this.address = symbol.addr;
+
+    MemoryLayout layout = memory.getLayout();
+    this.bigEndian = layout.order == ByteOrder.BIG_ENDIAN;
+    this.intSize = layout.intSize;
+    this.addrSize = layout.addrSize;
+
+    MemoryInterface sec = memory;
+    if (memory instanceof SectionMoteMemory) {
+      int size = symbol.size > 0 ? symbol.size : 1;
+      for (MemoryInterface candidate : ((SectionMoteMemory) memory).getSections().values()) {
+        if (SectionMoteMemory.inSection(candidate, address, size)) {
+          sec = candidate;
+          break;
+        }
+      }
+    }
+    this.section = sec;
+    this.arrayMemory = sec instanceof ArrayMemory ? (ArrayMemory) sec : null;
+  }
+
+  /**
+   * @return Resolved symbol
+   */
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  /**
+   * @return Variable address
+   */
+  public long getAddress() {
+    return address;
+  }
+
+  /**
+   * @return Variable size, -1 if unknown
+   */
+  public int getSize() {
+    return symbol.size;
+  }
+
+  public byte getByte() {
+    if (arrayMemory != null) {
+      return arrayMemory.getByte(address);
+    }
+    return section.getMemorySegment(address, 1)[0];
+  }
+
+  public void setByte(byte value) throws MoteMemoryException {
+    if (arrayMemory != null) {
+      arrayMemory.setByte(address, value);
+    } else {
+      section.setMemorySegment(address, new byte[] { value });
+    }
+  }
+
+  public short getShort() {
+    return (short) read(2);
+  }
+
+  public void setShort(short value) throws MoteMemoryException {
+    write(value, 2);
+  }
+
+  /**
+   * Reads integer of the size defined in the memory layout.
+   *
+   * @return Integer value
+   */
+  public int getInt() {
+    long value = read(intSize);
+    return intSize == 2 ? (short) value : (int) value;
+  }
+
+  /**
+   * Writes integer of the size defined in the memory layout.
+   *
+   * @param value Integer value
+   */
+  public void setInt(int value) throws MoteMemoryException {
+    write(value, intSize);
+  }
+
+  public int getInt32() {
+    return (int) read(4);
+  }
+
+  public void setInt32(int value) throws MoteMemoryException {
+    write(value, 4);
+  }
+
+  public long getInt64() {
+    return read(8);
+  }
+
+  public void setInt64(long value) throws MoteMemoryException {
+    write(value, 8);
+  }
+
+  /**
+   * Reads pointer of the size defined in the memory layout.
+   *
+   * @return Address value
+   */
+  public long getAddr() {
+    long value = read(addrSize);
+    switch (addrSize) {
+      case 2:
+        return (short) value;
+      case 4:
+        return (int) value;
+      default:
+        return value;
+    }
+  }
+
+  public byte[] getByteArray(int length) {
+    return section.getMemorySegment(address, length);
+  }
+
+  public void setByteArray(byte[] data) throws MoteMemoryException {
+    section.setMemorySegment(address, data);
+  }
+
+  private long read(int size) {
+    byte[] data = null;
+    if (arrayMemory == null) {
+      data = section.getMemorySegment(address, size);
+    }
+    long value = 0;
+    for (int i = 0; i < size; i++) {
+      int idx = bigEndian ? i : size - 1 - i;
+      byte b;
+      if (data != null) {
+        b = data[idx];
+      } else {
+        b = arrayMemory.getByte(address + idx);
+      }
+      value = (value << 8) | (b & 0xFF);
+    }
+    return value;
+  }
+
+  private void write(long value, int size) throws MoteMemoryException {
+    byte[] data = null;
+    if (arrayMemory == null) {
+      data = new byte[size];
+    }
+    for (int i = 0; i < size; i++) {
+      int idx = bigEndian ? size - 1 - i : i;
+      byte b = (byte) (value >>> (8 * i));
+      if (data != null) {
+        data[idx] = b;
+      } else {
+        arrayMemory.setByte(address + idx, b);
+      }
+    }
+    if (data != null) {
+      section.setMemorySegment(address, data);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Handle of " + symbol;
+  }
+}
@@ -106,6 +106,19 @@ public class VarMemory extends Memory {
     return sym;
   }
 
+  /**
+   * Resolves variable with given name for repeated access.
+   * The returned handle is bound to the memory currently associated with
+   * this access class.
+   *
+   * @param varName Variable name
+   * @return Handle of variable
+   * @throws UnknownVariableException If variable not found
+   */
+  public SymbolHandle getSymbolHandle(String varName) throws UnknownVariableException {
+    return new SymbolHandle(memIntf, getVariable(varName));
+  }
+
   /**
    * Returns address of variable with given name.
    *
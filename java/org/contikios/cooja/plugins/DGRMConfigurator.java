@@ -51,6 +51,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.AbstractTableModel;
@@ -99,6 +100,7 @@ public class DGRMConfigurator extends VisPlugin {
   };
 
   private Cooja gui = null;
+  private Simulation simulation = null;
   private DirectedGraphMedium radioMedium = null;
   private Observer radioMediumObserver;
   private JTable graphTable = null;
@@ -108,12 +110,17 @@ public class DGRMConfigurator extends VisPlugin {
   public DGRMConfigurator(Simulation sim, Cooja gui) {
     super("DGRM Configurator", gui);
     this.gui = gui;
+    this.simulation = sim;
     radioMedium = (DirectedGraphMedium) sim.getRadioMedium();
 
     /* Listen for graph updates */
     radioMedium.addRadioTransmissionObserver(radioMediumObserver = new Observer() {
       public void update(Observable obs, Object obj) {
-        model.fireTableDataChanged();
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            model.fireTableDataChanged();
+          }
+        });
       }
     });
 
@@ -269,19 +276,37 @@ public class DGRMConfigurator extends VisPlugin {
     }
 
     /* Register new edge with radio medium */
-    DirectedGraphMedium.Edge newEdge = new DirectedGraphMedium.Edge(
+    final DirectedGraphMedium.Edge newEdge = new DirectedGraphMedium.Edge(
     		((Mote) source.getSelectedItem()).getInterfaces().getRadio(),
     		new DGRMDestinationRadio(
     				((Mote) dest.getSelectedItem()).getInterfaces().getRadio()
     		)
     );
-    radioMedium.addEdge(newEdge);
-    model.fireTableDataChanged();
+    invokeSimulationThread(new Runnable() {
+      public void run() {
+        radioMedium.addEdge(newEdge);
+      }
+    });
   }
 
-  private void doRemoveLink(DirectedGraphMedium.Edge edge) {
-    radioMedium.removeEdge(edge);
-    model.fireTableDataChanged();
+  private void doRemoveLink(final DirectedGraphMedium.Edge edge) {
+    invokeSimulationThread(new Runnable() {
+      public void run() {
+        radioMedium.removeEdge(edge);
+      }
+    });
+  }
+
+  /**
+   * Edges are modified from the simulation thread, which reads them.
+   * The table is updated when the radio medium notifies observers.
+   */
+  private void invokeSimulationThread(Runnable r) {
+    if (!simulation.isRunning()) {
+      r.run();
+    } else {
+      simulation.invokeSimulationThread(r);
+    }
   }
 	private void doRemoveSelectedLink() {
     int firstIndex = graphTable.getSelectedRow();
@@ -303,9 +328,11 @@ public class DGRMConfigurator extends VisPlugin {
       if (n != JOptionPane.YES_OPTION) {
         return;
       }
-      for (DirectedGraphMedium.Edge e: radioMedium.getEdges()) {
-      	radioMedium.removeEdge(e);
-      }
+      invokeSimulationThread(new Runnable() {
+        public void run() {
+          radioMedium.clearEdges();
+        }
+      });
     }
 
 		/* Select file to import edges from */
@@ -331,16 +358,18 @@ public class DGRMConfigurator extends VisPlugin {
     }
 	}
 
-	private void importEdges(DirectedGraphMedium.Edge[] edges) {
+	private void importEdges(final DirectedGraphMedium.Edge[] edges) {
 		Arrays.sort(edges, new Comparator<DirectedGraphMedium.Edge>() {
 			public int compare(Edge o1, Edge o2) {
 				return o1.source.getMote().getID() - o2.source.getMote().getID();
 			}
 		});
-		for (DirectedGraphMedium.Edge e: edges) {
-			radioMedium.addEdge(e);
-		}
-		logger.info("Imported " + edges.length + " DGRM edges");
+		invokeSimulationThread(new Runnable() {
+		  public void run() {
+		    radioMedium.addEdges(Arrays.asList(edges));
+		    logger.info("Imported " + edges.length + " DGRM edges");
+		  }
+		});
 	}
 
 	static final int INDEX_SRC = 0;
@@ -445,24 +474,32 @@ public class DGRMConfigurator extends VisPlugin {
         return;
       }
 
-      DirectedGraphMedium.Edge edge = radioMedium.getEdges()[row];
-      try {
-      	if (column == IDX_RATIO) {
-      		((DGRMDestinationRadio)edge.superDest).ratio = ((Number)value).doubleValue();
-      	} else if (column == IDX_SIGNAL) {
-      		((DGRMDestinationRadio)edge.superDest).signal = ((Number)value).doubleValue();
-      	} else if (column == IDX_DELAY) {
-      		((DGRMDestinationRadio)edge.superDest).delay =
-      			((Number)value).longValue() * Simulation.MILLISECOND;
-      	} else if (column == IDX_LQI) {
-  			((DGRMDestinationRadio)edge.superDest).lqi = ((Number)value).intValue();
-      	} 
-      	else {
-          super.setValueAt(value, row, column);
-      	}
-      	radioMedium.requestEdgeAnalysis();
-      } catch (ClassCastException e) {
+      final DirectedGraphMedium.Edge edge = radioMedium.getEdges()[row];
+      if (column != IDX_RATIO && column != IDX_SIGNAL &&
+          column != IDX_DELAY && column != IDX_LQI) {
+        super.setValueAt(value, row, column);
+        return;
+      }
+      if (!(value instanceof Number)) {
+        return;
       }
+      final Number number = (Number) value;
+      final int col = column;
+      invokeSimulationThread(new Runnable() {
+        public void run() {
+          DGRMDestinationRadio dest = edge.superDest;
+          if (col == IDX_RATIO) {
+            dest.ratio = number.doubleValue();
+          } else if (col == IDX_SIGNAL) {
+            dest.signal = number.doubleValue();
+          } else if (col == IDX_DELAY) {
+            dest.delay = number.longValue() * Simulation.MILLISECOND;
+          } else if (col == IDX_LQI) {
+            dest.lqi = number.intValue();
+          }
+          radioMedium.updateEdge(edge);
+        }
+      });
     }
 
     public boolean isCellEditable(int row, int column) {
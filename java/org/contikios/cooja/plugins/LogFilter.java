@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.plugins;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Predicate on mote log output, evaluated on the simulation thread.
+ *
+ * The test script is only woken for log lines accepted by the current
+ * filter. Filters are either derived by {@link ScriptParser} from
+ * WAIT_UNTIL expressions, or set by the script via LOG_FILTER(regex, id).
+ *
+ * A filter accepts a line only if the line is printed by the filter's mote
+ * (if any) and satisfies all string conditions.
+ *
+ * @see LogScriptEngine
+ */
+public class LogFilter {
+  public static final int ANY_MOTE = -1;
+
+  /* String conditions, as the java.lang.String methods */
+  static final int CONTAINS = 0;
+  static final int STARTS_WITH = 1;
+  static final int ENDS_WITH = 2;
+  static final int EQUALS = 3;
+  static final int MATCHES = 4; /* Entire message */
+  static final int FIND = 5; /* Any part of message */
+  private static final String[] OPERATION_NAMES = {
+    "contains", "startsWith", "endsWith", "equals", "matches", "find"
+  };
+
+  private int moteID = ANY_MOTE;
+  private boolean acceptsNone = false;
+
+  private final ArrayList<Integer> operations = new ArrayList<Integer>();
+  private final ArrayList<String> arguments = new ArrayList<String>();
+  private final ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+
+  LogFilter() {
+  }
+
+  /**
+   * @param regex Regular expression found in accepted lines, or null
+   * @param moteID Mote ID of accepted lines, or {@link #ANY_MOTE}
+   */
+  public LogFilter(String regex, int moteID) {
+    if (regex != null) {
+      addCondition(FIND, regex);
+    }
+    setMoteID(moteID);
+  }
+
+  void setMoteID(int id) {
+    if (id == ANY_MOTE) {
+      return;
+    }
+    if (moteID != ANY_MOTE && moteID != id) {
+      /* id == a && id == b */
+      acceptsNone = true;
+    }
+    moteID = id;
+  }
+
+  void addCondition(int operation, String argument) {
+    operations.add(operation);
+    arguments.add(argument);
+    if (operation == MATCHES || operation == FIND) {
+      patterns.add(Pattern.compile(argument));
+    } else {
+      patterns.add(null);
+    }
+  }
+
+  /**
+   * @return True if filter has no conditions
+   */
+  boolean isEmpty() {
+    return moteID == ANY_MOTE && !acceptsNone && operations.isEmpty();
+  }
+
+  /**
+   * @param id Mote ID
+   * @param msg Log message
+   * @return True if script should be woken for this line
+   */
+  public boolean accept(int id, String msg) {
+    if (acceptsNone) {
+      return false;
+    }
+    if (moteID != ANY_MOTE && moteID != id) {
+      return false;
+    }
+    for (int i=0; i < operations.size(); i++) {
+      String argument = arguments.get(i);
+      boolean ok;
+      switch (operations.get(i)) {
+      case CONTAINS:
+        ok = msg.contains(argument);
+        break;
+      case STARTS_WITH:
+        ok = msg.startsWith(argument);
+        break;
+      case ENDS_WITH:
+        ok = msg.endsWith(argument);
+        break;
+      case EQUALS:
+        ok = msg.equals(argument);
+        break;
+      case MATCHES:
+        ok = patterns.get(i).matcher(msg).matches();
+        break;
+      default:
+        ok = patterns.get(i).matcher(msg).find();
+        break;
+      }
+      if (!ok) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (moteID != ANY_MOTE) {
+      sb.append("id == ").append(moteID);
+    }
+    for (int i=0; i < operations.size(); i++) {
+      if (sb.length() > 0) {
+        sb.append(" && ");
+      }
+      sb.append("msg.").append(OPERATION_NAMES[operations.get(i)]);
+      sb.append("(\"").append(arguments.get(i)).append("\")");
+    }
+    return sb.toString();
+  }
+}
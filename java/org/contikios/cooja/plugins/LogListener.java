@@ -49,10 +49,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
 import javax.swing.AbstractAction;
@@ -88,13 +91,14 @@ import org.contikios.cooja.HasQuickHelp;
 import org.contikios.cooja.Mote;
 import org.contikios.cooja.Plugin;
 import org.contikios.cooja.PluginType;
+import org.contikios.cooja.SimEventCentral;
 import org.contikios.cooja.SimEventCentral.LogOutputEvent;
 import org.contikios.cooja.SimEventCentral.LogOutputListener;
 import org.contikios.cooja.Simulation;
 import org.contikios.cooja.VisPlugin;
 import org.contikios.cooja.dialogs.TableColumnAdjuster;
 import org.contikios.cooja.dialogs.UpdateAggregator;
-import org.contikios.cooja.util.ArrayQueue;
+import org.contikios.cooja.util.LogBuffer;
 
 /**
  * A simple mote log listener.
@@ -141,7 +145,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
 
   private final JTable logTable;
   private TableRowSorter<TableModel> logFilter;
-  private ArrayQueue<LogData> logs = new ArrayQueue<LogData>();
+  private List<LogData> logs;
 
   private Simulation simulation;
 
@@ -184,13 +188,20 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
       /* Add */
       int index = logs.size();
       logs.addAll(ls);
-      model.fireTableRowsInserted(index, logs.size()-1);
+      if (logs.size() > index) {
+        model.fireTableRowsInserted(index, logs.size()-1);
+      }
 
       /* Remove old */
       int removed = 0;
-      while (logs.size() > simulation.getEventCentral().getLogOutputBufferSize()) {
-        logs.remove(0);
-        removed++;
+      if (logs instanceof BufferedLogs) {
+        BufferedLogs bufferedLogs = (BufferedLogs) logs;
+        while (!bufferedLogs.isEmpty() &&
+            (bufferedLogs.size() > simulation.getEventCentral().getLogOutputBufferSize() ||
+             bufferedLogs.isFull())) {
+          bufferedLogs.removeFirst();
+          removed++;
+        }
       }
       if (removed > 0) {
         model.fireTableRowsDeleted(0, removed-1);
@@ -210,6 +221,14 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
     super("Mote output", gui);
     this.simulation = simulation;
 
+    SimEventCentral central = simulation.getEventCentral();
+    if (central.isLogOutputStored()) {
+      /* Rows are read from the log output store on demand */
+      logs = new StoredLogs(central);
+    } else {
+      logs = new BufferedLogs(central.getLogOutputMemoryBudget());
+    }
+
     /* Menus */
     JMenuBar menuBar = new JMenuBar();
     JMenu fileMenu = new JMenu("File");
@@ -332,7 +351,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
 
       	if (backgroundColors) {
           LogData d = logs.get(logTable.getRowSorter().convertRowIndexToModel(row));
-          int color = (10+d.ev.getMote().getID())%10;
+          int color = (10+d.ev.getMoteID())%10;
           setBackground(BG_COLORS[color]);
         } else {
           setBackground(null);
@@ -387,7 +406,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
           return;
         }
         LogData d = logs.get(logTable.getRowSorter().convertRowIndexToModel(rowIndex));
-        if (d == null) {
+        if (d == null || d.ev.getMote() == null) {
         	return;
         }
         simulation.getCooja().signalMoteHighlight(d.ev.getMote());
@@ -458,7 +477,25 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
     logTable.setComponentPopupMenu(popupMenu);
 */
     /* Fetch log output history */
-    LogOutputEvent[] history = simulation.getEventCentral().getLogOutputHistory();
+    LogOutputEvent[] history = new LogOutputEvent[0];
+    if (logs instanceof StoredLogs) {
+      LogOutputEvent[] last = central.getLogOutputHistory(logs.size() - 1, 1);
+      if (last.length > 0 && last[0].getTime() > TIME_HOUR) {
+        hasHours = true;
+        repaintTimeColumn();
+      }
+      if (logs.size() > 0) {
+        java.awt.EventQueue.invokeLater(new Runnable() {
+          public void run() {
+            model.fireTableDataChanged();
+            logTable.scrollRectToVisible(
+                new Rectangle(0, logTable.getHeight() - 2, 1, logTable.getHeight()));
+          }
+        });
+      }
+    } else {
+      history = central.getLogOutputHistory();
+    }
     if (history.length > 0) {
       for (LogOutputEvent historyEv: history) {
       	if (!hasHours && historyEv.getTime() > TIME_HOUR) {
@@ -501,7 +538,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
       }
       public void removedLogOutput(LogOutputEvent ev) {
       }
-    });
+    }, false);
 
     /* UI components */
     JPanel filterPanel = new JPanel();
@@ -704,7 +741,11 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
   public void trySelectTime(final long time) {
     java.awt.EventQueue.invokeLater(new Runnable() {
       public void run() {
-        for (int i=0; i < logs.size(); i++) {
+        int first = 0;
+        if (logs instanceof StoredLogs) {
+          first = ((StoredLogs) logs).findTime(time);
+        }
+        for (int i=first; i < logs.size(); i++) {
           if (logs.get(i).ev.getTime() < time) {
             continue;
           }
@@ -728,7 +769,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
     }
 
     public String getID() {
-      return "ID:" + ev.getMote().getID();
+      return "ID:" + ev.getMoteID();
     }
 
     public String getTime() {
@@ -740,6 +781,134 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
     }
   }
 
+  /**
+   * Rows of log output kept in a compact log buffer. Row objects are
+   * created on demand.
+   */
+  private class BufferedLogs extends AbstractList<LogData> {
+    private final LogBuffer buffer;
+    private long lastID = -1;
+    private LogData last = null;
+
+    public BufferedLogs(long memoryBudget) {
+      buffer = new LogBuffer(memoryBudget, true);
+    }
+
+    public LogData get(int row) {
+      long id = buffer.getRemovedCount() + row;
+      if (id != lastID) {
+        int moteID = buffer.getMoteID(row);
+        last = new LogData(new LogOutputEvent(simulation.getMoteWithID(moteID), moteID,
+            buffer.getTime(row), buffer.getMessage(row)));
+        lastID = id;
+      }
+      return last;
+    }
+
+    public int size() {
+      return buffer.size();
+    }
+
+    public boolean add(LogData data) {
+      buffer.add(data.ev.getTime(), data.ev.getMoteID(), data.ev.getMessage());
+      return true;
+    }
+
+    /**
+     * Removes the first row. Row objects are not kept, so none is returned.
+     */
+    public void removeFirst() {
+      buffer.removeFirst();
+    }
+
+    public void clear() {
+      buffer.clear();
+      lastID = -1;
+      last = null;
+    }
+
+    public boolean isFull() {
+      return buffer.isFull();
+    }
+  }
+
+  /**
+   * Rows of log output read on demand from the log output store.
+   * Adding rows only counts log output already in the store, and
+   * clearing hides all current rows.
+   */
+  private class StoredLogs extends AbstractList<LogData> {
+    private static final int PAGE_SIZE = 1024;
+    private static final int PAGE_CACHE_SIZE = 16;
+
+    private final SimEventCentral central;
+    private long first = 0; /* Store index of first row */
+    private int size = 0;
+
+    private final LinkedHashMap<Long, LogData[]> pages =
+      new LinkedHashMap<Long, LogData[]>(PAGE_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = -2081628837713052114L;
+        protected boolean removeEldestEntry(Map.Entry<Long, LogData[]> eldest) {
+          return size() > PAGE_CACHE_SIZE;
+        }
+      };
+
+    public StoredLogs(SimEventCentral central) {
+      this.central = central;
+      update();
+    }
+
+    public LogData get(int row) {
+      if (row < 0 || row >= size) {
+        throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+      }
+      long index = first + row;
+      long page = index/PAGE_SIZE;
+      int offset = (int) (index%PAGE_SIZE);
+      LogData[] data = pages.get(page);
+      if (data == null || offset >= data.length) {
+        LogOutputEvent[] events = central.getLogOutputHistory(page*PAGE_SIZE, PAGE_SIZE);
+        data = new LogData[events.length];
+        for (int i = 0; i < events.length; i++) {
+          data[i] = new LogData(events[i]);
+        }
+        pages.put(page, data);
+      }
+      if (offset >= data.length) {
+        throw new IndexOutOfBoundsException("Row not in log output store: " + row);
+      }
+      return data[offset];
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean add(LogData data) {
+      return update();
+    }
+
+    public boolean addAll(Collection<? extends LogData> c) {
+      return update();
+    }
+
+    private boolean update() {
+      int old = size;
+      size = (int) Math.min(Integer.MAX_VALUE, central.getLogOutputHistorySize() - first);
+      return size != old;
+    }
+
+    public void clear() {
+      first += size;
+      size = 0;
+      pages.clear();
+    }
+
+    public int findTime(long time) {
+      return (int) Math.max(0, Math.min(size, central.findLogOutputHistory(time) - first));
+    }
+  }
+
   private Action saveAction = new AbstractAction("Save to file") {
     private static final long serialVersionUID = -4140706275748686944L;
 
@@ -1057,7 +1226,7 @@ public class LogListener extends VisPlugin implements HasQuickHelp {
     return show;
   }
   public Color getColorOfEntry(LogOutputEvent logEvent) {
-    int color = (10+logEvent.getMote().getID())%10;
+    int color = (10+logEvent.getMoteID())%10;
     return BG_COLORS[color];
   }
 
@@ -31,12 +31,20 @@
 package org.contikios.cooja.plugins;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Observer;
 import java.util.concurrent.Semaphore;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -50,6 +58,8 @@ import org.contikios.cooja.SimEventCentral.LogOutputEvent;
 import org.contikios.cooja.SimEventCentral.LogOutputListener;
 import org.contikios.cooja.Simulation;
 import org.contikios.cooja.TimeEvent;
+import org.contikios.cooja.util.AsyncLogWriter;
+import org.contikios.cooja.util.StringUtils;
 
 /**
  * Loads and executes a Contiki test script.
@@ -63,8 +73,21 @@ public class LogScriptEngine {
   private static Logger logger = Logger.getLogger(LogScriptEngine.class);
   private static final long DEFAULT_TIMEOUT = 20*60*1000*Simulation.MILLISECOND; /* 1200s = 20 minutes */
 
-  private ScriptEngine engine =
-    new ScriptEngineManager().getEngineByName("JavaScript");
+  /* Script engines are not thread safe: test scripts created by the same
+   * thread, such as a batch run worker, share one engine, and each test
+   * script runs in its own bindings */
+  private static final ThreadLocal<ThreadEngine> threadEngines = new ThreadLocal<ThreadEngine>() {
+    protected ThreadEngine initialValue() {
+      return new ThreadEngine();
+    }
+  };
+
+  private final ThreadEngine threadEngine = threadEngines.get();
+  private ScriptEngine engine = threadEngine.engine;
+  private Bindings bindings = engine.createBindings();
+
+  private long compileTime = 0; /* ms */
+  private boolean compileCached = false;
 
   /* Log output listener */
   private LogOutputListener logOutputListener = new LogOutputListener() {
@@ -99,14 +122,93 @@ public class LogScriptEngine {
   private long timeout;
   private long startTime;
   private long startRealTime;
+  private long endRealTime;
   private long nextProgress;
 
   private int exitCode = 0;
+
+  /* Files appended to by log.append(), kept open until script is deactivated.
+   * Open files are also flushed if Cooja exits without deactivating the script. */
+  private final HashMap<String, AsyncLogWriter> appendWriters = new HashMap<String, AsyncLogWriter>();
+
+  /* Log filters, only changed by the script thread while the simulation waits */
+  private LogFilter[] waitFilters = new LogFilter[0];
+  private LogFilter waitFilter = null; /* Current WAIT_UNTIL */
+  private LogFilter scriptFilter = null; /* LOG_FILTER() */
   
   public LogScriptEngine(Simulation simulation) {
     this.simulation = simulation;
   }
 
+  /**
+   * Script engine of a thread, with the scripts compiled by it.
+   */
+  private static class ThreadEngine {
+    final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+    final HashMap<String, CompiledScript> compiledScripts =
+      new HashMap<String, CompiledScript>(); /* Content hash -> compiled script */
+  }
+
+  /**
+   * Compiles script, or returns it from cache if the same script has been
+   * compiled by this engine before, for example in a reloaded simulation.
+   *
+   * @param jsCode Script code
+   * @return Compiled script, or null if engine does not support compilation
+   * @throws ScriptException At syntax errors
+   */
+  private CompiledScript getCompiledScript(String jsCode) throws ScriptException {
+    if (!(engine instanceof Compilable)) {
+      return null;
+    }
+
+    String hash;
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      hash = StringUtils.toHex(digest.digest(jsCode.getBytes(Charset.forName("UTF-8"))));
+    } catch (NoSuchAlgorithmException e) {
+      return ((Compilable)engine).compile(jsCode);
+    }
+
+    synchronized (threadEngine) {
+      CompiledScript compiled = threadEngine.compiledScripts.get(hash);
+      if (compiled != null) {
+        compileCached = true;
+        return compiled;
+      }
+      compiled = ((Compilable)engine).compile(jsCode);
+      threadEngine.compiledScripts.put(hash, compiled);
+      return compiled;
+    }
+  }
+
+  /**
+   * @return Time spent compiling the test script, in milliseconds
+   */
+  public long getCompileTime() {
+    return compileTime;
+  }
+
+  /**
+   * @return True if the compiled test script was found in cache
+   */
+  public boolean isCompileCached() {
+    return compileCached;
+  }
+
+  /**
+   * @return Real time since the test script was started, in milliseconds
+   */
+  public long getRunTime() {
+    if (startRealTime == 0) {
+      return 0;
+    }
+    if (endRealTime != 0) {
+      return endRealTime - startRealTime;
+    }
+    return System.currentTimeMillis() - startRealTime;
+  }
+
   /* Only called from the simulation loop */
   private void stepScript() {
     /* Release script - halt simulation */
@@ -138,6 +240,25 @@ public class LogScriptEngine {
     }
   }
 
+  /**
+   * Lines not accepted would not wake up the script, or the script would
+   * immediately wait again, so there is no need to step the script.
+   * The script variables are still updated, as for any other line.
+   *
+   * @param id Mote ID
+   * @param msg Log message
+   * @return True if script should be stepped
+   */
+  private boolean acceptLogOutput(int id, String msg) {
+    if (waitFilter != null && !waitFilter.accept(id, msg)) {
+      return false;
+    }
+    if (scriptFilter != null && !scriptFilter.accept(id, msg)) {
+      return false;
+    }
+    return true;
+  }
+
   /* Only called from the simulation loop */
   private void handleNewMoteOutput(Mote mote, int id, long time, String msg) {
     try {
@@ -147,12 +268,15 @@ public class LogScriptEngine {
         /*scriptThread.isInterrupted()*/
         return;
       }
-
       /* Update script variables */
-      engine.put("mote", mote);
-      engine.put("id", id);
-      engine.put("time", time);
-      engine.put("msg", msg);
+      bindings.put("mote", mote);
+      bindings.put("id", id);
+      bindings.put("time", time);
+      bindings.put("msg", msg);
+
+      if (!acceptLogOutput(id, msg)) {
+        return;
+      }
 
       stepScript();
     } catch (UndeclaredThrowableException e) {
@@ -186,6 +310,26 @@ public class LogScriptEngine {
     });
   }
 
+  private void closeAppendWriter(String filename) {
+    AsyncLogWriter out;
+    synchronized (appendWriters) {
+      out = appendWriters.remove(filename);
+    }
+    if (out != null) {
+      out.close();
+    }
+  }
+
+  private void closeAppendWriters() {
+    String[] filenames;
+    synchronized (appendWriters) {
+      filenames = appendWriters.keySet().toArray(new String[appendWriters.size()]);
+    }
+    for (String filename: filenames) {
+      closeAppendWriter(filename);
+    }
+  }
+
   public void setScriptLogObserver(Observer observer) {
     scriptLogObserver = observer;
   }
@@ -198,13 +342,14 @@ public class LogScriptEngine {
       return;
     }
     scriptActive = false;
+    endRealTime = System.currentTimeMillis();
 
     timeoutEvent.remove();
     timeoutProgressEvent.remove();
 
     simulation.getEventCentral().removeLogOutputListener(logOutputListener);
 
-    engine.put("SHUTDOWN", true);
+    bindings.put("SHUTDOWN", true);
 
     try {
       if (semaphoreScript != null) {
@@ -233,6 +378,8 @@ public class LogScriptEngine {
       }
     }
     scriptThread = null;
+
+    closeAppendWriters();
   }
 
   public void activateScript(String scriptCode) throws ScriptException {
@@ -257,6 +404,10 @@ public class LogScriptEngine {
     ScriptParser parser = new ScriptParser(scriptCode);
     String jsCode = parser.getJSCode();
 
+    waitFilters = parser.getLogFilters();
+    waitFilter = null;
+    scriptFilter = null;
+
     timeout = parser.getTimeoutTime();
     if (timeout < 0) {
       timeout = DEFAULT_TIMEOUT;
@@ -265,15 +416,22 @@ public class LogScriptEngine {
       logger.info("Script timeout in " + (timeout/Simulation.MILLISECOND) + " ms");
     }
 
-    engine.eval(jsCode);
+    long compileStart = System.currentTimeMillis();
+    CompiledScript compiled = getCompiledScript(jsCode);
+    compileTime = System.currentTimeMillis() - compileStart;
+    if (compiled != null) {
+      compiled.eval(bindings);
+    } else {
+      engine.eval(jsCode, bindings);
+    }
 
     /* Setup script control */
     semaphoreScript = new Semaphore(1);
     semaphoreSim = new Semaphore(1);
-    engine.put("TIMEOUT", false);
-    engine.put("SHUTDOWN", false);
-    engine.put("SEMAPHORE_SCRIPT", semaphoreScript);
-    engine.put("SEMAPHORE_SIM", semaphoreSim);
+    bindings.put("TIMEOUT", false);
+    bindings.put("SHUTDOWN", false);
+    bindings.put("SEMAPHORE_SCRIPT", semaphoreScript);
+    bindings.put("SEMAPHORE_SIM", semaphoreSim);
 
     try {
       semaphoreScript.acquire();
@@ -297,7 +455,7 @@ public class LogScriptEngine {
       public void run() {
         /*logger.info("test script thread starts");*/
         try {
-          ((Invocable)engine).getInterface(Runnable.class).run();
+          ((Invocable)engine).getInterface(bindings, Runnable.class).run();
         } catch (RuntimeException e) {
           Throwable throwable = e;
           while (throwable.getCause() != null) {
@@ -311,6 +469,14 @@ public class LogScriptEngine {
             if (!Cooja.isVisualized()) {
               logger.fatal("Test script error, terminating Cooja.");
               logger.fatal("Script error:", e);
+              if (simulation.getCooja().isBatchRun()) {
+                /* Other simulations are still running */
+                deactivateScript();
+                simulation.stopSimulation();
+                simulation.getCooja().doQuit(false, 1);
+                return;
+              }
+              closeAppendWriters();
               System.exit(1);
             }
 
@@ -332,19 +498,20 @@ public class LogScriptEngine {
     }
 
     /* Setup simulation observers */
-    simulation.getEventCentral().addLogOutputListener(logOutputListener);
+    simulation.getEventCentral().addLogOutputListener(logOutputListener, false);
 
     /* Create script output logger */
-    engine.put("log", scriptLog);
+    bindings.put("log", scriptLog);
+    bindings.put("LOG_FILTERS", scriptLogFilter);
 
     Hashtable<Object, Object> hash = new Hashtable<Object, Object>();
-    engine.put("global", hash);
-    engine.put("sim", simulation);
-    engine.put("gui", simulation.getCooja());
-    engine.put("msg", new String(""));
+    bindings.put("global", hash);
+    bindings.put("sim", simulation);
+    bindings.put("gui", simulation.getCooja());
+    bindings.put("msg", new String(""));
 
     scriptMote = new ScriptMote();
-    engine.put("node", scriptMote);
+    bindings.put("node", scriptMote);
 
     Runnable activate = new Runnable() {
       public void run() {
@@ -373,7 +540,7 @@ public class LogScriptEngine {
       }
       exitCode = 2;
       logger.info("Timeout event @ " + t);
-      engine.put("TIMEOUT", true);
+      bindings.put("TIMEOUT", true);
       stepScript();
     }
   };
@@ -404,6 +571,9 @@ public class LogScriptEngine {
           simulation.getCooja().doQuit(false, exitCode);
         };
       }.start();
+      if (simulation.getCooja().isBatchRun()) {
+        return;
+      }
       new Thread() {
         public void run() {
           try { Thread.sleep(2000); } catch (InterruptedException e) { }
@@ -422,15 +592,21 @@ public class LogScriptEngine {
     }
     public void append(String filename, String msg) {
       try{
-        FileWriter fstream = new FileWriter(filename, true);
-        BufferedWriter out = new BufferedWriter(fstream);
+        AsyncLogWriter out;
+        synchronized (appendWriters) {
+          out = appendWriters.get(filename);
+          if (out == null) {
+            out = new AsyncLogWriter(new File(filename), true);
+            appendWriters.put(filename, out);
+          }
+        }
         out.write(msg);
-        out.close();
       } catch (Exception e) {
         logger.warn("Test append failed: " + filename + ": " + e.getMessage());
       }
     }
     public void writeFile(String filename, String msg) {
+      closeAppendWriter(filename);
       try{
         FileWriter fstream = new FileWriter(filename, false);
         BufferedWriter out = new BufferedWriter(fstream);
@@ -467,7 +643,7 @@ public class LogScriptEngine {
     }
 
     public void generateMessage(final long delay, final String msg) {
-      final Mote currentMote = (Mote) engine.get("mote");
+      final Mote currentMote = (Mote) bindings.get("mote");
       final TimeEvent generateEvent = new TimeEvent(0) {
         public void execute(long t) {
           if (scriptThread == null ||
@@ -476,12 +652,12 @@ public class LogScriptEngine {
             /*scriptThread.isInterrupted()*/
             return;
           }
-
-          /* Update script variables */
-          engine.put("mote", currentMote);
-          engine.put("id", currentMote.getID());
-          engine.put("time", currentMote.getSimulation().getSimulationTime());
-          engine.put("msg", msg);
+          /* Update script variables, and always step the script:
+           * the script generated the message itself */
+          bindings.put("mote", currentMote);
+          bindings.put("id", currentMote.getID());
+          bindings.put("time", currentMote.getSimulation().getSimulationTime());
+          bindings.put("msg", msg);
 
           stepScript();
         }
@@ -495,4 +671,21 @@ public class LogScriptEngine {
       });
     }
   };
+
+  private ScriptLogFilter scriptLogFilter = new ScriptLogFilter() {
+    public void selectWaitFilter(int index) {
+      if (index < 0 || index >= waitFilters.length) {
+        waitFilter = null;
+      } else {
+        waitFilter = waitFilters[index];
+      }
+    }
+    public void setScriptFilter(String regex, int id) {
+      if (regex == null && id == LogFilter.ANY_MOTE) {
+        scriptFilter = null;
+      } else {
+        scriptFilter = new LogFilter(regex, id);
+      }
+    }
+  };
 }
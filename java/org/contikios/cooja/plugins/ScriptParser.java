@@ -30,8 +30,11 @@
 
 package org.contikios.cooja.plugins;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.script.ScriptException;
 
@@ -48,6 +51,19 @@ public class ScriptParser {
 
   private String code = null;
 
+  /* Log filters of WAIT_UNTIL expressions, see SCRIPT_WAIT() */
+  private ArrayList<LogFilter> logFilters = new ArrayList<LogFilter>();
+  private HashMap<String, Integer> logFilterIndices = new HashMap<String, Integer>();
+
+  private static final String STRING_LITERAL =
+    "\"((?:[^\"\\\\]|\\\\.)*)\"|'((?:[^'\\\\]|\\\\.)*)'";
+  private static final Pattern MSG_CONDITION = Pattern.compile(
+      "msg\\s*\\.\\s*(contains|startsWith|endsWith|equals|matches)\\s*\\(\\s*" +
+      "(?:" + STRING_LITERAL + ")" +
+      "\\s*\\)");
+  private static final Pattern ID_CONDITION = Pattern.compile(
+      "id\\s*===?\\s*([0-9]+)|([0-9]+)\\s*===?\\s*id");
+
   public ScriptParser(String code) throws ScriptSyntaxErrorException {
 
     code = fixNewlines(code);
@@ -189,8 +205,11 @@ public class ScriptParser {
     Matcher matcher = pattern.matcher(code);
 
     while (matcher.find()) {
-      code = matcher.replaceFirst(
-          "YIELD(); WAIT_UNTIL(" + matcher.group(1) + ")");
+      /* Lines not matching the expression's filter can not end the wait */
+      int filter = parseLogFilter(matcher.group(1));
+      String yield = filter < 0 ? "YIELD();" : "SCRIPT_WAIT(" + filter + ");";
+      code = matcher.replaceFirst(Matcher.quoteReplacement(
+          yield + " WAIT_UNTIL(" + matcher.group(1) + ")"));
       matcher.reset(code);
     }
 
@@ -206,16 +225,186 @@ public class ScriptParser {
     Matcher matcher = pattern.matcher(code);
 
     while (matcher.find()) {
-      code = matcher.replaceFirst(
+      int filter = parseLogFilter(matcher.group(1));
+      String yield = filter < 0 ? "SCRIPT_SWITCH();" : "SCRIPT_WAIT(" + filter + ");";
+      code = matcher.replaceFirst(Matcher.quoteReplacement(
           "while (!(" + matcher.group(1) + ")) { " +
-          " SCRIPT_SWITCH(); " +
-      "}");
+          " " + yield + " " +
+      "}"));
       matcher.reset(code);
     }
 
     return code;
   }
 
+  /**
+   * Derives a log filter from a WAIT_UNTIL expression.
+   *
+   * Recognizes expressions starting with conjunctions (&&) of
+   * msg.contains/startsWith/endsWith/equals/matches with a string literal
+   * argument, and of id == number. Conditions after the first unrecognized
+   * one are ignored, so the filter is a necessary condition for the
+   * expression, and skipped lines would not have evaluated anything with
+   * side effects.
+   *
+   * @param expression Expression
+   * @return Filter index, or -1 if no filter was recognized
+   */
+  private int parseLogFilter(String expression) {
+    Integer index = logFilterIndices.get(expression);
+    if (index != null) {
+      return index;
+    }
+
+    LogFilter filter = new LogFilter();
+    ArrayList<String> conditions = splitConjunction(expression);
+    if (conditions != null) {
+      for (String condition: conditions) {
+        if (!parseCondition(condition.trim(), filter)) {
+          break;
+        }
+      }
+    }
+
+    if (filter.isEmpty()) {
+      index = -1;
+    } else {
+      index = logFilters.size();
+      logFilters.add(filter);
+      logger.debug("Log filter " + index + ": " + filter);
+    }
+    logFilterIndices.put(expression, index);
+    return index;
+  }
+
+  /**
+   * @param expression Expression
+   * @return Top-level operands of &&, or null if expression is not a conjunction
+   */
+  private static ArrayList<String> splitConjunction(String expression) {
+    ArrayList<String> operands = new ArrayList<String>();
+    int depth = 0;
+    int start = 0;
+    for (int i=0; i < expression.length(); i++) {
+      char c = expression.charAt(i);
+      if (c == '"' || c == '\'') {
+        /* Skip string literal */
+        for (i++; i < expression.length() && expression.charAt(i) != c; i++) {
+          if (expression.charAt(i) == '\\') {
+            i++;
+          }
+        }
+      } else if (c == '(' || c == '[' || c == '{') {
+        depth++;
+      } else if (c == ')' || c == ']' || c == '}') {
+        depth--;
+        if (depth < 0) {
+          return null;
+        }
+      } else if (depth > 0) {
+        continue;
+      } else if (c == '/' || c == '?' || c == ',' || c == ';') {
+        /* Regexp literal, or operator with lower precedence than && */
+        return null;
+      } else if (expression.startsWith("||", i)) {
+        return null;
+      } else if (expression.startsWith("&&", i)) {
+        operands.add(expression.substring(start, i));
+        start = i + 2;
+        i++;
+      }
+    }
+    if (depth != 0) {
+      return null;
+    }
+    operands.add(expression.substring(start));
+    return operands;
+  }
+
+  private static boolean parseCondition(String condition, LogFilter filter) {
+    Matcher matcher = ID_CONDITION.matcher(condition);
+    if (matcher.matches()) {
+      String id = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+      try {
+        filter.setMoteID(Integer.parseInt(id));
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      return true;
+    }
+
+    matcher = MSG_CONDITION.matcher(condition);
+    if (!matcher.matches()) {
+      return false;
+    }
+    String argument = unescape(matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+    if (argument == null) {
+      return false;
+    }
+    String method = matcher.group(1);
+    if (method.equals("contains")) {
+      filter.addCondition(LogFilter.CONTAINS, argument);
+    } else if (method.equals("startsWith")) {
+      filter.addCondition(LogFilter.STARTS_WITH, argument);
+    } else if (method.equals("endsWith")) {
+      filter.addCondition(LogFilter.ENDS_WITH, argument);
+    } else if (method.equals("equals")) {
+      filter.addCondition(LogFilter.EQUALS, argument);
+    } else {
+      try {
+        filter.addCondition(LogFilter.MATCHES, argument);
+      } catch (PatternSyntaxException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param literal String literal contents
+   * @return String, or null if literal has unsupported escape sequences
+   */
+  private static String unescape(String literal) {
+    if (literal.indexOf('\\') < 0) {
+      return literal;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i=0; i < literal.length(); i++) {
+      char c = literal.charAt(i);
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      c = literal.charAt(++i);
+      switch (c) {
+      case '\\':
+      case '"':
+      case '\'':
+        sb.append(c);
+        break;
+      case 'n':
+        sb.append('\n');
+        break;
+      case 't':
+        sb.append('\t');
+        break;
+      case 'r':
+        sb.append('\r');
+        break;
+      default:
+        return null;
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return Log filters of WAIT_UNTIL expressions, indexed as in SCRIPT_WAIT()
+   */
+  public LogFilter[] getLogFilters() {
+    return logFilters.toArray(new LogFilter[logFilters.size()]);
+  }
+
   public String getJSCode() {
     return getJSCode(code, timeoutCode);
   }
@@ -266,6 +455,16 @@ public class ScriptParser {
     " node.setMoteMsg(mote, msg); " +
     "};\n" +
     "\n" +
+    "function SCRIPT_WAIT(filter) { " +
+    " LOG_FILTERS.selectWaitFilter(filter); " +
+    " SCRIPT_SWITCH(); " +
+    " LOG_FILTERS.selectWaitFilter(-1); " +
+    "};\n" +
+    "\n" +
+    "function LOG_FILTER(regex, id) { " +
+    " LOG_FILTERS.setScriptFilter(regex === undefined ? null : regex, id === undefined ? -1 : id); " +
+    "};\n" +
+    "\n" +
     "function write(mote,msg) { " +
     " mote.getInterfaces().getLog().writeString(msg); " +
     "};\n";
@@ -40,14 +40,13 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -86,6 +85,7 @@ import org.contikios.cooja.Simulation;
 import org.contikios.cooja.VisPlugin;
 import org.contikios.cooja.dialogs.MessageList;
 import org.contikios.cooja.dialogs.MessageListUI;
+import org.contikios.cooja.util.AsyncLogWriter;
 import org.contikios.cooja.util.StringUtils;
 
 @ClassDescription("Simulation script editor")
@@ -113,7 +113,9 @@ public class ScriptRunner extends VisPlugin {
   private Simulation simulation;
   private LogScriptEngine engine;
 
-  private static BufferedWriter logWriter = null; /* For non-GUI tests */
+  /* For non-GUI tests: test log writers, shared by all test editors writing the same file */
+  private static final HashMap<File, AsyncLogWriter> logWriters = new HashMap<File, AsyncLogWriter>();
+  private File logFile = null;
 
   private JEditorPane codeEditor;
   private JTextArea logTextArea;
@@ -341,28 +343,23 @@ public class ScriptRunner extends VisPlugin {
       } else {
         try {
           /* Continously write test output to file */
-          if (logWriter == null) {
-            /* Warning: static variable, used by all active test editor plugins */
-            File logFile = new File("COOJA.testlog");
-            if (logFile.exists()) {
-              logFile.delete();
+          logFile = simulation.getCooja().getTestLogFile();
+          final AsyncLogWriter logWriter;
+          synchronized (logWriters) {
+            if (!logWriters.containsKey(logFile)) {
+              if (logFile.exists()) {
+                logFile.delete();
+              }
+              AsyncLogWriter writer = new AsyncLogWriter(logFile);
+              writer.write("Random seed: " + simulation.getRandomSeed() + "\n");
+              logWriters.put(logFile, writer);
             }
-            logWriter = new BufferedWriter(new FileWriter(logFile));
-            logWriter.write("Random seed: " + simulation.getRandomSeed() + "\n");
-            logWriter.flush();
+            logWriter = logWriters.get(logFile);
           }
           engine.setScriptLogObserver(new Observer() {
             public void update(Observable obs, Object obj) {
-              try {
-                if (logWriter != null) {
-                  logWriter.write((String) obj);
-                  logWriter.flush();
-                } else {
-                  logger.fatal("No log writer: " + obj);
-                }
-              } catch (IOException e) {
-                logger.fatal("Error when writing to test log file: " + obj, e);
-              }
+              /* Written by log writer thread, flushed at the latest when script is deactivated */
+              logWriter.write((String) obj);
             }
           });
         } catch (Exception e) {
@@ -375,6 +372,11 @@ public class ScriptRunner extends VisPlugin {
       try {
         engine.activateScript(codeEditor.getText());
 
+        if (logFile != null) {
+          logTestHeader("Script compile time: " + engine.getCompileTime() + " ms" +
+              (engine.isCompileCached()?" (cached)":"") + "\n");
+        }
+
         if (!headless) {
           if (actionLinkFile != null) {
             actionLinkFile.setEnabled(false);
@@ -401,23 +403,30 @@ public class ScriptRunner extends VisPlugin {
     } else {
       /* setScriptActive(false) */
 
+      long runTime = -1;
       if (engine != null) {
         /* Deactivate script */
         engine.deactivateScript();
         engine.setScriptLogObserver(null);
+        runTime = engine.getRunTime();
         engine = null;
       }
 
+      AsyncLogWriter logWriter = null;
+      if (logFile != null) {
+        synchronized (logWriters) {
+          logWriter = logWriters.remove(logFile);
+        }
+        logFile = null;
+      }
       if (logWriter != null) {
-        try {
-          logWriter.write(
-              "Test ended at simulation time: " +
-              (simulation!=null?simulation.getSimulationTime():"?") + "\n");
-          logWriter.flush();
-          logWriter.close();
-        } catch (IOException e) {
+        logWriter.write(
+            "Test ended at simulation time: " +
+            (simulation!=null?simulation.getSimulationTime():"?") + "\n");
+        if (runTime >= 0) {
+          logWriter.write("Script run time: " + runTime + " ms\n");
         }
-        logWriter = null;
+        logWriter.close();
       }
 
       if (!headless) {
@@ -431,6 +440,16 @@ public class ScriptRunner extends VisPlugin {
     }
   }
 
+  private void logTestHeader(String line) {
+    AsyncLogWriter logWriter;
+    synchronized (logWriters) {
+      logWriter = logWriters.get(logFile);
+    }
+    if (logWriter != null) {
+      logWriter.write(line);
+    }
+  }
+
   private void updateTitle() {
     String title = "Simulation script editor ";
     if (linkedFile != null) {
@@ -476,7 +495,7 @@ public class ScriptRunner extends VisPlugin {
         return;
       }
 
-      final File logFile = new File(coojaBuild, "COOJA.testlog");
+      final File logFile = new File(coojaBuild, Cooja.TEST_LOG_FILENAME);
 
       String command[] = {
           "java",
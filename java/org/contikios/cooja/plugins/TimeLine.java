@@ -333,7 +333,7 @@ public class TimeLine extends VisPlugin implements HasQuickHelp {
           }
         }
       }
-    });
+    }, false);
     for (Mote m: simulation.getMotes()) {
       addMote(m);
     }
@@ -84,7 +84,7 @@ public class LogVisualizerSkin implements VisualizerSkin {
     this.simulation = simulation;
     this.visualizer = vis;
 
-    simulation.getEventCentral().addLogOutputListener(logOutputListener);
+    simulation.getEventCentral().addLogOutputListener(logOutputListener, false);
   }
 
   public void setInactive() {
@@ -31,8 +31,10 @@
 package org.contikios.cooja.radiomediums;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Observable;
@@ -83,6 +85,21 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 	
 	private ArrayList<RadioConnection> activeConnections = new ArrayList<RadioConnection>();
 	
+	/* Active connections indexed by source radio and destination radio.
+	 * Connections are listed in the order they started. */
+	private HashMap<Radio, ArrayList<RadioConnection>> activeConnectionsFrom =
+		new HashMap<Radio, ArrayList<RadioConnection>>();
+	private HashMap<Radio, ArrayList<RadioConnection>> activeConnectionsTo =
+		new HashMap<Radio, ArrayList<RadioConnection>>();
+	private HashMap<RadioConnection, IndexKeys> activeConnectionKeys =
+		new HashMap<RadioConnection, IndexKeys>();
+	
+	/* Active connections indexed by all radios whose signal strengths they may affect */
+	private HashMap<Radio, ArrayList<RadioConnection>> activeConnectionsAffecting =
+		new HashMap<Radio, ArrayList<RadioConnection>>();
+	private static final RadioConnection[] NO_CONNECTIONS = new RadioConnection[0];
+	private long activeConnectionCounter = 0;
+	
 	protected RadioConnection lastConnection = null;
 	
 	private Simulation simulation = null;
@@ -100,6 +117,26 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 	protected ScnObservable radioMediumObservable = new ScnObservable();
 	protected ScnObservable radioTransmissionObservable = new ScnObservable();
 	
+	/**
+	 * How signal strengths are updated on radio events.
+	 */
+	public enum SignalStrengthUpdates {
+		/** All radios are recomputed from all active connections */
+		FULL,
+		/** Only radios affected by the started or finished connection are recomputed */
+		INCREMENTAL,
+		/** Incremental, and verified against a full recomputation */
+		CHECKED
+	}
+	private SignalStrengthUpdates signalStrengthUpdates = SignalStrengthUpdates.FULL;
+	private int signalStrengthMismatches = 0;
+	
+	/**
+	 * Maximum delay (us) of custom data that radios may forward in batches,
+	 * or -1 if custom data is forwarded as transmitted.
+	 */
+	private long customDataBatchTolerance = -1;
+	
 	/**
 	 * This constructor should always be called from implemented radio mediums.
 	 *
@@ -126,12 +163,228 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 	
 	
 	/**
+   * Active connections must only be added and removed via
+   * {@link #addActiveConnection(RadioConnection)} and
+   * {@link #removeActiveConnection(RadioConnection)}.
+   *
    * @return All active connections as an ArrayList
    */
 	protected ArrayList<RadioConnection> getActiveConnectionsArrayList() {
     return activeConnections;
   }
 	
+	/**
+	 * @param source Source radio
+	 * @return Active connections from given radio
+	 */
+	public RadioConnection[] getActiveConnectionsFrom(Radio source) {
+		return toConnectionArray(activeConnectionsFrom.get(source));
+	}
+	
+	/**
+	 * Returns all active connections that had the given radio as a destination
+	 * when started. Callers should check {@link RadioConnection#isDestination(Radio)}
+	 * since destinations may have been interfered or removed since.
+	 *
+	 * @param dest Destination radio
+	 * @return Active connections to given radio
+	 */
+	public RadioConnection[] getActiveConnectionsTo(Radio dest) {
+		return toConnectionArray(activeConnectionsTo.get(dest));
+	}
+	
+	/**
+	 * @param radio Radio
+	 * @return Active connections that may affect the signal strength of given radio
+	 * @see #getAffectedRadios(RadioConnection)
+	 */
+	public RadioConnection[] getActiveConnectionsAffecting(Radio radio) {
+		return toConnectionArray(activeConnectionsAffecting.get(radio));
+	}
+	
+	private static RadioConnection[] toConnectionArray(ArrayList<RadioConnection> conns) {
+		if (conns == null) {
+			return NO_CONNECTIONS;
+		}
+		return conns.toArray(new RadioConnection[conns.size()]);
+	}
+	
+	private static <K> void addToIndex(HashMap<K, ArrayList<RadioConnection>> index,
+			K key, RadioConnection conn) {
+		ArrayList<RadioConnection> conns = index.get(key);
+		if (conns == null) {
+			conns = new ArrayList<RadioConnection>(2);
+			index.put(key, conns);
+		}
+		conns.add(conn);
+	}
+	
+	private static <K> void removeFromIndex(HashMap<K, ArrayList<RadioConnection>> index,
+			K key, RadioConnection conn) {
+		ArrayList<RadioConnection> conns = index.get(key);
+		if (conns == null) {
+			return;
+		}
+		conns.remove(conn);
+		if (conns.isEmpty()) {
+			index.remove(key);
+		}
+	}
+	
+	/**
+	 * Adds a new active connection, and indexes it by source, destinations
+	 * and affected radios.
+	 *
+	 * @param conn Connection
+	 */
+	protected void addActiveConnection(RadioConnection conn) {
+		/* Remember keys: destinations may change later */
+		IndexKeys keys = new IndexKeys(conn.getAllDestinations(), getAffectedRadios(conn),
+				activeConnectionCounter++);
+		activeConnections.add(conn);
+		activeConnectionKeys.put(conn, keys);
+		addToIndex(activeConnectionsFrom, conn.getSource(), conn);
+		for (Radio dest : keys.destinations) {
+			addToIndex(activeConnectionsTo, dest, conn);
+		}
+		for (Radio radio : keys.affected) {
+			addToIndex(activeConnectionsAffecting, radio, conn);
+		}
+	}
+	
+	/**
+	 * Removes an active connection from all indexes.
+	 *
+	 * @param conn Connection
+	 * @return True if connection was active
+	 */
+	protected boolean removeActiveConnection(RadioConnection conn) {
+		if (!activeConnections.remove(conn)) {
+			return false;
+		}
+		IndexKeys keys = activeConnectionKeys.remove(conn);
+		removeFromIndex(activeConnectionsFrom, conn.getSource(), conn);
+		for (Radio dest : keys.destinations) {
+			removeFromIndex(activeConnectionsTo, dest, conn);
+		}
+		for (Radio radio : keys.affected) {
+			removeFromIndex(activeConnectionsAffecting, radio, conn);
+		}
+		return true;
+	}
+	
+	/**
+	 * Recomputes the radios affected by each active connection, and updates
+	 * signal strengths. Radio mediums whose reach may change while
+	 * connections are active, such as when edges are added or removed,
+	 * should call this method after each such change.
+	 * Should only be called from the simulation thread.
+	 */
+	protected void updateAffectedRadios() {
+		if (activeConnections.isEmpty()) {
+			return;
+		}
+		for (RadioConnection conn : activeConnections) {
+			for (Radio radio : activeConnectionKeys.get(conn).affected) {
+				removeFromIndex(activeConnectionsAffecting, radio, conn);
+			}
+		}
+		/* Re-add in start order */
+		for (RadioConnection conn : activeConnections) {
+			IndexKeys keys = activeConnectionKeys.get(conn);
+			keys = new IndexKeys(keys.destinations, getAffectedRadios(conn), keys.order);
+			activeConnectionKeys.put(conn, keys);
+			for (Radio radio : keys.affected) {
+				addToIndex(activeConnectionsAffecting, radio, conn);
+			}
+		}
+		/* Radios may have been dropped from, or added to, the affected sets */
+		updateSignalStrengths();
+	}
+	
+	/**
+	 * Recomputes the radios affected by the active connections from the given
+	 * source radio, and updates the signal strengths of the radios affected
+	 * before or after. Radio mediums should call this method instead of
+	 * {@link #updateAffectedRadios()} when only the reach of a single radio
+	 * changed, such as when one of its edges is added or removed.
+	 * Should only be called from the simulation thread.
+	 *
+	 * @param source Source radio
+	 */
+	protected void updateAffectedRadios(Radio source) {
+		ArrayList<RadioConnection> conns = activeConnectionsFrom.get(source);
+		if (conns == null) {
+			return;
+		}
+		LinkedHashSet<Radio> updated = new LinkedHashSet<Radio>();
+		for (RadioConnection conn : conns) {
+			IndexKeys oldKeys = activeConnectionKeys.get(conn);
+			IndexKeys keys = new IndexKeys(oldKeys.destinations, getAffectedRadios(conn), oldKeys.order);
+			activeConnectionKeys.put(conn, keys);
+			
+			LinkedHashSet<Radio> oldAffected = new LinkedHashSet<Radio>(Arrays.asList(oldKeys.affected));
+			LinkedHashSet<Radio> affected = new LinkedHashSet<Radio>(Arrays.asList(keys.affected));
+			for (Radio radio : oldAffected) {
+				if (!affected.contains(radio)) {
+					removeFromIndex(activeConnectionsAffecting, radio, conn);
+				}
+			}
+			for (Radio radio : affected) {
+				if (!oldAffected.contains(radio)) {
+					addToAffectingIndex(radio, conn, keys.order);
+				}
+			}
+			updated.addAll(oldAffected);
+			updated.addAll(affected);
+		}
+		updateSignalStrengths(updated.toArray(new Radio[updated.size()]));
+	}
+	
+	/* Keeps connections affecting a radio in start order */
+	private void addToAffectingIndex(Radio radio, RadioConnection conn, long order) {
+		ArrayList<RadioConnection> conns = activeConnectionsAffecting.get(radio);
+		if (conns == null) {
+			conns = new ArrayList<RadioConnection>(2);
+			activeConnectionsAffecting.put(radio, conns);
+		}
+		int pos = conns.size();
+		while (pos > 0 && activeConnectionKeys.get(conns.get(pos - 1)).order > order) {
+			pos--;
+		}
+		conns.add(pos, conn);
+	}
+	
+	private static class IndexKeys {
+		final Radio[] destinations;
+		final Radio[] affected;
+		final long order;
+		IndexKeys(Radio[] destinations, Radio[] affected, long order) {
+			this.destinations = destinations;
+			this.affected = affected;
+			this.order = order;
+		}
+	}
+	
+	/**
+	 * Returns all radios whose signal strengths may depend on the given
+	 * connection: its source, destinations and interfered radios.
+	 * Called once when the connection becomes active.
+	 *
+	 * Radio mediums that set signal strengths of other radios should
+	 * override this method.
+	 *
+	 * @param conn New connection
+	 * @return Affected radios
+	 */
+	protected Radio[] getAffectedRadios(RadioConnection conn) {
+		LinkedHashSet<Radio> radios = new LinkedHashSet<Radio>();
+		radios.add(conn.getSource());
+		radios.addAll(Arrays.asList(conn.getAllDestinations()));
+		radios.addAll(Arrays.asList(conn.getInterfered()));
+		return radios.toArray(new Radio[radios.size()]);
+	}
+	
 	/**
 	 * Creates a new connection from given radio.
 	 *
@@ -191,6 +444,156 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 	}
 	
 	
+	/**
+	 * Updates the signal strength of a single radio.
+	 *
+	 * Must give the radio the same signal strength as
+	 * {@link #updateSignalStrengths()}, given the active connections
+	 * that may affect it.
+	 *
+	 * @param radio Radio
+	 * @param conns Active connections affecting radio, in start order
+	 * @see #supportsIncrementalSignalStrengths()
+	 */
+	protected void updateSignalStrength(Radio radio, RadioConnection[] conns) {
+		radio.setCurrentSignalStrength(getBaseRssi(radio));
+		
+		for (RadioConnection conn : conns) {
+			if (conn.getSource() == radio) {
+				if (radio.getCurrentSignalStrength() < SS_STRONG) {
+					radio.setCurrentSignalStrength(SS_STRONG);
+				}
+			}
+			if (conn.isDestination(radio)) {
+				if (conn.getSource().getChannel() >= 0 &&
+						radio.getChannel() >= 0 &&
+						conn.getSource().getChannel() != radio.getChannel()) {
+					continue;
+				}
+				if (radio.getCurrentSignalStrength() < SS_STRONG) {
+					radio.setCurrentSignalStrength(SS_STRONG);
+				}
+			}
+		}
+		
+		for (RadioConnection conn : conns) {
+			if (!conn.isInterfered(radio)) {
+				continue;
+			}
+			if (radio.getCurrentSignalStrength() < SS_STRONG) {
+				radio.setCurrentSignalStrength(SS_STRONG);
+			}
+			if (conn.getSource().getChannel() >= 0 &&
+					radio.getChannel() >= 0 &&
+					conn.getSource().getChannel() != radio.getChannel()) {
+				continue;
+			}
+			if (!radio.isInterfered()) {
+				radio.interfereAnyReception();
+			}
+		}
+	}
+	
+	/**
+	 * Radio mediums that implement {@link #updateSignalStrength(Radio, RadioConnection[])}
+	 * consistently with {@link #updateSignalStrengths()} should return true.
+	 * Otherwise, signal strengths are always fully recomputed.
+	 *
+	 * @return True if signal strengths can be updated incrementally
+	 */
+	protected boolean supportsIncrementalSignalStrengths() {
+		return false;
+	}
+	
+	/**
+	 * Updates signal strengths after the given radios were affected by a radio
+	 * event. Depending on the update mode, either only these radios or all
+	 * radios are updated.
+	 *
+	 * @param radios Affected radios
+	 */
+	protected void updateSignalStrengths(Radio[] radios) {
+		if (signalStrengthUpdates == SignalStrengthUpdates.FULL ||
+				!supportsIncrementalSignalStrengths()) {
+			updateSignalStrengths();
+			return;
+		}
+		
+		for (Radio radio : radios) {
+			updateSignalStrength(radio, getActiveConnectionsAffecting(radio));
+		}
+		
+		if (signalStrengthUpdates == SignalStrengthUpdates.CHECKED) {
+			checkSignalStrengths();
+		}
+	}
+	
+	/**
+	 * Compares current signal strengths to a full recomputation.
+	 * Mismatches are logged and counted. The recomputed values are kept.
+	 */
+	private void checkSignalStrengths() {
+		Radio[] radios = getRegisteredRadios();
+		double[] signalStrengths = new double[radios.length];
+		boolean[] interfered = new boolean[radios.length];
+		for (int i=0; i < radios.length; i++) {
+			signalStrengths[i] = radios[i].getCurrentSignalStrength();
+			interfered[i] = radios[i].isInterfered();
+		}
+		
+		updateSignalStrengths();
+		
+		for (int i=0; i < radios.length; i++) {
+			if (signalStrengths[i] != radios[i].getCurrentSignalStrength() ||
+					interfered[i] != radios[i].isInterfered()) {
+				signalStrengthMismatches++;
+				logger.warn("Incremental signal strength mismatch: " + radios[i] +
+						": " + signalStrengths[i] + (interfered[i]?" (interfered)":"") +
+						" != " + radios[i].getCurrentSignalStrength() +
+						(radios[i].isInterfered()?" (interfered)":""));
+			}
+		}
+	}
+	
+	/**
+	 * @param mode Signal strength update mode
+	 */
+	public void setSignalStrengthUpdates(SignalStrengthUpdates mode) {
+		signalStrengthUpdates = mode;
+	}
+	
+	/**
+	 * @return Signal strength update mode
+	 */
+	public SignalStrengthUpdates getSignalStrengthUpdates() {
+		return signalStrengthUpdates;
+	}
+	
+	/**
+	 * Allows radios to forward custom data in batches instead of one object
+	 * at a time. Receivers deliver each batch with the original spacing, but
+	 * delayed by at most the given tolerance.
+	 *
+	 * @param tolerance Maximum delay (us), or -1 to forward custom data directly
+	 */
+	public void setCustomDataBatchTolerance(long tolerance) {
+		customDataBatchTolerance = tolerance < 0 ? -1 : tolerance;
+	}
+	
+	/**
+	 * @return Maximum custom data batch delay (us), or -1 if not batched
+	 */
+	public long getCustomDataBatchTolerance() {
+		return customDataBatchTolerance;
+	}
+	
+	/**
+	 * @return Number of mismatches found in checked signal strength update mode
+	 */
+	public int getSignalStrengthMismatches() {
+		return signalStrengthMismatches;
+	}
+	
 	/**
 	 * Remove given radio from any active connections.
 	 * This method can be called if a radio node falls asleep or is removed.
@@ -205,7 +608,7 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 		}
 		
 		/* Set interfered if currently a connection destination */
-		for (RadioConnection conn : activeConnections) {
+		for (RadioConnection conn : getActiveConnectionsTo(radio)) {
 			if (conn.isDestination(radio)) {
 				conn.addInterfered(radio);
 				if (!radio.isInterfered()) {
@@ -216,12 +619,11 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 	}
 	
 	private RadioConnection getActiveConnectionFrom(Radio source) {
-		for (RadioConnection conn : activeConnections) {
-			if (conn.getSource() == source) {
-				return conn;
-			}
+		ArrayList<RadioConnection> conns = activeConnectionsFrom.get(source);
+		if (conns == null) {
+			return null;
 		}
-		return null;
+		return conns.get(0);
 	}
 	
 	/**
@@ -246,17 +648,21 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 				case CARRIER_LISTENING_STOPPED:  
 					break;
 
-				case UNKNOWN:
-				case HW_ON: {
+				case UNKNOWN: {
 					/* Update signal strengths */
 					updateSignalStrengths();
 				}
 				break;
+				case HW_ON: {
+					/* Update signal strengths */
+					updateSignalStrengths(new Radio[] { radio });
+				}
+				break;
 				case HW_OFF: {
 					/* Remove any radio connections from this radio */
 					removeFromActiveConnections(radio);
 					/* Update signal strengths */
-					updateSignalStrengths();
+					updateSignalStrengths(new Radio[] { radio });
 				}
 				break;
 				case CARRIER_STARTED:
@@ -268,7 +674,7 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 						 * receiving! Ok, but it won't receive the packet
 						 */
 						radio.interfereAnyReception();
-						for (RadioConnection conn : activeConnections) {
+						for (RadioConnection conn : getActiveConnectionsTo(radio)) {
 							if (conn.isDestination(radio)) {
 								conn.addInterfered(radio);
 							}
@@ -276,7 +682,7 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 					}
 					
 					RadioConnection newConnection = createConnections(radio);
-					activeConnections.add(newConnection);
+					addActiveConnection(newConnection);
 
 					for (Radio r : newConnection.getAllDestinations()) {
 						if (newConnection.getDestinationDelay(r) == 0) {
@@ -299,7 +705,7 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 					}
 					
 					/* Update signal strengths */
-					updateSignalStrengths();
+					updateSignalStrengths(activeConnectionKeys.get(newConnection).affected);
 					
 					/* Notify observers */
 					lastConnection = null;
@@ -317,7 +723,8 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 						return;
 					}
 
-					activeConnections.remove(connection);
+					Radio[] affected = activeConnectionKeys.get(connection).affected;
+					removeActiveConnection(connection);
 					lastConnection = connection;
 					COUNTER_TX++;
 					for (Radio dstRadio : connection.getAllDestinations()) {
@@ -352,7 +759,7 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 					}
 					
 					/* Update signal strengths */
-					updateSignalStrengths();
+					updateSignalStrengths(affected);
 					
 					/* Notify observers */
 					radioTransmissionObservable.setChangedAndNotify();
@@ -618,12 +1025,36 @@ public abstract class AbstractRadioMedium extends RadioMedium {
 			config.add(element);
 		}
 
+		if (signalStrengthUpdates != SignalStrengthUpdates.FULL) {
+			Element element = new Element("signalstrengths");
+			element.setText(signalStrengthUpdates.name().toLowerCase());
+			config.add(element);
+		}
+
+		if (customDataBatchTolerance >= 0) {
+			Element element = new Element("customdatabatching");
+			element.setText("" + customDataBatchTolerance);
+			config.add(element);
+		}
+
 		return config;
 	}
 	
 	private Collection<Element> delayedConfiguration = null;
 	
 	public boolean setConfigXML(final Collection<Element> configXML, boolean visAvailable) {
+		for (Element element : configXML) {
+			if (element.getName().equals("signalstrengths")) {
+				try {
+					setSignalStrengthUpdates(
+							SignalStrengthUpdates.valueOf(element.getText().trim().toUpperCase()));
+				} catch (IllegalArgumentException e) {
+					logger.warn("Unknown signal strength update mode: " + element.getText());
+				}
+			} else if (element.getName().equals("customdatabatching")) {
+				setCustomDataBatchTolerance(Long.parseLong(element.getText().trim()));
+			}
+		}
 		delayedConfiguration = configXML;
 		return true;
 	}
@@ -31,10 +31,12 @@
 package org.contikios.cooja.radiomediums;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.log4j.Logger;
@@ -66,11 +68,15 @@ public class DirectedGraphMedium extends AbstractRadioMedium {
   private Simulation simulation;
   private Random random;
 
-  private ArrayList<Edge> edges = new ArrayList<Edge>();
-  private boolean edgesDirty = true;
+  /* Edges in insertion order.
+   * Modified from the simulation thread only, read also by the GUI. */
+  private LinkedHashSet<Edge> edges = new LinkedHashSet<Edge>();
+  private boolean edgesDirty = false;
 
-  /* Used for optimizing lookup time */
-  private Hashtable<Radio,DGRMDestinationRadio[]> edgesTable = new Hashtable<Radio,DGRMDestinationRadio[]>();
+  /* Used for optimizing lookup time.
+   * Updated per edge; destinations are kept in edge insertion order.
+   * Accessed from the simulation thread only. */
+  private HashMap<Radio,DGRMDestinationRadio[]> edgesTable = new HashMap<Radio,DGRMDestinationRadio[]>();
 
   public DirectedGraphMedium() {
     /* Do not initialize radio medium: use only for hash table */
@@ -81,47 +87,206 @@ public class DirectedGraphMedium extends AbstractRadioMedium {
     super(simulation);
     this.simulation = simulation;
     random = simulation.getRandomGenerator();
-
-    requestEdgeAnalysis();
   }
 
   public void removed() {
     super.removed();
   }
 
+  /**
+   * Adds an edge. Should only be called from the simulation thread.
+   *
+   * Only the destinations of the edge's source, and the connections from
+   * it, are updated. To add many edges, use {@link #addEdges(Collection)}.
+   *
+   * @param e Edge
+   */
   public void addEdge(Edge e) {
-    edges.add(e);
-    requestEdgeAnalysis();
+    synchronized (edges) {
+      if (!edges.add(e)) {
+        logger.warn("Edge already added: " + e);
+        return;
+      }
+    }
+    if (!edgesDirty) {
+      addToEdgesTable(e);
+      updateAffectedRadios(e.source);
+    }
 
     radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
   }
 
+  /**
+   * Adds edges, rebuilding the destination table and notifying observers
+   * once. Should only be called from the simulation thread.
+   *
+   * @param newEdges Edges
+   */
+  public void addEdges(Collection<Edge> newEdges) {
+    synchronized (edges) {
+      for (Edge e: newEdges) {
+        if (!edges.add(e)) {
+          logger.warn("Edge already added: " + e);
+        }
+      }
+    }
+    if (!edgesDirty) {
+      rebuildEdgesTable();
+      updateAffectedRadios();
+    }
+
+    radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
+  }
+
+  /**
+   * Removes an edge. Should only be called from the simulation thread.
+   *
+   * @param edge Edge
+   */
   public void removeEdge(Edge edge) {
+    synchronized (edges) {
+      if (!edges.remove(edge)) {
+        logger.fatal("Cannot remove edge: " + edge);
+        return;
+      }
+    }
+    if (!edgesDirty) {
+      removeFromEdgesTable(edge);
+      updateAffectedRadios(edge.source);
+    }
+
+    radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
+  }
+
+  /**
+   * Removes edges, rebuilding the destination table and notifying observers
+   * once. Should only be called from the simulation thread.
+   *
+   * @param oldEdges Edges
+   */
+  public void removeEdges(Collection<Edge> oldEdges) {
+    synchronized (edges) {
+      for (Edge e: oldEdges) {
+        if (!edges.remove(e)) {
+          logger.fatal("Cannot remove edge: " + e);
+        }
+      }
+    }
+    if (!edgesDirty) {
+      rebuildEdgesTable();
+      updateAffectedRadios();
+    }
+
+    radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
+  }
+
+  /**
+   * Signal that the link parameters of an edge, such as ratio or signal
+   * strength, changed. The source and destination radios of an edge
+   * must not be changed: remove the edge and add a new one instead.
+   *
+   * @param edge Edge
+   */
+  public void updateEdge(Edge edge) {
     if (!edges.contains(edge)) {
-      logger.fatal("Cannot remove edge: " + edge);
+      logger.fatal("Cannot update edge: " + edge);
       return;
     }
-    edges.remove(edge);
-    requestEdgeAnalysis();
-
+    updateSignalStrengths();
 
     radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
   }
 
   public void clearEdges() {
-    edges.clear();
-    requestEdgeAnalysis();
+    synchronized (edges) {
+      edges.clear();
+    }
+    edgesTable.clear();
+    edgesDirty = false;
+    updateAffectedRadios();
 
     radioTransmissionObservable.setChangedAndNotify();
+    radioMediumObservable.setChangedAndNotify();
   }
 
   public Edge[] getEdges() {
-    return edges.toArray(new Edge[0]);
+    synchronized (edges) {
+      return edges.toArray(new Edge[0]);
+    }
+  }
+
+  /* Builds each source's destinations array once */
+  private void rebuildEdgesTable() {
+    HashMap<Radio,ArrayList<DGRMDestinationRadio>> destinations =
+      new HashMap<Radio,ArrayList<DGRMDestinationRadio>>();
+    synchronized (edges) {
+      for (Edge edge: edges) {
+        ArrayList<DGRMDestinationRadio> list = destinations.get(edge.source);
+        if (list == null) {
+          list = new ArrayList<DGRMDestinationRadio>();
+          destinations.put(edge.source, list);
+        }
+        list.add(edge.superDest);
+      }
+    }
+
+    edgesTable.clear();
+    for (Map.Entry<Radio,ArrayList<DGRMDestinationRadio>> entry: destinations.entrySet()) {
+      ArrayList<DGRMDestinationRadio> list = entry.getValue();
+      edgesTable.put(entry.getKey(), list.toArray(new DGRMDestinationRadio[list.size()]));
+    }
+  }
+
+  private void addToEdgesTable(Edge edge) {
+    DGRMDestinationRadio[] old = edgesTable.get(edge.source);
+    DGRMDestinationRadio[] arr;
+    if (old == null) {
+      arr = new DGRMDestinationRadio[1];
+    } else {
+      arr = new DGRMDestinationRadio[old.length + 1];
+      System.arraycopy(old, 0, arr, 0, old.length);
+    }
+    arr[arr.length - 1] = edge.superDest;
+    edgesTable.put(edge.source, arr);
+  }
+
+  private void removeFromEdgesTable(Edge edge) {
+    DGRMDestinationRadio[] old = edgesTable.get(edge.source);
+    if (old == null) {
+      return;
+    }
+    int index = -1;
+    for (int i=0; i < old.length; i++) {
+      if (old[i] == edge.superDest) {
+        index = i;
+        break;
+      }
+    }
+    if (index < 0) {
+      return;
+    }
+    if (old.length == 1) {
+      edgesTable.remove(edge.source);
+      return;
+    }
+    /* Arrays may be in use by callers: replace rather than modify */
+    DGRMDestinationRadio[] arr = new DGRMDestinationRadio[old.length - 1];
+    System.arraycopy(old, 0, arr, 0, index);
+    System.arraycopy(old, index + 1, arr, index, arr.length - index);
+    edgesTable.put(edge.source, arr);
   }
 
   /**
    * Signal that the configuration changed, and needs to be re-analyzed
    * before used.
+   *
+   * Edges added, removed or updated via this radio medium are analyzed
+   * incrementally, and do not require a full re-analysis.
    */
   public void requestEdgeAnalysis() {
     edgesDirty = true;
@@ -134,12 +299,15 @@ public class DirectedGraphMedium extends AbstractRadioMedium {
   public void unregisterRadioInterface(Radio radio, Simulation sim) {
     super.unregisterRadioInterface(radio, sim);
 
+    ArrayList<Edge> removed = new ArrayList<Edge>();
     for (Edge edge: getEdges()) {
       if (edge.source == radio || edge.superDest.radio == radio) {
-        removeEdge(edge);
-        requestEdgeAnalysis();
+        removed.add(edge);
       }
     }
+    if (!removed.isEmpty()) {
+      removeEdges(removed);
+    }
   }
 
 
@@ -191,37 +359,68 @@ public class DirectedGraphMedium extends AbstractRadioMedium {
   }
 
 
-  /**
-   * Generates hash table using current edges for efficient lookup.
-   */
-  protected void analyzeEdges() {
-    Hashtable<Radio,ArrayList<DGRMDestinationRadio>> listTable =
-      new Hashtable<Radio,ArrayList<DGRMDestinationRadio>>();
+  protected boolean supportsIncrementalSignalStrengths() {
+    return true;
+  }
 
-    /* Fill edge hash table with all edges */
-    for (Edge edge: getEdges()) {
-      ArrayList<DGRMDestinationRadio> destRadios;
-      if (!listTable.containsKey(edge.source)) {
-        destRadios = new ArrayList<DGRMDestinationRadio>();
-      } else {
-        destRadios = listTable.get(edge.source);
+  protected Radio[] getAffectedRadios(RadioConnection conn) {
+    /* Signal strengths are set on all potential destinations */
+    DGRMDestinationRadio[] dstRadios = getPotentialDestinations(conn.getSource());
+    if (dstRadios == null) {
+      return super.getAffectedRadios(conn);
+    }
+    LinkedHashSet<Radio> radios = new LinkedHashSet<Radio>();
+    radios.addAll(Arrays.asList(super.getAffectedRadios(conn)));
+    for (DGRMDestinationRadio dstRadio : dstRadios) {
+      radios.add(dstRadio.radio);
+    }
+    return radios.toArray(new Radio[radios.size()]);
+  }
+
+  protected void updateSignalStrength(Radio radio, RadioConnection[] conns) {
+    /* Same as updateSignalStrengths(), for a single radio */
+    radio.setCurrentSignalStrength(getBaseRssi(radio));
+
+    for (RadioConnection conn : conns) {
+      if (conn.getSource() == radio) {
+        if (radio.getCurrentSignalStrength() < getSendRssi(radio)) {
+          radio.setCurrentSignalStrength(getSendRssi(radio));
+        }
       }
+      DGRMDestinationRadio dstRadios[] = getPotentialDestinations(conn.getSource());
+      if (dstRadios == null) continue;
+      for (DGRMDestinationRadio dstRadio : dstRadios) {
+        if (dstRadio.radio != radio) {
+          continue;
+        }
 
-      destRadios.add(edge.superDest);
-      listTable.put(edge.source, destRadios);
-    }
+        int activeSourceChannel = conn.getSource().getChannel();
+        int edgeChannel = dstRadio.channel;
+        int activeDstChannel = radio.getChannel();
+        if (activeSourceChannel != -1) {
+          if (edgeChannel != -1 && activeSourceChannel != edgeChannel) {
+            continue;
+          }
+          if (activeDstChannel != -1 && activeSourceChannel != activeDstChannel) {
+            continue;
+          }
+        }
 
-    /* Convert to arrays */
-    Hashtable<Radio,DGRMDestinationRadio[]> arrTable =  new Hashtable<Radio,DGRMDestinationRadio[]>();
-    Enumeration<Radio> sources = listTable.keys();
-    while (sources.hasMoreElements()) {
-      Radio source = sources.nextElement();
-      DGRMDestinationRadio[] arr = listTable.get(source).toArray(new DGRMDestinationRadio[0]);
-      arrTable.put(source, arr);
+        if (radio.getCurrentSignalStrength() < dstRadio.signal) {
+          radio.setCurrentSignalStrength(dstRadio.signal);
+        }
+        radio.setLQI(dstRadio.lqi);
+      }
     }
+  }
 
-    this.edgesTable = arrTable;
+  /**
+   * Regenerates hash table using all current edges.
+   */
+  protected void analyzeEdges() {
+    rebuildEdgesTable();
     edgesDirty = false;
+    updateAffectedRadios();
     
     /* Radio Medium changed here so notify Observers */
     radioMediumObservable.setChangedAndNotify();
@@ -307,14 +506,11 @@ public class DirectedGraphMedium extends AbstractRadioMedium {
          
          // Find connection, that is sending to that radio
          // and mark the destination as interfered
-         for (RadioConnection conn : getActiveConnections()) {
-           for (Radio dstRadio : conn.getDestinations()) {
-             if (dstRadio == dest.radio) {
-               conn.addInterfered(dest.radio);;
-               break;
-             }
+         for (RadioConnection conn : getActiveConnectionsTo(dest.radio)) {
+           if (conn.isDestination(dest.radio)) {
+             conn.addInterfered(dest.radio);
            }
-         }        
+         }
          continue;
       }
             
@@ -365,6 +561,7 @@ public void simulationFinishedLoading() {
     super.simulationFinishedLoading();
 
     boolean oldConfig = false;
+    ArrayList<Edge> loadedEdges = new ArrayList<Edge>();
     for (Element element : delayedConfiguration) {
       if (element.getName().equals("edge")) {
         @SuppressWarnings("unchecked")
@@ -429,13 +626,14 @@ public void simulationFinishedLoading() {
         }
         if (source == null || dest == null) {
           logger.fatal("Failed loading DGRM links, aborting");
+          addEdges(loadedEdges);
           return;
         } else {
-          addEdge(new Edge(source, dest));
+          loadedEdges.add(new Edge(source, dest));
         }
       }
     }
-    requestEdgeAnalysis();
+    addEdges(loadedEdges);
     delayedConfiguration = null;
   }
 
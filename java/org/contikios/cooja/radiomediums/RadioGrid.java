@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.radiomediums;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.contikios.cooja.interfaces.Position;
+import org.contikios.cooja.interfaces.Radio;
+
+/**
+ * Uniform grid index of radio positions.
+ *
+ * Radios are stored in square grid cells in the XY plane, and range queries
+ * only inspect cells overlapping the queried range. When a radio moves, only
+ * that radio is moved between cells.
+ *
+ * Query results are ordered by the order in which radios were added, so the
+ * results do not depend on the grid layout.
+ *
+ * Should only be accessed from the simulation thread.
+ */
+public class RadioGrid {
+
+  private static class Entry {
+    final Radio radio;
+    final int order;
+    double x, y, z;
+    long cell;
+
+    Entry(Radio radio, int order) {
+      this.radio = radio;
+      this.order = order;
+    }
+  }
+
+  private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    public int compare(Entry a, Entry b) {
+      return Integer.compare(a.order, b.order);
+    }
+  };
+
+  private double cellSize;
+  private int nextOrder = 0;
+
+  private final HashMap<Radio, Entry> entries = new HashMap<Radio, Entry>();
+  private final HashMap<Long, ArrayList<Entry>> cells = new HashMap<Long, ArrayList<Entry>>();
+
+  /* Reused for collecting query results */
+  private final ArrayList<Entry> found = new ArrayList<Entry>();
+
+  /**
+   * @param cellSize Cell side length. Should be close to the typical query range.
+   */
+  public RadioGrid(double cellSize) {
+    this.cellSize = validCellSize(cellSize);
+  }
+
+  private static double validCellSize(double cellSize) {
+    if (Double.isNaN(cellSize) || Double.isInfinite(cellSize) || cellSize <= 0) {
+      return 1.0;
+    }
+    return cellSize;
+  }
+
+  /**
+   * @return Cell side length
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Changes cell size, and redistributes all radios.
+   *
+   * @param cellSize Cell side length
+   */
+  public void setCellSize(double cellSize) {
+    cellSize = validCellSize(cellSize);
+    if (cellSize == this.cellSize) {
+      return;
+    }
+    this.cellSize = cellSize;
+    cells.clear();
+    for (Entry e: entries.values()) {
+      e.cell = cellOf(e.x, e.y);
+      addToCell(e);
+    }
+  }
+
+  /**
+   * @return Number of radios in grid
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @param radio Radio
+   * @return True if radio is in grid
+   */
+  public boolean contains(Radio radio) {
+    return entries.containsKey(radio);
+  }
+
+  /**
+   * Adds radio at its current position.
+   *
+   * @param radio Radio
+   */
+  public void add(Radio radio) {
+    if (entries.containsKey(radio)) {
+      return;
+    }
+    Entry e = new Entry(radio, nextOrder++);
+    readPosition(e);
+    e.cell = cellOf(e.x, e.y);
+    entries.put(radio, e);
+    addToCell(e);
+  }
+
+  /**
+   * Removes radio.
+   *
+   * @param radio Radio
+   */
+  public void remove(Radio radio) {
+    Entry e = entries.remove(radio);
+    if (e != null) {
+      removeFromCell(e);
+    }
+  }
+
+  /**
+   * Moves radio to its current position.
+   *
+   * @param radio Radio
+   */
+  public void update(Radio radio) {
+    Entry e = entries.get(radio);
+    if (e == null) {
+      return;
+    }
+    readPosition(e);
+    long cell = cellOf(e.x, e.y);
+    if (cell != e.cell) {
+      removeFromCell(e);
+      e.cell = cell;
+      addToCell(e);
+    }
+  }
+
+  /**
+   * Finds all radios strictly closer than range to the radio's indexed
+   * position, excluding the radio itself.
+   *
+   * The indexed position is the position at the last call to add or update,
+   * which allows finding the neighbors of a radio's previous position.
+   *
+   * @param radio Radio
+   * @param range Range
+   * @param out List to add found radios to, in the order they were added to the grid
+   */
+  public void getRadiosInRange(Radio radio, double range, ArrayList<Radio> out) {
+    Entry center = entries.get(radio);
+    if (center == null) {
+      return;
+    }
+    getRadiosInRange(center.x, center.y, center.z, range, center, out);
+  }
+
+  /**
+   * Finds all radios strictly closer than range to the given position.
+   *
+   * @param pos Position
+   * @param range Range
+   * @param out List to add found radios to, in the order they were added to the grid
+   */
+  public void getRadiosInRange(Position pos, double range, ArrayList<Radio> out) {
+    getRadiosInRange(pos.getXCoordinate(), pos.getYCoordinate(), pos.getZCoordinate(), range, null, out);
+  }
+
+  private void getRadiosInRange(double x, double y, double z, double range, Entry exclude, ArrayList<Radio> out) {
+    found.clear();
+    if (range > 0) {
+      long minX = cellIndex(x - range);
+      long maxX = cellIndex(x + range);
+      long minY = cellIndex(y - range);
+      long maxY = cellIndex(y + range);
+
+      if ((maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+        /* Range covers more cells than are occupied: check occupied cells */
+        for (ArrayList<Entry> cell: cells.values()) {
+          collect(cell, x, y, z, range, exclude);
+        }
+      } else {
+        for (long cx = minX; cx <= maxX; cx++) {
+          for (long cy = minY; cy <= maxY; cy++) {
+            ArrayList<Entry> cell = cells.get(key((int) cx, (int) cy));
+            if (cell != null) {
+              collect(cell, x, y, z, range, exclude);
+            }
+          }
+        }
+      }
+    }
+
+    Collections.sort(found, ORDER);
+    for (Entry e: found) {
+      out.add(e.radio);
+    }
+    found.clear();
+  }
+
+  private void collect(ArrayList<Entry> cell, double x, double y, double z, double range, Entry exclude) {
+    for (Entry e: cell) {
+      if (e == exclude) {
+        continue;
+      }
+      double dx = e.x - x;
+      double dy = e.y - y;
+      double dz = e.z - z;
+      if (Math.sqrt(dx*dx + dy*dy + dz*dz) < range) {
+        found.add(e);
+      }
+    }
+  }
+
+  private static void readPosition(Entry e) {
+    Position pos = e.radio.getPosition();
+    e.x = pos.getXCoordinate();
+    e.y = pos.getYCoordinate();
+    e.z = pos.getZCoordinate();
+  }
+
+  private void addToCell(Entry e) {
+    ArrayList<Entry> cell = cells.get(e.cell);
+    if (cell == null) {
+      cell = new ArrayList<Entry>();
+      cells.put(e.cell, cell);
+    }
+    cell.add(e);
+  }
+
+  private void removeFromCell(Entry e) {
+    ArrayList<Entry> cell = cells.get(e.cell);
+    if (cell == null) {
+      return;
+    }
+    cell.remove(e);
+    if (cell.isEmpty()) {
+      cells.remove(e.cell);
+    }
+  }
+
+  private int cellIndex(double coordinate) {
+    double index = Math.floor(coordinate / cellSize);
+    if (index > Integer.MAX_VALUE) {
+      return Integer.MAX_VALUE;
+    }
+    if (index < Integer.MIN_VALUE) {
+      return Integer.MIN_VALUE;
+    }
+    return (int) index;
+  }
+
+  private long cellOf(double x, double y) {
+    return key(cellIndex(x), cellIndex(y));
+  }
+
+  private static long key(int cx, int cy) {
+    return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+  }
+}
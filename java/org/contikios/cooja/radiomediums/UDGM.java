@@ -32,6 +32,7 @@ package org.contikios.cooja.radiomediums;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
@@ -89,64 +90,130 @@ public class UDGM extends AbstractRadioMedium {
 
   private DirectedGraphMedium dgrm; /* Used only for efficient destination lookup */
 
+  /* Spatial index of all registered radios */
+  private RadioGrid radioGrid = new RadioGrid(Math.max(TRANSMITTING_RANGE, INTERFERENCE_RANGE));
+
+  /* Potential destinations per source radio, created on demand */
+  private HashMap<Radio, DGRMDestinationRadio[]> destinationsTable = new HashMap<Radio, DGRMDestinationRadio[]>();
+  private double destinationsRange = -1;
+  private ArrayList<Radio> neighbors = new ArrayList<Radio>();
+
   private Random random = null;
 
   public UDGM(Simulation simulation) {
     super(simulation);
     random = simulation.getRandomGenerator();
     dgrm = new DirectedGraphMedium() {
-      protected void analyzeEdges() {
-        /* Create edges according to distances.
-         * XXX May be slow for mobile networks */
-        clearEdges();
-        for (Radio source: UDGM.this.getRegisteredRadios()) {
-          Position sourcePos = source.getPosition();
-          for (Radio dest: UDGM.this.getRegisteredRadios()) {
-            Position destPos = dest.getPosition();
-            /* Ignore ourselves */
-            if (source == dest) {
-              continue;
-            }
-            double distance = sourcePos.getDistanceTo(destPos);
-            if (distance < Math.max(TRANSMITTING_RANGE, INTERFERENCE_RANGE)) {
-              /* Add potential destination */
-              addEdge(
-                  new DirectedGraphMedium.Edge(source, 
-                      new DGRMDestinationRadio(dest)));
-            }
-          }
-        }
-        super.analyzeEdges();
+      public DGRMDestinationRadio[] getPotentialDestinations(Radio source) {
+        return UDGM.this.getPotentialDestinations(source);
       }
     };
 
     /* Register as position observer.
-     * If any positions change, re-analyze potential receivers. */
+     * If any positions change, re-analyze potential receivers near that radio. */
     final Observer positionObserver = new Observer() {
       public void update(Observable o, Object arg) {
-        dgrm.requestEdgeAnalysis();
+        Mote mote = (Mote) arg;
+        radioMoved(mote.getInterfaces().getRadio());
       }
     };
-    /* Re-analyze potential receivers if radios are added/removed. */
+    /* Observe positions of added/removed motes.
+     * Potential receivers are re-analyzed when radios are registered. */
     simulation.getEventCentral().addMoteCountListener(new MoteCountListener() {
       public void moteWasAdded(Mote mote) {
         mote.getInterfaces().getPosition().addObserver(positionObserver);
-        dgrm.requestEdgeAnalysis();
       }
       public void moteWasRemoved(Mote mote) {
         mote.getInterfaces().getPosition().deleteObserver(positionObserver);
-        dgrm.requestEdgeAnalysis();
       }
     });
     for (Mote mote: simulation.getMotes()) {
       mote.getInterfaces().getPosition().addObserver(positionObserver);
     }
-    dgrm.requestEdgeAnalysis();
 
     /* Register visualizer skin */
     Visualizer.registerVisualizerSkin(UDGMVisualizerSkin.class);
   }
 
+  /**
+   * Returns all radios within transmission or interference range of
+   * the source radio, ordered by radio registration.
+   *
+   * @param source Source radio
+   * @return Potential destinations, or null if source is not registered
+   */
+  private DGRMDestinationRadio[] getPotentialDestinations(Radio source) {
+    /* Ranges may be changed directly via public fields */
+    double range = Math.max(TRANSMITTING_RANGE, INTERFERENCE_RANGE);
+    if (range != destinationsRange) {
+      destinationsTable.clear();
+      radioGrid.setCellSize(range);
+      destinationsRange = range;
+    }
+
+    DGRMDestinationRadio[] destinations = destinationsTable.get(source);
+    if (destinations != null) {
+      return destinations;
+    }
+    if (!radioGrid.contains(source)) {
+      return null;
+    }
+
+    neighbors.clear();
+    radioGrid.getRadiosInRange(source, range, neighbors);
+    destinations = new DGRMDestinationRadio[neighbors.size()];
+    for (int i=0; i < destinations.length; i++) {
+      destinations[i] = new DGRMDestinationRadio(neighbors.get(i));
+    }
+    neighbors.clear();
+    destinationsTable.put(source, destinations);
+    return destinations;
+  }
+
+  /**
+   * Forgets potential destinations of given radio and all radios near it.
+   *
+   * @param radio Radio
+   */
+  private void invalidateDestinations(Radio radio) {
+    destinationsTable.remove(radio);
+    if (destinationsTable.isEmpty()) {
+      return;
+    }
+    neighbors.clear();
+    radioGrid.getRadiosInRange(radio, destinationsRange, neighbors);
+    for (Radio r: neighbors) {
+      destinationsTable.remove(r);
+    }
+    neighbors.clear();
+  }
+
+  private void radioMoved(Radio radio) {
+    if (radio == null || !radioGrid.contains(radio)) {
+      return;
+    }
+    /* Neighbors at old and new positions */
+    invalidateDestinations(radio);
+    radioGrid.update(radio);
+    invalidateDestinations(radio);
+  }
+
+  public void registerRadioInterface(Radio radio, Simulation sim) {
+    if (radio != null) {
+      radioGrid.add(radio);
+      invalidateDestinations(radio);
+    }
+    super.registerRadioInterface(radio, sim);
+  }
+
+  public void unregisterRadioInterface(Radio radio, Simulation sim) {
+    if (radioGrid.contains(radio)) {
+      invalidateDestinations(radio);
+      radioGrid.remove(radio);
+    }
+    super.unregisterRadioInterface(radio, sim);
+  }
+
   public void removed() {
   	super.removed();
   	
@@ -155,12 +222,10 @@ public class UDGM extends AbstractRadioMedium {
   
   public void setTxRange(double r) {
     TRANSMITTING_RANGE = r;
-    dgrm.requestEdgeAnalysis();
   }
 
   public void setInterferenceRange(double r) {
     INTERFERENCE_RANGE = r;
-    dgrm.requestEdgeAnalysis();
   }
 
   public RadioConnection createConnections(Radio sender) {
@@ -178,7 +243,7 @@ public class UDGM extends AbstractRadioMedium {
     * ((double) sender.getCurrentOutputPowerIndicator() / (double) sender.getOutputPowerIndicatorMax());
 
     /* Get all potential destination radios */
-    DestinationRadio[] potentialDestinations = dgrm.getPotentialDestinations(sender);
+    DestinationRadio[] potentialDestinations = getPotentialDestinations(sender);
     if (potentialDestinations == null) {
       return newConnection;
     }
@@ -236,7 +301,7 @@ public class UDGM extends AbstractRadioMedium {
           recv.interfereAnyReception();
 
           /* Interfere receiver in all other active radio connections */
-          for (RadioConnection conn : getActiveConnections()) {
+          for (RadioConnection conn : getActiveConnectionsTo(recv)) {
             if (conn.isDestination(recv)) {
               conn.addInterfered(recv);
             }
@@ -347,6 +412,75 @@ public class UDGM extends AbstractRadioMedium {
     }
   }
 
+  protected boolean supportsIncrementalSignalStrengths() {
+    return true;
+  }
+
+  protected void updateSignalStrength(Radio radio, RadioConnection[] conns) {
+    /* Same as updateSignalStrengths(), for a single radio */
+    radio.setCurrentSignalStrength(getBaseRssi(radio));
+
+    for (RadioConnection conn : conns) {
+      if (conn.getSource() == radio) {
+        if (radio.getCurrentSignalStrength() < SS_STRONG) {
+          radio.setCurrentSignalStrength(SS_STRONG);
+        }
+      }
+      if (!conn.isDestination(radio)) {
+        continue;
+      }
+      if (conn.getSource().getChannel() >= 0 &&
+          radio.getChannel() >= 0 &&
+          conn.getSource().getChannel() != radio.getChannel()) {
+        continue;
+      }
+
+      double dist = conn.getSource().getPosition().getDistanceTo(radio.getPosition());
+
+      double maxTxDist = TRANSMITTING_RANGE
+      * ((double) conn.getSource().getCurrentOutputPowerIndicator() / (double) conn.getSource().getOutputPowerIndicatorMax());
+      double distFactor = dist/maxTxDist;
+
+      double signalStrength = SS_STRONG + distFactor*(SS_WEAK - SS_STRONG);
+      if (radio.getCurrentSignalStrength() < signalStrength) {
+        radio.setCurrentSignalStrength(signalStrength);
+      }
+    }
+
+    for (RadioConnection conn : conns) {
+      if (!conn.isInterfered(radio)) {
+        continue;
+      }
+      if (conn.getSource().getChannel() >= 0 &&
+          radio.getChannel() >= 0 &&
+          conn.getSource().getChannel() != radio.getChannel()) {
+        continue;
+      }
+
+      double dist = conn.getSource().getPosition().getDistanceTo(radio.getPosition());
+
+      double maxTxDist = TRANSMITTING_RANGE
+      * ((double) conn.getSource().getCurrentOutputPowerIndicator() / (double) conn.getSource().getOutputPowerIndicatorMax());
+      double distFactor = dist/maxTxDist;
+
+      if (distFactor < 1) {
+        double signalStrength = SS_STRONG + distFactor*(SS_WEAK - SS_STRONG);
+        if (radio.getCurrentSignalStrength() < signalStrength) {
+          radio.setCurrentSignalStrength(signalStrength);
+        }
+      } else {
+        radio.setCurrentSignalStrength(SS_WEAK);
+        if (radio.getCurrentSignalStrength() < SS_WEAK) {
+          radio.setCurrentSignalStrength(SS_WEAK);
+        }
+      }
+
+      if (!radio.isInterfered()) {
+        radio.interfereAnyReception();
+      }
+    }
+  }
+
   public Collection<Element> getConfigXML() {
     Collection<Element> config = super.getConfigXML();
     Element element;
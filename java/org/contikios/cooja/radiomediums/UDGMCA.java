@@ -35,6 +35,7 @@ import java.lang.Integer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
@@ -107,6 +108,13 @@ public class UDGMCA extends UDGM {
 
   private int FREQSHIFT = 2;
 
+  /* Tags -> active carrier connections they are listening to, in start order */
+  private HashMap<Radio, ArrayList<RadioConnection>> tagCarriers =
+    new HashMap<Radio, ArrayList<RadioConnection>>();
+  /* Carrier connection -> tags it was indexed with */
+  private HashMap<RadioConnection, Radio[]> carrierTags =
+    new HashMap<RadioConnection, Radio[]>();
+
 
   public int getFREQSHIFT() {
     return FREQSHIFT;
@@ -136,7 +144,7 @@ public class UDGMCA extends UDGM {
         Radio radio = mote.getInterfaces().getRadio();
         
         if (radio.isBackscatterTag()) {
-          for (RadioConnection conn: getActiveConnections()) {
+          for (RadioConnection conn: getActiveConnectionsAffecting(radio)) {
             /* Calculating the tag's output power does not involve 
              * the tag as a source of a connection, which in fact  
              * would add an unwanted entry in the tag's hashtable. */
@@ -145,20 +153,18 @@ public class UDGMCA extends UDGM {
               }
           }
         } else {
-          for (RadioConnection conn: getActiveConnections()) {
-            if (conn.getSource() == radio) {
-              if (conn.getSource().isGeneratingCarrier()) {
-                for (Radio destRadio: conn.getAllDestinations()) {
-                  if (destRadio.isBackscatterTag()) {
-                    calculateTagCurrentTxPower(radio, destRadio, conn);
-                  }
+          for (RadioConnection conn: getActiveConnectionsFrom(radio)) {
+            if (conn.getSource().isGeneratingCarrier()) {
+              for (Radio destRadio: conn.getAllDestinations()) {
+                if (destRadio.isBackscatterTag()) {
+                  calculateTagCurrentTxPower(radio, destRadio, conn);
                 }
-              } else {
-                for (Radio intfRadio: conn.getInterfered()) {
-                  if (intfRadio.isBackscatterTag()) {
-                    calculateTagCurrentTxPower(radio, intfRadio, conn);
-                      
-                  }
+              }
+            } else {
+              for (Radio intfRadio: conn.getInterfered()) {
+                if (intfRadio.isBackscatterTag()) {
+                  calculateTagCurrentTxPower(radio, intfRadio, conn);
+                    
                 }
               }
             }
@@ -258,8 +264,7 @@ public class UDGMCA extends UDGM {
    * @return tag's transmission range
    */
   public double calculateTagTransmissionRange(double tagCurrentOutputPowerIndicator) {
-    return Math.pow(10,((GT + GR + tagCurrentOutputPowerIndicator - STH + 20*(Math.log10(WAVELENGTH / (4*Math.PI)))) / 20));
-    
+    return calculateTagRange(tagCurrentOutputPowerIndicator, STH);
   }
   
   /**
@@ -269,10 +274,75 @@ public class UDGMCA extends UDGM {
    * @return tag's interference range
    */
   public double calculateTagInterferenceRange(double tagCurrentOutputPowerIndicator) {
-    return Math.pow(10,((GT + GR + tagCurrentOutputPowerIndicator - (STH - 3) + 20*(Math.log10(WAVELENGTH / (4*Math.PI)))) / 20));
-    
+    return calculateTagRange(tagCurrentOutputPowerIndicator, STH - 3);
+  }
+
+  /**
+   * Distance at which the tag's signal drops to the given threshold:
+   * the inverse of {@link #pathLoss(double)}.
+   */
+  private double calculateTagRange(double tagCurrentOutputPowerIndicator, double threshold) {
+    return Math.pow(10,((GT + GR + tagCurrentOutputPowerIndicator - threshold + 20*(Math.log10(WAVELENGTH / (4*Math.PI)))) / 20));
   }
   
+  protected void addActiveConnection(RadioConnection conn) {
+    super.addActiveConnection(conn);
+
+    /* Index the tags listening to a new carrier (CARRIER_STARTED) */
+    Radio carrierGenerator = conn.getSource();
+    if (!carrierGenerator.isGeneratingCarrier()) {
+      return;
+    }
+    ArrayList<Radio> tags = new ArrayList<Radio>();
+    for (Radio r: conn.getAllDestinations()) {
+      if (r.isBackscatterTag()) {
+        tags.add(r);
+      }
+    }
+    carrierTags.put(conn, tags.toArray(new Radio[tags.size()]));
+
+    for (Radio tag: tags) {
+      ArrayList<RadioConnection> carriers = tagCarriers.get(tag);
+      if (carriers == null) {
+        carriers = new ArrayList<RadioConnection>(2);
+        tagCarriers.put(tag, carriers);
+      }
+      carriers.add(conn);
+    }
+  }
+
+  protected boolean removeActiveConnection(RadioConnection conn) {
+    if (!super.removeActiveConnection(conn)) {
+      return false;
+    }
+
+    /* Forget the tags of a finished carrier (CARRIER_STOPPED) */
+    Radio[] tags = carrierTags.remove(conn);
+    if (tags == null) {
+      return true;
+    }
+    for (Radio tag: tags) {
+      ArrayList<RadioConnection> carriers = tagCarriers.get(tag);
+      carriers.remove(conn);
+      if (carriers.isEmpty()) {
+        tagCarriers.remove(tag);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param tag Backscatter tag
+   * @return Active carrier connections the tag was listening to when they started
+   */
+  private RadioConnection[] getTagCarriers(Radio tag) {
+    ArrayList<RadioConnection> carriers = tagCarriers.get(tag);
+    if (carriers == null) {
+      return new RadioConnection[0];
+    }
+    return carriers.toArray(new RadioConnection[carriers.size()]);
+  }
+
   /**
    * Returns a hashset with the appropriate TX channels of each 
    * tag considering only the ongoing connections created by an 
@@ -288,10 +358,10 @@ public class UDGMCA extends UDGM {
      * Every tag that is listening to a carrier is interfered by the
      * connection whose source generated that carrier.
      *
-     * Hence, check every active connection generated by a carrier generator
+     * Hence, check every active carrier the tag is listening to
      */
     if(radio.isBackscatterTag()) {
-      for (RadioConnection conn : getActiveConnections()) {
+      for (RadioConnection conn : getTagCarriers(radio)) {
 
         /* ... and also check to which connection the tag belongs. Then take the
            channel of the source (carrier generator) of that connection, move
@@ -313,11 +383,10 @@ public class UDGMCA extends UDGM {
     return radioChannels;
   }
 
-  //this method can be removed if the proposed hashmap for carrier generators and channels is implemented
   public Radio getCarrierSource(Radio radio, int channel) {
 
     if(radio.isBackscatterTag() && radio.isListeningCarrier()) {
-      for (RadioConnection conn : getActiveConnections()) {
+      for (RadioConnection conn : getTagCarriers(radio)) {
         if (conn.isDestination(radio)) {
           if (conn.getSource().isGeneratingCarrier()) {
             if (conn.getSource().getChannel() == (channel - FREQSHIFT)) {
@@ -527,7 +596,7 @@ public class UDGMCA extends UDGM {
                 recv.interfereAnyReception();
 
                 /* Interfere receiver in all other active radio connections */
-                for (RadioConnection conn : getActiveConnections()) {
+                for (RadioConnection conn : getActiveConnectionsTo(recv)) {
                   if (conn.isDestination(recv)) {
                     conn.addInterfered(recv);
                   }
@@ -588,6 +657,12 @@ public class UDGMCA extends UDGM {
         
   }
  
+  @Override
+  protected boolean supportsIncrementalSignalStrengths() {
+    /* Tag output powers depend on all active connections */
+    return false;
+  }
+
   @Override
   public void updateSignalStrengths() {
     /* Override: uses distance as signal strength factor */
@@ -768,36 +843,34 @@ public class UDGMCA extends UDGM {
      * and stops any current signal reflection.
      */
 //    if (!radio.isBackscatterTag()) {
-      for (RadioConnection conn : getActiveConnections()) {
-        if (conn.getSource() == radio) {
-          for (Radio dstRadio : conn.getAllDestinations()) {
-            if (conn.getDestinationDelay(dstRadio) == 0) {
-              dstRadio.updateTagTXPower(conn);
-              dstRadio.signalReceptionEnd();
-            } else {
-              /* EXPERIMENTAL: Simulating propagation delay */
-              final Radio delayedRadio = dstRadio;
-              TimeEvent delayedEvent = new TimeEvent(0) {
-                public void execute(long t) {
-                  delayedRadio.updateTagTXPower(conn);
-                  delayedRadio.signalReceptionEnd();
-                }
-              };
-              getSimulation().scheduleEvent(delayedEvent,
-                  getSimulation().getSimulationTime() + conn.getDestinationDelay(dstRadio));
-            }
+      for (RadioConnection conn : getActiveConnectionsFrom(radio)) {
+        for (Radio dstRadio : conn.getAllDestinations()) {
+          if (conn.getDestinationDelay(dstRadio) == 0) {
+            dstRadio.updateTagTXPower(conn);
+            dstRadio.signalReceptionEnd();
+          } else {
+            /* EXPERIMENTAL: Simulating propagation delay */
+            final Radio delayedRadio = dstRadio;
+            TimeEvent delayedEvent = new TimeEvent(0) {
+              public void execute(long t) {
+                delayedRadio.updateTagTXPower(conn);
+                delayedRadio.signalReceptionEnd();
+              }
+            };
+            getSimulation().scheduleEvent(delayedEvent,
+                getSimulation().getSimulationTime() + conn.getDestinationDelay(dstRadio));
           }
-          
-          for (Radio intRadio : conn.getInterferedNonDestinations()) {
-            /* A connection having as source an active transmitter considers the tag as an interfered radio */ 
-            intRadio.updateTagTXPower(conn);
-            if (intRadio.isInterfered()) {
-              intRadio.signalReceptionEnd();
-            }
+        }
+        
+        for (Radio intRadio : conn.getInterferedNonDestinations()) {
+          /* A connection having as source an active transmitter considers the tag as an interfered radio */ 
+          intRadio.updateTagTXPower(conn);
+          if (intRadio.isInterfered()) {
+            intRadio.signalReceptionEnd();
           }
-          lastConnection = conn;
-          getActiveConnectionsArrayList().remove(conn);
         }
+        lastConnection = conn;
+        removeActiveConnection(conn);
       }
 
   } /* removeFromActiveConnections */
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Text file written by a background thread.
+ *
+ * Writers only add text to a per-file lock-free queue. The queue is bounded:
+ * writers wait when the writer thread falls too far behind. A single writer
+ * thread serves all open files. It sleeps until text is queued, and flushes
+ * a file when its buffer is full, and at least once per
+ * {@link #FLUSH_INTERVAL} ms while it has unflushed text.
+ *
+ * Files ending with ".gz" are written compressed.
+ *
+ * All open files are flushed and closed when the JVM exits,
+ * including via System.exit().
+ */
+public class AsyncLogWriter {
+  private static Logger logger = Logger.getLogger(AsyncLogWriter.class);
+
+  public static final int BUFFER_SIZE = 64*1024; /* Characters */
+  public static final int QUEUE_CAPACITY = 4*1024*1024; /* Characters */
+  public static final long FLUSH_INTERVAL = 1000; /* ms */
+  private static final long WAIT_INTERVAL = 1000*1000; /* ns */
+  private static final long CLOSE_TIMEOUT = 10*1000; /* ms */
+
+  private static final Object CLOSE = new Object();
+
+  private static final ArrayList<AsyncLogWriter> openWriters = new ArrayList<AsyncLogWriter>();
+
+  /* Files with queued text, flush or close requests */
+  private static final ConcurrentLinkedQueue<AsyncLogWriter> scheduled = new ConcurrentLinkedQueue<AsyncLogWriter>();
+
+  private static final Thread writerThread = new Thread(new Runnable() {
+    public void run() {
+      writeLoop();
+    }
+  }, "log writer");
+
+  static {
+    writerThread.setDaemon(true);
+    writerThread.start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread("log writer shutdown") {
+      public void run() {
+        AsyncLogWriter[] writers;
+        synchronized (openWriters) {
+          writers = openWriters.toArray(new AsyncLogWriter[openWriters.size()]);
+        }
+        for (AsyncLogWriter writer: writers) {
+          writer.close();
+        }
+      }
+    });
+  }
+
+  private final File file;
+  private final Writer out;
+
+  /* String, CountDownLatch (flush) or CLOSE. Only added to while holding
+   * the lock, so that nothing is queued after CLOSE */
+  private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+  private final AtomicInteger queued = new AtomicInteger(); /* Characters */
+  private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+  private final CountDownLatch fileClosed = new CountDownLatch(1);
+  private volatile boolean closed = false;
+
+  /* Only accessed by the writer thread */
+  private boolean dirty = false;
+  private long lastFlush = System.currentTimeMillis();
+
+  /**
+   * Creates file, replacing any existing file.
+   *
+   * @param file File
+   * @throws IOException If file could not be created
+   */
+  public AsyncLogWriter(File file) throws IOException {
+    this(file, false);
+  }
+
+  /**
+   * Opens file.
+   *
+   * @param file File
+   * @param append True to append to any existing file, false to replace it
+   * @throws IOException If file could not be opened
+   */
+  public AsyncLogWriter(File file, boolean append) throws IOException {
+    this.file = file;
+    OutputStream stream = new FileOutputStream(file, append);
+    if (file.getName().endsWith(".gz")) {
+      stream = new GZIPOutputStream(stream, BUFFER_SIZE, true);
+    }
+    out = new BufferedWriter(new OutputStreamWriter(stream, Charset.forName("UTF-8")), BUFFER_SIZE);
+
+    synchronized (openWriters) {
+      openWriters.add(this);
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Queues text. Blocks only if the queue is full.
+   *
+   * @param text Text
+   */
+  public void write(String text) {
+    while (queued.get() > QUEUE_CAPACITY && !closed) {
+      schedule();
+      LockSupport.parkNanos(WAIT_INTERVAL);
+    }
+    synchronized (this) {
+      if (closed) {
+        logger.warn("Write to closed file " + file + ": " + text);
+        return;
+      }
+      queued.addAndGet(text.length());
+      queue.offer(text);
+    }
+    schedule();
+  }
+
+  /**
+   * Writes all queued text to file.
+   */
+  public void flush() {
+    CountDownLatch flushed = new CountDownLatch(1);
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      queue.offer(flushed);
+    }
+    schedule();
+    try {
+      flushed.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes all queued text to file and closes it.
+   * Text written after close is discarded.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      queue.offer(CLOSE);
+    }
+    schedule();
+    if (Thread.currentThread() != writerThread) {
+      try {
+        if (!fileClosed.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          logger.fatal("Timeout when closing " + file);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Hands this file to the writer thread, unless already pending.
+   */
+  private void schedule() {
+    if (isScheduled.compareAndSet(false, true)) {
+      scheduled.offer(this);
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  private static void writeLoop() {
+    ArrayList<AsyncLogWriter> dirtyWriters = new ArrayList<AsyncLogWriter>();
+    while (true) {
+      AsyncLogWriter writer = scheduled.poll();
+      if (writer != null) {
+        /* Cleared before draining: text queued meanwhile schedules again */
+        writer.isScheduled.set(false);
+        writer.drain();
+        if (writer.dirty && !dirtyWriters.contains(writer)) {
+          dirtyWriters.add(writer);
+        }
+        continue;
+      }
+
+      /* Idle: flush files not flushed recently, and sleep until more text
+       * is queued or the next flush is due */
+      long now = System.currentTimeMillis();
+      long nextFlush = Long.MAX_VALUE;
+      Iterator<AsyncLogWriter> iter = dirtyWriters.iterator();
+      while (iter.hasNext()) {
+        AsyncLogWriter dirtyWriter = iter.next();
+        if (dirtyWriter.dirty && now - dirtyWriter.lastFlush >= FLUSH_INTERVAL) {
+          dirtyWriter.flushFile();
+        }
+        if (!dirtyWriter.dirty) {
+          iter.remove();
+          continue;
+        }
+        nextFlush = Math.min(nextFlush, dirtyWriter.lastFlush + FLUSH_INTERVAL);
+      }
+      if (nextFlush == Long.MAX_VALUE) {
+        LockSupport.park();
+      } else {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, nextFlush - now)));
+      }
+    }
+  }
+
+  /* Called by the writer thread */
+  private void drain() {
+    Object next;
+    while ((next = queue.poll()) != null) {
+      if (next instanceof String) {
+        String text = (String) next;
+        try {
+          out.write(text);
+        } catch (IOException e) {
+          fail(e);
+          return;
+        }
+        queued.addAndGet(-text.length());
+        dirty = true;
+      } else if (next instanceof CountDownLatch) {
+        flushFile();
+        ((CountDownLatch) next).countDown();
+      } else if (next == CLOSE) {
+        closeFile();
+        return;
+      }
+    }
+    if (dirty && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+      flushFile();
+    }
+  }
+
+  /* Called by the writer thread */
+  private void flushFile() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      fail(e);
+      return;
+    }
+    dirty = false;
+    lastFlush = System.currentTimeMillis();
+  }
+
+  /* Called by the writer thread */
+  private void fail(IOException e) {
+    logger.fatal("Error when writing to " + file + ": " + e.getMessage(), e);
+    synchronized (this) {
+      closed = true;
+    }
+    closeFile();
+  }
+
+  /* Called by the writer thread */
+  private void closeFile() {
+    dirty = false;
+    try {
+      out.close();
+    } catch (IOException e) {
+      logger.fatal("Error when closing " + file + ": " + e.getMessage(), e);
+    }
+    synchronized (openWriters) {
+      openWriters.remove(this);
+    }
+
+    /* Release waiting writers */
+    queued.set(0);
+    Object next;
+    while ((next = queue.poll()) != null) {
+      if (next instanceof CountDownLatch) {
+        ((CountDownLatch) next).countDown();
+      }
+    }
+    fileClosed.countDown();
+  }
+}
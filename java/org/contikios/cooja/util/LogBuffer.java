@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact FIFO buffer of log output.
+ *
+ * Entries (time, mote ID, message) are stored column-wise in parallel
+ * primitive arrays, and message text is stored UTF-8 encoded in shared
+ * byte slabs. No objects are kept per entry; messages are decoded when
+ * read, and entries can be accessed through lightweight {@link View}
+ * objects.
+ *
+ * Optionally, repeated messages are stored only once: a message seen a
+ * second time is added to a bounded dictionary, and later occurrences only
+ * refer to the dictionary entry.
+ *
+ * The buffer does not evict entries by itself. Users should remove the
+ * first entries while {@link #isFull()}, which is when the buffer's memory
+ * usage reaches its budget.
+ *
+ * Note that this implementation is not synchronized.
+ */
+public class LogBuffer {
+  public static final int SLAB_SIZE = 64*1024; /* Bytes */
+  public static final int ENTRY_SIZE = 8+4+4+4+4; /* Bytes */
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int MAX_INTERNED = 4096;
+  private static final int MAX_INTERNED_LENGTH = 256; /* Characters */
+  private static final int SEEN_SIZE = 4096; /* Power of 2 */
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final long memoryBudget;
+
+  /* Entries, in a rotating array */
+  private long[] times;
+  private int[] moteIDs;
+  private int[] slabs; /* Slab number, never decreasing */
+  private int[] offsets; /* Offset in slab, or -1-index of interned message */
+  private int[] lengths; /* Bytes */
+  private int first = 0;
+  private int size = 0;
+  private long removed = 0;
+
+  /* Message text */
+  private final ArrayQueue<byte[]> slabData = new ArrayQueue<byte[]>();
+  private int firstSlab = 0;
+  private int slabUsed = 0;
+  private long slabBytes = 0;
+
+  /* Repeated messages */
+  private final boolean dedup;
+  private final ArrayList<String> interned = new ArrayList<String>();
+  private final HashMap<String, Integer> internedIndex = new HashMap<String, Integer>();
+  private final int[] seen;
+  private long internedBytes = 0;
+
+  /**
+   * @param memoryBudget Memory usage at which the buffer is full (bytes)
+   * @param dedup Store repeated messages only once
+   */
+  public LogBuffer(long memoryBudget, boolean dedup) {
+    this.memoryBudget = memoryBudget;
+    this.dedup = dedup;
+    this.seen = dedup ? new int[SEEN_SIZE] : null;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    long[] newTimes = new long[capacity];
+    int[] newMoteIDs = new int[capacity];
+    int[] newSlabs = new int[capacity];
+    int[] newOffsets = new int[capacity];
+    int[] newLengths = new int[capacity];
+    for (int i = 0; i < size; i++) {
+      int pos = position(i);
+      newTimes[i] = times[pos];
+      newMoteIDs[i] = moteIDs[pos];
+      newSlabs[i] = slabs[pos];
+      newOffsets[i] = offsets[pos];
+      newLengths[i] = lengths[pos];
+    }
+    times = newTimes;
+    moteIDs = newMoteIDs;
+    slabs = newSlabs;
+    offsets = newOffsets;
+    lengths = newLengths;
+    first = 0;
+  }
+
+  private int position(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    int pos = first + index;
+    return pos < times.length ? pos : pos - times.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return Number of entries removed or cleared from the buffer since it
+   * was created
+   */
+  public long getRemovedCount() {
+    return removed;
+  }
+
+  /**
+   * @return Estimated memory usage of entries and message text (bytes)
+   */
+  public long getMemoryUsage() {
+    return (long) size*ENTRY_SIZE + slabBytes + internedBytes;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * @return True if memory usage has reached the budget
+   */
+  public boolean isFull() {
+    return getMemoryUsage() >= memoryBudget;
+  }
+
+  public void add(long time, int moteID, String msg) {
+    if (size == times.length) {
+      allocate(times.length*2);
+    }
+
+    int slab;
+    int offset;
+    int length;
+    int internedMsg = dedup ? intern(msg) : -1;
+    if (internedMsg >= 0) {
+      slab = firstSlab + Math.max(0, slabData.size() - 1);
+      offset = -1 - internedMsg;
+      length = 0;
+    } else {
+      byte[] data = msg.getBytes(UTF8);
+      byte[] current = slabData.isEmpty() ? null : slabData.get(slabData.size() - 1);
+      if (current == null || slabUsed + data.length > current.length) {
+        current = new byte[Math.max(SLAB_SIZE, data.length)];
+        slabData.add(current);
+        slabBytes += current.length;
+        slabUsed = 0;
+      }
+      System.arraycopy(data, 0, current, slabUsed, data.length);
+      slab = firstSlab + slabData.size() - 1;
+      offset = slabUsed;
+      length = data.length;
+      slabUsed += data.length;
+    }
+
+    int pos = first + size;
+    if (pos >= times.length) {
+      pos -= times.length;
+    }
+    times[pos] = time;
+    moteIDs[pos] = moteID;
+    slabs[pos] = slab;
+    offsets[pos] = offset;
+    lengths[pos] = length;
+    size++;
+  }
+
+  private int intern(String msg) {
+    if (msg.length() > MAX_INTERNED_LENGTH) {
+      return -1;
+    }
+    Integer index = internedIndex.get(msg);
+    if (index != null) {
+      return index;
+    }
+    if (interned.size() >= MAX_INTERNED) {
+      return -1;
+    }
+
+    /* Only intern messages seen before */
+    int hash = msg.hashCode();
+    int slot = hash & (SEEN_SIZE - 1);
+    if (seen[slot] != hash) {
+      seen[slot] = hash;
+      return -1;
+    }
+    interned.add(msg);
+    internedIndex.put(msg, interned.size() - 1);
+    internedBytes += 64 + 2*msg.length();
+    return interned.size() - 1;
+  }
+
+  /**
+   * Removes the first (oldest) entry, and any message text no longer used.
+   */
+  public void removeFirst() {
+    if (size == 0) {
+      throw new IndexOutOfBoundsException("Buffer is empty");
+    }
+    first++;
+    if (first == times.length) {
+      first = 0;
+    }
+    size--;
+    removed++;
+
+    /* Remove unused slabs, except the one being filled */
+    int used = size > 0 ? slabs[first] : firstSlab + slabData.size() - 1;
+    while (firstSlab < used && slabData.size() > 1) {
+      slabBytes -= slabData.remove(0).length;
+      firstSlab++;
+    }
+  }
+
+  /**
+   * Removes all entries. Cleared entries count as removed, so views of
+   * them stay invalid.
+   */
+  public void clear() {
+    removed += size;
+    size = 0;
+    first = 0;
+    allocate(INITIAL_CAPACITY);
+    slabData.clear();
+    firstSlab = 0;
+    slabUsed = 0;
+    slabBytes = 0;
+    interned.clear();
+    internedIndex.clear();
+    internedBytes = 0;
+  }
+
+  public long getTime(int index) {
+    return times[position(index)];
+  }
+
+  public int getMoteID(int index) {
+    return moteIDs[position(index)];
+  }
+
+  public String getMessage(int index) {
+    int pos = position(index);
+    if (offsets[pos] < 0) {
+      return interned.get(-1 - offsets[pos]);
+    }
+    return new String(slabData.get(slabs[pos] - firstSlab), offsets[pos], lengths[pos], UTF8);
+  }
+
+  /**
+   * @param index Entry index
+   * @return View of entry, valid until the entry is removed
+   */
+  public View get(int index) {
+    position(index);
+    return new View(removed + index);
+  }
+
+  /**
+   * Lightweight view of a buffer entry. Values are read from the buffer
+   * on demand.
+   */
+  public class View {
+    private final long id;
+
+    private View(long id) {
+      this.id = id;
+    }
+
+    /**
+     * @return True if entry is still in buffer
+     */
+    public boolean isValid() {
+      return id >= removed && id < removed + size;
+    }
+
+    private int index() {
+      if (!isValid()) {
+        throw new IllegalStateException("Entry removed from buffer");
+      }
+      return (int) (id - removed);
+    }
+
+    public long getTime() {
+      return LogBuffer.this.getTime(index());
+    }
+
+    public int getMoteID() {
+      return LogBuffer.this.getMoteID(index());
+    }
+
+    public String getMessage() {
+      return LogBuffer.this.getMessage(index());
+    }
+  }
+
+  public String toString() {
+    return "Log buffer with " + size + " entries, " + getMemoryUsage()/1024 + " kB";
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only log store backed by segment files.
+ *
+ * Each entry holds a time, a mote ID and a message. Entries are written
+ * sequentially to segment files of {@link #SEGMENT_ENTRIES} entries each.
+ * Every {@link #INDEX_INTERVAL} entries, the file offset and time of the
+ * entry are kept in memory, so any entry is found by reading at most one
+ * block of entries from disk. Each segment also keeps the set of mote IDs it
+ * contains, which lets mote lookups skip whole segments.
+ *
+ * Entries must be appended in time order.
+ *
+ * Recently read blocks are cached in memory. Files are removed when the
+ * store is cleared or closed, and at the latest when the JVM exits.
+ */
+public class LogStore {
+  public static final int SEGMENT_ENTRIES = 64*1024;
+  public static final int INDEX_INTERVAL = 64;
+  private static final int BUFFER_SIZE = 64*1024; /* Bytes */
+  private static final int BLOCK_CACHE_SIZE = 64; /* Blocks */
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  public static class Entry {
+    public final long time;
+    public final int moteID;
+    public final String msg;
+
+    public Entry(long time, int moteID, String msg) {
+      this.time = time;
+      this.moteID = moteID;
+      this.msg = msg;
+    }
+  }
+
+  private static class Segment {
+    final File file;
+    final long[] offsets = new long[SEGMENT_ENTRIES/INDEX_INTERVAL];
+    final long[] times = new long[SEGMENT_ENTRIES/INDEX_INTERVAL];
+    final BitSet motes = new BitSet();
+    boolean anyMote = false; /* Contains negative mote IDs */
+    long length = 0; /* Bytes */
+    int count = 0;
+
+    Segment(File file) {
+      this.file = file;
+    }
+  }
+
+  private final File directory;
+  private final ArrayList<Segment> segments = new ArrayList<Segment>();
+  private long size = 0;
+
+  private DataOutputStream out = null;
+  private boolean outFlushed = true;
+
+  private Segment readSegment = null;
+  private RandomAccessFile readFile = null;
+
+  private final LinkedHashMap<Long, Entry[]> blockCache =
+    new LinkedHashMap<Long, Entry[]>(BLOCK_CACHE_SIZE, 0.75f, true) {
+      private static final long serialVersionUID = 6573829012187422715L;
+      protected boolean removeEldestEntry(Map.Entry<Long, Entry[]> eldest) {
+        return size() > BLOCK_CACHE_SIZE;
+      }
+    };
+
+  /**
+   * Creates a store in a new temporary directory.
+   *
+   * @param prefix Directory name prefix
+   * @return Log store
+   * @throws IOException If the directory could not be created
+   */
+  public static LogStore createTemporary(String prefix) throws IOException {
+    File dir = File.createTempFile(prefix, "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Could not create directory: " + dir);
+    }
+    return new LogStore(dir);
+  }
+
+  /**
+   * @param directory Directory of segment files, removed when store is closed
+   */
+  public LogStore(File directory) {
+    this.directory = directory;
+    directory.deleteOnExit();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return Number of entries in store
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  public synchronized void append(long time, int moteID, String msg) throws IOException {
+    Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (segment == null || segment.count == SEGMENT_ENTRIES) {
+      segment = startSegment();
+    }
+
+    if (segment.count % INDEX_INTERVAL == 0) {
+      segment.offsets[segment.count/INDEX_INTERVAL] = segment.length;
+      segment.times[segment.count/INDEX_INTERVAL] = time;
+    }
+    if (moteID >= 0) {
+      segment.motes.set(moteID);
+    } else {
+      segment.anyMote = true;
+    }
+
+    byte[] data = msg.getBytes(UTF8);
+    out.writeLong(time);
+    out.writeInt(moteID);
+    out.writeInt(data.length);
+    out.write(data);
+    outFlushed = false;
+
+    segment.length += 16 + data.length;
+    segment.count++;
+    size++;
+  }
+
+  private Segment startSegment() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+    Segment segment = new Segment(new File(directory, "log-" + segments.size() + ".seg"));
+    segment.file.deleteOnExit();
+    out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(segment.file), BUFFER_SIZE));
+    outFlushed = true;
+    segments.add(segment);
+    return segment;
+  }
+
+  /**
+   * @param index Entry index
+   * @return Entry
+   * @throws IOException If the segment file could not be read
+   */
+  public synchronized Entry get(long index) throws IOException {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    return getBlock(index/INDEX_INTERVAL)[(int) (index%INDEX_INTERVAL)];
+  }
+
+  /**
+   * Reads consecutive entries.
+   *
+   * @param first Index of first entry
+   * @param count Maximum number of entries
+   * @return Entries, fewer than count at the end of the store
+   * @throws IOException If a segment file could not be read
+   */
+  public synchronized Entry[] read(long first, int count) throws IOException {
+    if (first < 0) {
+      throw new IndexOutOfBoundsException("Index: " + first);
+    }
+    count = (int) Math.max(0, Math.min(count, size - first));
+    Entry[] entries = new Entry[count];
+    int pos = 0;
+    while (pos < count) {
+      long index = first + pos;
+      Entry[] block = getBlock(index/INDEX_INTERVAL);
+      int offset = (int) (index%INDEX_INTERVAL);
+      int n = Math.min(count - pos, block.length - offset);
+      System.arraycopy(block, offset, entries, pos, n);
+      pos += n;
+    }
+    return entries;
+  }
+
+  /**
+   * Reads entries of the given mote. Segments without entries of the mote
+   * are skipped without reading them.
+   *
+   * @param first Index to start searching from
+   * @param count Maximum number of entries
+   * @param moteID Mote ID
+   * @param indices Indices of returned entries, or null
+   * @return Entries, fewer than count at the end of the store
+   * @throws IOException If a segment file could not be read
+   */
+  public synchronized Entry[] read(long first, int count, int moteID, long[] indices)
+  throws IOException {
+    ArrayList<Entry> entries = new ArrayList<Entry>();
+    long index = Math.max(0, first);
+    while (index < size && entries.size() < count) {
+      Segment segment = segments.get((int) (index/SEGMENT_ENTRIES));
+      if (moteID < 0 ? !segment.anyMote : !segment.motes.get(moteID)) {
+        index = (index/SEGMENT_ENTRIES + 1)*SEGMENT_ENTRIES;
+        continue;
+      }
+      Entry[] block = getBlock(index/INDEX_INTERVAL);
+      for (int i = (int) (index%INDEX_INTERVAL); i < block.length && entries.size() < count; i++) {
+        if (block[i].moteID == moteID) {
+          if (indices != null) {
+            indices[entries.size()] = index - index%INDEX_INTERVAL + i;
+          }
+          entries.add(block[i]);
+        }
+      }
+      index = (index/INDEX_INTERVAL + 1)*INDEX_INTERVAL;
+    }
+    return entries.toArray(new Entry[entries.size()]);
+  }
+
+  /**
+   * @param time Time
+   * @return Index of first entry at or after given time, or size if none
+   * @throws IOException If a segment file could not be read
+   */
+  public synchronized long indexOf(long time) throws IOException {
+    if (size == 0) {
+      return 0;
+    }
+
+    /* Last segment starting before time */
+    int low = 0, high = segments.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (segments.get(mid).times[0] < time) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    /* Last block starting before time */
+    Segment segment = segments.get(low);
+    int block = 0;
+    high = (segment.count + INDEX_INTERVAL - 1)/INDEX_INTERVAL - 1;
+    while (block < high) {
+      int mid = (block + high + 1) >>> 1;
+      if (segment.times[mid] < time) {
+        block = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    /* First entry at or after time */
+    long index = (long) low*SEGMENT_ENTRIES + (long) block*INDEX_INTERVAL;
+    while (index < size) {
+      Entry[] entries = getBlock(index/INDEX_INTERVAL);
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i].time >= time) {
+          return index + i;
+        }
+      }
+      index += entries.length;
+    }
+    return size;
+  }
+
+  private Entry[] getBlock(long block) throws IOException {
+    Entry[] entries = blockCache.get(block);
+    if (entries != null) {
+      return entries;
+    }
+
+    Segment segment = segments.get((int) (block*INDEX_INTERVAL/SEGMENT_ENTRIES));
+    int first = (int) (block*INDEX_INTERVAL%SEGMENT_ENTRIES);
+    int count = Math.min(INDEX_INTERVAL, segment.count - first);
+    long start = segment.offsets[first/INDEX_INTERVAL];
+    long end = first + INDEX_INTERVAL < segment.count ?
+        segment.offsets[first/INDEX_INTERVAL + 1] : segment.length;
+
+    if (!outFlushed && segment == segments.get(segments.size() - 1)) {
+      out.flush();
+      outFlushed = true;
+    }
+    if (readSegment != segment) {
+      if (readFile != null) {
+        readFile.close();
+      }
+      readFile = new RandomAccessFile(segment.file, "r");
+      readSegment = segment;
+    }
+    byte[] data = new byte[(int) (end - start)];
+    readFile.seek(start);
+    readFile.readFully(data);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    entries = new Entry[count];
+    for (int i = 0; i < count; i++) {
+      long time = in.readLong();
+      int moteID = in.readInt();
+      byte[] msg = new byte[in.readInt()];
+      in.readFully(msg);
+      entries[i] = new Entry(time, moteID, new String(msg, UTF8));
+    }
+
+    /* The last block may still grow */
+    if (count == INDEX_INTERVAL) {
+      blockCache.put(block, entries);
+    }
+    return entries;
+  }
+
+  /**
+   * Removes all entries and their files.
+   */
+  public synchronized void clear() {
+    closeFiles();
+    for (Segment segment: segments) {
+      segment.file.delete();
+    }
+    segments.clear();
+    blockCache.clear();
+    size = 0;
+  }
+
+  /**
+   * Removes all entries and the store directory.
+   */
+  public synchronized void close() {
+    clear();
+    directory.delete();
+  }
+
+  private void closeFiles() {
+    try {
+      if (out != null) {
+        out.close();
+      }
+      if (readFile != null) {
+        readFile.close();
+      }
+    } catch (IOException e) {
+      /* Files are removed anyway */
+    }
+    out = null;
+    outFlushed = true;
+    readFile = null;
+    readSegment = null;
+  }
+
+  public String toString() {
+    return "Log store with " + size + " entries in " + directory;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.util.Random;
+
+/**
+ * Event queue benchmark.
+ *
+ * Classic "hold" model: the queue is filled with a given number of pending
+ * events, and each operation pops the first event and reschedules it at a
+ * random later time. This matches the simulation loop, where executed
+ * events typically reschedule themselves.
+ *
+ * Each configuration runs warmup iterations before the measured ones.
+ * Run with "ant benchmark".
+ */
+public class EventQueueBenchmark {
+  private static final int[] PENDING = { 100, 1000, 10000 };
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int ITERATIONS = 10;
+  private static final int WORK = 10000000; /* Operations x pending events */
+  private static final int MIN_OPERATIONS = 20000;
+  private static final int MAX_DELAY = 10000;
+
+  private static class BenchmarkEvent extends TimeEvent {
+    public BenchmarkEvent() {
+      super(0);
+    }
+    public void execute(long t) {
+    }
+  }
+
+  /**
+   * @return Time per operation (ns)
+   */
+  private static double hold(EventQueue queue, int pending, long seed) {
+    Random random = new Random(seed);
+    for (int i = 0; i < pending; i++) {
+      queue.addEvent(new BenchmarkEvent(), random.nextInt(MAX_DELAY));
+    }
+
+    int operations = Math.max(MIN_OPERATIONS, WORK/pending);
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      TimeEvent event = queue.popFirst();
+      event.execute(event.time);
+      queue.addEvent(event, event.time + 1 + random.nextInt(MAX_DELAY));
+    }
+    long duration = System.nanoTime() - start;
+
+    queue.removeAll();
+    return (double) duration/operations;
+  }
+
+  private static EventQueue createQueue(String type) {
+    if (type.equals("heap")) {
+      return new HeapEventQueue();
+    }
+    return new LinkedEventQueue();
+  }
+
+  public static void main(String[] args) {
+    String[] types = { "linked", "heap" };
+    System.out.println("queue\tpending\tns/op\tmin ns/op");
+    for (int pending: PENDING) {
+      for (String type: types) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+          hold(createQueue(type), pending, i);
+        }
+        double sum = 0, min = Double.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+          double ns = hold(createQueue(type), pending, WARMUP_ITERATIONS + i);
+          sum += ns;
+          min = Math.min(min, ns);
+        }
+        System.out.println(String.format("%s\t%d\t%.1f\t%.1f", type, pending, sum/ITERATIONS, min));
+      }
+    }
+  }
+}
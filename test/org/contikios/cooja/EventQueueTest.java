@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks that {@link HeapEventQueue} executes events in the same order as
+ * {@link LinkedEventQueue}: ordered by time, and in insertion order (FIFO)
+ * for events scheduled for the same time.
+ *
+ * Events are scheduled, rescheduled and removed by a pseudo-random
+ * workload with many equal times. Run with "ant test".
+ */
+public class EventQueueTest {
+  private static final int EVENTS = 200;
+  private static final int STEPS = 100000;
+
+  private static int failures = 0;
+
+  private static class TestEvent extends TimeEvent {
+    private final Workload workload;
+    private final int id;
+
+    public TestEvent(Workload workload, int id) {
+      super(0, "event " + id);
+      this.workload = workload;
+      this.id = id;
+    }
+
+    public void execute(long t) {
+      workload.executed(this, t);
+    }
+  }
+
+  /** Executes events popped from the queue, and schedules new ones */
+  private static class Workload {
+    private final EventQueue queue;
+    private final Random random;
+    private final TestEvent[] events = new TestEvent[EVENTS];
+    private final ArrayList<String> order = new ArrayList<String>();
+    private long now = 0;
+    private long lastTime = -1;
+    private long lastSequence = -1;
+
+    public Workload(EventQueue queue, long seed) {
+      this.queue = queue;
+      this.random = new Random(seed);
+      for (int i = 0; i < EVENTS; i++) {
+        events[i] = new TestEvent(this, i);
+      }
+    }
+
+    private long nextTime() {
+      /* Few distinct times, to get many ties */
+      return now + random.nextInt(4)*10;
+    }
+
+    public void run() {
+      for (TestEvent event: events) {
+        queue.addEvent(event, nextTime());
+      }
+      for (int step = 0; step < STEPS; step++) {
+        TimeEvent event = queue.popFirst();
+        if (event == null) {
+          break;
+        }
+        check(event.time >= now, "time went backwards: " + event.time + " < " + now);
+        now = event.time;
+        event.execute(now);
+      }
+    }
+
+    public void executed(TestEvent event, long t) {
+      order.add(event.id + "@" + t);
+
+      /* FIFO among events at the same time (heap only: sequence numbers) */
+      if (queue instanceof HeapEventQueue) {
+        if (t == lastTime) {
+          check(event.sequence > lastSequence, "not FIFO at time " + t);
+        }
+        lastTime = t;
+        lastSequence = event.sequence;
+      }
+
+      /* Reschedule self */
+      if (random.nextInt(10) > 0) {
+        queue.addEvent(event, nextTime());
+      }
+
+      /* Remove or reschedule another event */
+      TestEvent other = events[random.nextInt(EVENTS)];
+      switch (random.nextInt(4)) {
+      case 0:
+        other.remove();
+        break;
+      case 1:
+        if (!other.isScheduled()) {
+          queue.addEvent(other, nextTime());
+        }
+        break;
+      }
+    }
+  }
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  private static void compareOrder(long seed) {
+    Workload linked = new Workload(new LinkedEventQueue(), seed);
+    Workload heap = new Workload(new HeapEventQueue(), seed);
+    linked.run();
+    heap.run();
+
+    check(linked.order.size() == heap.order.size(),
+        "seed " + seed + ": " + linked.order.size() + " vs " + heap.order.size() + " events");
+    for (int i = 0; i < Math.min(linked.order.size(), heap.order.size()); i++) {
+      if (!linked.order.get(i).equals(heap.order.get(i))) {
+        check(false, "seed " + seed + ", event " + i + ": " +
+            linked.order.get(i) + " vs " + heap.order.get(i));
+        break;
+      }
+    }
+    check(linked.queue.size() == heap.queue.size(), "seed " + seed + ": queue sizes differ");
+  }
+
+  private static void testCollectEvents() {
+    EventQueue queue = new HeapEventQueue();
+    Workload workload = new Workload(queue, 0);
+    for (int i = 0; i < 10; i++) {
+      queue.addEvent(workload.events[i], i % 2 == 0 ? 100 : 200);
+    }
+    workload.events[2].remove();
+    ArrayList<TimeEvent> collected = new ArrayList<TimeEvent>();
+    queue.collectEvents(100, collected);
+    check(collected.size() == 4, "collectEvents: " + collected.size() + " events, expected 4");
+  }
+
+  public static void main(String[] args) {
+    for (long seed = 0; seed < 20; seed++) {
+      compareOrder(seed);
+    }
+    testCollectEvents();
+
+    if (failures > 0) {
+      System.err.println("EventQueueTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("EventQueueTest: OK");
+  }
+}
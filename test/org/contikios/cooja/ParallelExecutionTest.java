@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom.Element;
+
+import org.contikios.cooja.mote.memory.MemoryInterface;
+
+/**
+ * Runs a simulation with motes of several types sequentially and with
+ * parallel execution, and checks that both runs produce the same output,
+ * that speculative results were used, and that motes of the same type
+ * never executed concurrently.
+ *
+ * The test motes mimic Contiki motes: motes of a type share one execution
+ * resource, and a mote's next state depends on input written by other motes,
+ * so some speculative results must be discarded. Run with "ant test".
+ */
+public class ParallelExecutionTest {
+  private static final int TYPES = 3;
+  private static final int MOTES_PER_TYPE = 4;
+  private static final long DURATION = 2000*Simulation.MILLISECOND;
+
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  /** Execution resource shared by motes of a type */
+  private static class TestType {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger concurrent = new AtomicInteger();
+    int busy = 0;
+    Future<Long> speculation = null;
+
+    /* Waits until no mote of this type executes on a worker thread */
+    void awaitSpeculation() {
+      if (speculation == null) {
+        return;
+      }
+      try {
+        speculation.get();
+      } catch (InterruptedException e) {
+      } catch (ExecutionException e) {
+      }
+      speculation = null;
+    }
+
+    /* Some work depending on the mote state and input */
+    long compute(long state, long input, long time) {
+      if (running.incrementAndGet() > 1) {
+        concurrent.incrementAndGet();
+      }
+      long x = state ^ input ^ time;
+      for (int i = 0; i < 20000; i++) {
+        x = x*6364136223846793005L + 1442695040888963407L;
+      }
+      running.decrementAndGet();
+      return x >>> 1;
+    }
+  }
+
+  /** Shared by all motes of a run: broadcast input and output log */
+  private static class Network {
+    long broadcast = 0;
+    final ArrayList<String> output = new ArrayList<String>();
+    int speculated = 0;
+  }
+
+  private static class TestMote implements SpeculativeMote {
+    private final int id;
+    private final TestType type;
+    private final Network network;
+    private final Simulation simulation;
+    private long state;
+    private long nextTime = 0;
+    private long speculativeTime = -1;
+    private long speculativeInput;
+    private Future<Long> speculation = null;
+
+    private final MoteTimeEvent executeEvent;
+
+    TestMote(int id, TestType type, Network network, Simulation simulation) {
+      this.id = id;
+      this.type = type;
+      this.network = network;
+      this.simulation = simulation;
+      state = id;
+      executeEvent = new MoteTimeEvent(this, 0) {
+        public void execute(long t) {
+          TestMote.this.execute(t);
+        }
+      };
+      simulation.scheduleEvent(executeEvent, nextTime);
+    }
+
+    void execute(long time) {
+      boolean speculated = speculativeTime == time && speculativeInput == network.broadcast;
+      speculativeTime = -1;
+      type.awaitSpeculation();
+
+      long next = -1;
+      if (speculated) {
+        try {
+          next = speculation.get();
+          network.speculated++;
+        } catch (InterruptedException e) {
+          speculated = false;
+        } catch (ExecutionException e) {
+          speculated = false;
+        }
+      }
+      if (!speculated) {
+        next = type.compute(state, network.broadcast, time);
+      }
+      speculation = null;
+      state = next;
+
+      network.output.add(time + " " + id + " " + state);
+      if (state % 3 == 0) {
+        network.broadcast = state;
+      }
+      /* Motes often wake up at the same time */
+      nextTime = time + (1 + state % 4)*Simulation.MILLISECOND;
+      simulation.scheduleEvent(executeEvent, nextTime);
+    }
+
+    public Object getExecutionResource() {
+      return type;
+    }
+
+    public boolean startSpeculation(final long time, ExecutorService executor) {
+      if (nextTime != time) {
+        return false;
+      }
+      if (type.speculation != null) {
+        /* Simulation should not start motes sharing a resource */
+        type.busy++;
+        return false;
+      }
+      final long s = state;
+      final long input = network.broadcast;
+      speculation = executor.submit(new Callable<Long>() {
+        public Long call() {
+          return type.compute(s, input, time);
+        }
+      });
+      type.speculation = speculation;
+      speculativeTime = time;
+      speculativeInput = input;
+      return true;
+    }
+
+    public int getID() {
+      return id;
+    }
+    public MoteInterfaceHandler getInterfaces() {
+      return null;
+    }
+    public MemoryInterface getMemory() {
+      return null;
+    }
+    public MoteType getType() {
+      return null;
+    }
+    public Simulation getSimulation() {
+      return simulation;
+    }
+    public Collection<Element> getConfigXML() {
+      return null;
+    }
+    public boolean setConfigXML(Simulation simulation, Collection<Element> configXML,
+        boolean visAvailable) {
+      return true;
+    }
+    public void removed() {
+    }
+    public void setProperty(String key, Object obj) {
+    }
+    public Object getProperty(String key) {
+      return null;
+    }
+  }
+
+  private static Network run(int threads, TestType[] types) throws InterruptedException {
+    final Simulation simulation = new Simulation(null);
+    simulation.setParallelExecution(threads);
+    Network network = new Network();
+    int id = 1;
+    for (TestType type: types) {
+      for (int i = 0; i < MOTES_PER_TYPE; i++) {
+        new TestMote(id++, type, network, simulation);
+      }
+    }
+    simulation.scheduleEvent(new TimeEvent(0) {
+      public void execute(long t) {
+        simulation.stopSimulation();
+      }
+    }, DURATION);
+
+    simulation.startSimulation();
+    while (simulation.isRunning()) {
+      Thread.sleep(10);
+    }
+    simulation.setParallelExecution(0);
+    return network;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Cooja.currentExternalToolsSettings = new Properties();
+
+    TestType[] types = new TestType[TYPES];
+    for (int i = 0; i < TYPES; i++) {
+      types[i] = new TestType();
+    }
+    Network sequential = run(0, types);
+    Network parallel = run(TYPES, types);
+
+    check(sequential.output.size() > 1000, "sequential: " + sequential.output.size() + " executions");
+    check(sequential.speculated == 0, "sequential: " + sequential.speculated + " speculative results used");
+    check(parallel.speculated > 0, "parallel: no speculative results used");
+    check(parallel.speculated < parallel.output.size(), "parallel: no speculative results discarded");
+    check(parallel.output.equals(sequential.output), "parallel: output differs from sequential");
+    for (int i = 0; i < TYPES; i++) {
+      check(types[i].concurrent.get() == 0,
+          "type " + i + ": executed concurrently " + types[i].concurrent.get() + " times");
+      check(types[i].busy == 0,
+          "type " + i + ": speculation started " + types[i].busy + " times while busy");
+    }
+
+    if (failures > 0) {
+      System.err.println("ParallelExecutionTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("ParallelExecutionTest: OK");
+  }
+}
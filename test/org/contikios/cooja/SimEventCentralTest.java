@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Observer;
+import java.util.Properties;
+
+import javax.swing.JPanel;
+
+import org.jdom.Element;
+
+import org.contikios.cooja.SimEventCentral.LogOutputEvent;
+import org.contikios.cooja.SimEventCentral.LogOutputListener;
+import org.contikios.cooja.interfaces.Log;
+import org.contikios.cooja.mote.memory.MemoryInterface;
+
+/**
+ * Checks that {@link SimEventCentral#getLogOutputHistory(long, int)} returns
+ * the log output history in order, whether it is read from the in-memory
+ * history, the log output store, or both, including when the store is
+ * enabled while log output is already in memory. Run with "ant test".
+ */
+public class SimEventCentralTest {
+  private static final int BUFFER_SIZE = 100;
+
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  private static class TestLog extends Log {
+    String msg = null;
+    public String getLastLogMessage() {
+      return msg;
+    }
+    public JPanel getInterfaceVisualizer() {
+      return null;
+    }
+    public void releaseInterfaceVisualizer(JPanel panel) {
+    }
+    public Collection<Element> getConfigXML() {
+      return null;
+    }
+    public void setConfigXML(Collection<Element> configXML, boolean visAvailable) {
+    }
+  }
+
+  private static class TestMote implements Mote {
+    private final int id;
+    TestMote(int id) {
+      this.id = id;
+    }
+    public int getID() {
+      return id;
+    }
+    public MoteInterfaceHandler getInterfaces() {
+      return null;
+    }
+    public MemoryInterface getMemory() {
+      return null;
+    }
+    public MoteType getType() {
+      return null;
+    }
+    public Simulation getSimulation() {
+      return null;
+    }
+    public Collection<Element> getConfigXML() {
+      return null;
+    }
+    public boolean setConfigXML(Simulation simulation, Collection<Element> configXML,
+        boolean visAvailable) {
+      return true;
+    }
+    public void removed() {
+    }
+    public void setProperty(String key, Object obj) {
+    }
+    public Object getProperty(String key) {
+      return null;
+    }
+  }
+
+  private static final LogOutputListener listener = new LogOutputListener() {
+    public void moteWasAdded(Mote mote) {
+    }
+    public void moteWasRemoved(Mote mote) {
+    }
+    public void removedLogOutput(LogOutputEvent ev) {
+    }
+    public void newLogOutput(LogOutputEvent ev) {
+    }
+  };
+
+  private static Simulation simulation;
+  private static SimEventCentral central;
+  private static Observer logOutputObserver;
+  private static final TestLog log = new TestLog();
+  private static final TestMote[] motes = new TestMote[5];
+
+  /* Line i: mote i%5, time 1000*i */
+  private static void log(int from, int to) {
+    for (int i = from; i < to; i++) {
+      simulation.setSimulationTime(1000L*i);
+      log.msg = "line " + i;
+      logOutputObserver.update(log, motes[i % motes.length]);
+    }
+  }
+
+  private static void checkHistory(String test, long first, int count, int firstLine, int lines) {
+    LogOutputEvent[] events = central.getLogOutputHistory(first, count);
+    check(events.length == lines, test + ": " + events.length + " lines, expected " + lines);
+    for (int i = 0; i < Math.min(events.length, lines); i++) {
+      int line = firstLine + i;
+      if (!events[i].getMessage().equals("line " + line) ||
+          events[i].getTime() != 1000L*line ||
+          events[i].getMoteID() != line % motes.length) {
+        check(false, test + ": line " + i + " is " + events[i].getMoteID() + " " +
+            events[i].getTime() + " \"" + events[i].getMessage() + "\", expected line " + line);
+        return;
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Cooja.currentExternalToolsSettings = new Properties();
+    Cooja.setExternalToolsSetting("BUFFERSIZE_LOGOUTPUT", "" + BUFFER_SIZE);
+    simulation = new Simulation(null);
+    central = simulation.getEventCentral();
+    Field field = SimEventCentral.class.getDeclaredField("logOutputObserver");
+    field.setAccessible(true);
+    logOutputObserver = (Observer) field.get(central);
+    for (int i = 0; i < motes.length; i++) {
+      motes[i] = new TestMote(i);
+    }
+    central.addLogOutputListener(listener);
+
+    /* In memory only: indices shift as old output is removed */
+    log(0, 50);
+    check(central.getLogOutputHistorySize() == 50, "memory: size " + central.getLogOutputHistorySize());
+    checkHistory("memory", 10, 5, 10, 5);
+    log(50, 200);
+    check(central.getLogOutputHistorySize() == BUFFER_SIZE,
+        "memory: size " + central.getLogOutputHistorySize() + " when full");
+    checkHistory("memory, full", 0, 1000, 100, BUFFER_SIZE);
+
+    /* Store enabled with output in memory: history starts when enabled */
+    central.setLogOutputStoreEnabled(true);
+    check(central.isLogOutputStored(), "store: not enabled");
+    check(central.getLogOutputHistorySize() == 0, "store: size " + central.getLogOutputHistorySize() +
+        " when enabled");
+    log(200, 230);
+    checkHistory("store, memory tail only", 0, 1000, 200, 30);
+    checkHistory("store, memory tail only, page", 10, 5, 210, 5);
+
+    /* Older output only in store, recent output also in memory */
+    log(230, 730);
+    check(central.getLogOutputHistorySize() == 530,
+        "store: size " + central.getLogOutputHistorySize() + ", expected 530");
+    checkHistory("store, all", 0, 1000, 200, 530);
+    checkHistory("store, before memory tail", 100, 20, 300, 20);
+    checkHistory("store, across memory tail", 420, 20, 620, 20);
+    checkHistory("store, in memory tail", 500, 20, 700, 20);
+    checkHistory("store, past end", 525, 10, 725, 5);
+    checkHistory("store, negative index", -5, 3, 200, 3);
+
+    LogOutputEvent[] moteEvents = central.getLogOutputHistory(0, 1000, 3);
+    check(moteEvents.length == 106, "store, mote 3: " + moteEvents.length + " lines, expected 106");
+    for (LogOutputEvent ev: moteEvents) {
+      check(ev.getMoteID() == 3, "store, mote 3: line of mote " + ev.getMoteID());
+    }
+    check(central.findLogOutputHistory(1000L*400) == 200, "store: find time");
+
+    /* Removing the last listener clears the history */
+    central.removeLogOutputListener(listener);
+    check(central.getLogOutputHistorySize() == 0,
+        "cleared: size " + central.getLogOutputHistorySize());
+    central.setLogOutputStoreEnabled(false);
+    check(!central.isLogOutputStored(), "store: not disabled");
+
+    if (failures > 0) {
+      System.err.println("SimEventCentralTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("SimEventCentralTest: OK");
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.plugins;
+
+/**
+ * Checks the log filters {@link ScriptParser} derives from WAIT_UNTIL
+ * expressions: recognized conjunctions must give a filter that accepts
+ * every line the expression could accept, and anything else no filter.
+ * Run with "ant test".
+ */
+public class ScriptParserTest {
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  private static LogFilter[] parse(String expression) {
+    try {
+      return new ScriptParser("WAIT_UNTIL(" + expression + ");").getLogFilters();
+    } catch (ScriptParser.ScriptSyntaxErrorException e) {
+      check(false, expression + ": " + e.getMessage());
+      return new LogFilter[0];
+    }
+  }
+
+  private static LogFilter parseFilter(String expression) {
+    LogFilter[] filters = parse(expression);
+    check(filters.length == 1, expression + ": " + filters.length + " filters, expected 1");
+    return filters.length == 1 ? filters[0] : null;
+  }
+
+  private static void checkNoFilter(String expression) {
+    LogFilter[] filters = parse(expression);
+    check(filters.length == 0, expression + ": unexpected filter " +
+        (filters.length > 0 ? filters[0] : ""));
+  }
+
+  private static void checkAccept(LogFilter filter, int id, String msg, boolean expected) {
+    if (filter == null) {
+      return;
+    }
+    check(filter.accept(id, msg) == expected,
+        filter + ": " + id + " \"" + msg + "\" " + (expected ? "rejected" : "accepted"));
+  }
+
+  private static void testConjunctions() {
+    LogFilter filter = parseFilter("msg.contains(\"Hello\") && id == 3");
+    checkAccept(filter, 3, "Hello world", true);
+    checkAccept(filter, 2, "Hello world", false);
+    checkAccept(filter, 3, "Goodbye", false);
+
+    filter = parseFilter("3 === id && msg.startsWith('abc')");
+    checkAccept(filter, 3, "abcdef", true);
+    checkAccept(filter, 3, "xabc", false);
+    checkAccept(filter, 4, "abcdef", false);
+
+    filter = parseFilter("msg.endsWith(\"done\")&&msg.equals(\"all done\")");
+    checkAccept(filter, 1, "all done", true);
+    checkAccept(filter, 1, "not done", false);
+
+    filter = parseFilter("msg.matches(\"ab+c\")");
+    checkAccept(filter, 1, "abbbc", true);
+    checkAccept(filter, 1, "xabbbc", false);
+  }
+
+  private static void testLowerPrecedenceOperators() {
+    checkNoFilter("msg.contains(\"a\") || msg.contains(\"b\")");
+    checkNoFilter("msg.contains(\"a\") && id == 1 || msg.contains(\"b\")");
+    checkNoFilter("msg.contains(\"a\") && id == 1 ? true : msg.contains(\"b\")");
+    checkNoFilter("id == 1 ? msg.contains(\"a\") : true");
+    checkNoFilter("msg.contains(\"a\"), true");
+    checkNoFilter("/ab+c/.test(msg)");
+    checkNoFilter("msg.contains(\"a\") && /b/.test(msg)");
+
+    /* Operators inside string literals and parentheses do not count */
+    LogFilter filter = parseFilter("msg.contains(\"a,b || c?\")");
+    checkAccept(filter, 1, "x a,b || c? y", true);
+    checkAccept(filter, 1, "a,b", false);
+    filter = parseFilter("msg.contains(\"ready\") && (x == 1 || y == 2)");
+    checkAccept(filter, 1, "ready", true);
+    checkAccept(filter, 1, "idle", false);
+  }
+
+  private static void testUnrecognized() {
+    checkNoFilter("!msg.contains(\"x\")");
+    checkNoFilter("msg.length > 3");
+    checkNoFilter("id == 1 + 1");
+    checkNoFilter("msg.contains(variable)");
+    checkNoFilter("msg.contains(\"a\\qb\")");
+
+    /* Only conditions before the first unrecognized one are used */
+    LogFilter filter = parseFilter("msg.contains(\"ready\") && counter++ > 2 && id == 5");
+    checkAccept(filter, 1, "ready", true);
+    checkAccept(filter, 5, "ready", true);
+    checkAccept(filter, 5, "idle", false);
+  }
+
+  private static void testEscapedQuotes() {
+    LogFilter filter = parseFilter("msg.contains(\"say \\\"hi\\\"\")");
+    checkAccept(filter, 1, "they say \"hi\" now", true);
+    checkAccept(filter, 1, "they say hi now", false);
+
+    filter = parseFilter("msg.startsWith('it\\'s') && id == 2");
+    checkAccept(filter, 2, "it's here", true);
+    checkAccept(filter, 2, "its here", false);
+
+    filter = parseFilter("msg.endsWith(\"\\\\\")");
+    checkAccept(filter, 1, "path\\", true);
+    checkAccept(filter, 1, "path", false);
+  }
+
+  private static void testSharedFilters() {
+    try {
+      ScriptParser parser = new ScriptParser(
+          "WAIT_UNTIL(msg.contains(\"a\"));\n" +
+          "WAIT_UNTIL(msg.contains(\"b\"));\n" +
+          "WAIT_UNTIL(msg.contains(\"a\"));\n");
+      check(parser.getLogFilters().length == 2,
+          "repeated expression: " + parser.getLogFilters().length + " filters, expected 2");
+    } catch (ScriptParser.ScriptSyntaxErrorException e) {
+      check(false, "repeated expression: " + e.getMessage());
+    }
+  }
+
+  public static void main(String[] args) {
+    testConjunctions();
+    testLowerPrecedenceOperators();
+    testUnrecognized();
+    testEscapedQuotes();
+    testSharedFilters();
+
+    if (failures > 0) {
+      System.err.println("ScriptParserTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("ScriptParserTest: OK");
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.radiomediums;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.swing.JPanel;
+
+import org.jdom.Element;
+
+import org.contikios.cooja.Cooja;
+import org.contikios.cooja.Mote;
+import org.contikios.cooja.MoteInterfaceHandler;
+import org.contikios.cooja.MoteType;
+import org.contikios.cooja.RadioPacket;
+import org.contikios.cooja.Simulation;
+import org.contikios.cooja.interfaces.Position;
+import org.contikios.cooja.interfaces.Radio;
+import org.contikios.cooja.mote.memory.MemoryInterface;
+import org.contikios.cooja.radiomediums.AbstractRadioMedium.SignalStrengthUpdates;
+
+/**
+ * Drives UDGM and DGRM through random transmission starts and ends, radios
+ * turned off and on, and overlapping (interfering) transmissions in
+ * {@link SignalStrengthUpdates#CHECKED} mode, and checks that the incremental
+ * signal strength updates never differ from a full recomputation.
+ * Run with "ant test".
+ */
+public class SignalStrengthUpdatesTest {
+  private static final int RADIOS = 16;
+  private static final int STEPS = 5000;
+
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  private static class TestMote implements Mote {
+    private final int id;
+    private final Simulation simulation;
+    TestMote(int id, Simulation simulation) {
+      this.id = id;
+      this.simulation = simulation;
+    }
+    public int getID() {
+      return id;
+    }
+    public MoteInterfaceHandler getInterfaces() {
+      return null;
+    }
+    public MemoryInterface getMemory() {
+      return null;
+    }
+    public MoteType getType() {
+      return null;
+    }
+    public Simulation getSimulation() {
+      return simulation;
+    }
+    public Collection<Element> getConfigXML() {
+      return null;
+    }
+    public boolean setConfigXML(Simulation simulation, Collection<Element> configXML,
+        boolean visAvailable) {
+      return true;
+    }
+    public void removed() {
+    }
+    public void setProperty(String key, Object obj) {
+    }
+    public Object getProperty(String key) {
+      return null;
+    }
+  }
+
+  /**
+   * Radio whose transmissions and power state are changed directly by the
+   * test. Receptions are handled like {@link org.contikios.cooja.interfaces.ApplicationRadio}.
+   */
+  private static class TestRadio extends Radio {
+    private final Mote mote;
+    private final Position position;
+    private final int channel;
+    private RadioEvent lastEvent = RadioEvent.UNKNOWN;
+    private boolean radioOn = true;
+    private boolean isTransmitting = false;
+    private boolean isReceiving = false;
+    private boolean isInterfered = false;
+    private int interfered = 0;
+    private double signalStrength = -100;
+    boolean wasInterfered = false;
+
+    TestRadio(Simulation simulation, int id, double x, double y, int channel) {
+      mote = new TestMote(id, simulation);
+      position = new Position(mote);
+      position.setCoordinates(x, y, 0);
+      this.channel = channel;
+    }
+
+    private void event(RadioEvent event) {
+      lastEvent = event;
+      setChanged();
+      notifyObservers();
+    }
+
+    void startTransmission() {
+      isTransmitting = true;
+      event(RadioEvent.TRANSMISSION_STARTED);
+    }
+    void finishTransmission() {
+      isTransmitting = false;
+      event(RadioEvent.TRANSMISSION_FINISHED);
+    }
+    void setRadioOn(boolean on) {
+      radioOn = on;
+      event(on ? RadioEvent.HW_ON : RadioEvent.HW_OFF);
+    }
+
+    public void setReceivedPacket(RadioPacket packet) {
+    }
+    public RadioPacket getLastPacketTransmitted() {
+      return null;
+    }
+    public RadioPacket getLastPacketReceived() {
+      return null;
+    }
+    public void signalReceptionStart() {
+      if (isInterfered || isReceiving || isTransmitting) {
+        interfereAnyReception();
+        return;
+      }
+      isReceiving = true;
+      event(RadioEvent.RECEPTION_STARTED);
+    }
+    public void signalReceptionEnd() {
+      if (isInterfered) {
+        interfered--;
+        if (interfered <= 0) {
+          interfered = 0;
+          isInterfered = false;
+        }
+        if (interfered > 0) {
+          return;
+        }
+      }
+      isReceiving = false;
+      event(RadioEvent.RECEPTION_FINISHED);
+    }
+    public RadioEvent getLastEvent() {
+      return lastEvent;
+    }
+    public boolean isTransmitting() {
+      return isTransmitting;
+    }
+    public boolean isReceiving() {
+      return isReceiving;
+    }
+    public boolean isInterfered() {
+      return isInterfered;
+    }
+    public boolean isRadioOn() {
+      return radioOn;
+    }
+    public void interfereAnyReception() {
+      interfered++;
+      wasInterfered = true;
+      if (!isInterfered) {
+        isInterfered = true;
+        event(RadioEvent.RECEPTION_INTERFERED);
+      }
+    }
+    public double getCurrentOutputPower() {
+      return 0;
+    }
+    public int getCurrentOutputPowerIndicator() {
+      return 100;
+    }
+    public int getOutputPowerIndicatorMax() {
+      return 100;
+    }
+    public double getCurrentSignalStrength() {
+      return signalStrength;
+    }
+    public void setCurrentSignalStrength(double signalStrength) {
+      this.signalStrength = signalStrength;
+    }
+    public int getChannel() {
+      return channel;
+    }
+    public Position getPosition() {
+      return position;
+    }
+    public Mote getMote() {
+      return mote;
+    }
+    public JPanel getInterfaceVisualizer() {
+      return null;
+    }
+    public void releaseInterfaceVisualizer(JPanel panel) {
+    }
+    public Collection<Element> getConfigXML() {
+      return null;
+    }
+    public void setConfigXML(Collection<Element> configXML, boolean visAvailable) {
+    }
+    public String toString() {
+      return "radio " + mote.getID();
+    }
+  }
+
+  /* Radios 30 m apart, the last two on another channel */
+  private static TestRadio[] createRadios(AbstractRadioMedium medium, Simulation simulation) {
+    TestRadio[] radios = new TestRadio[RADIOS];
+    for (int i = 0; i < RADIOS; i++) {
+      radios[i] = new TestRadio(simulation, i, 30*(i % 4), 30*(i / 4), i < RADIOS - 2 ? -1 : 11);
+      medium.registerRadioInterface(radios[i], simulation);
+    }
+    return radios;
+  }
+
+  private static void run(String test, AbstractRadioMedium medium, TestRadio[] radios, Random random) {
+    int started = 0;
+    int turnedOff = 0;
+    for (int step = 0; step < STEPS; step++) {
+      TestRadio radio = radios[random.nextInt(radios.length)];
+      if (radio.isTransmitting()) {
+        radio.finishTransmission();
+      } else if (!radio.isRadioOn()) {
+        radio.setRadioOn(true);
+      } else if (random.nextInt(5) == 0) {
+        radio.setRadioOn(false);
+        turnedOff++;
+      } else {
+        radio.startTransmission();
+        started++;
+      }
+    }
+    for (TestRadio radio: radios) {
+      if (radio.isTransmitting()) {
+        radio.finishTransmission();
+      }
+    }
+    int interfered = 0;
+    for (TestRadio radio: radios) {
+      if (radio.wasInterfered) {
+        interfered++;
+      }
+    }
+
+    check(started > 0 && turnedOff > 0 && interfered > 0,
+        test + ": " + started + " transmissions, " + turnedOff + " turned off, " +
+        interfered + " radios interfered");
+    check(medium.getActiveConnections().length == 0,
+        test + ": " + medium.getActiveConnections().length + " active connections left");
+    check(medium.getSignalStrengthMismatches() == 0,
+        test + ": " + medium.getSignalStrengthMismatches() + " signal strength mismatches");
+  }
+
+  public static void main(String[] args) {
+    Cooja.currentExternalToolsSettings = new Properties();
+    Simulation simulation = new Simulation(null);
+    simulation.setRandomSeed(1);
+
+    UDGM udgm = new UDGM(simulation);
+    udgm.setSignalStrengthUpdates(SignalStrengthUpdates.CHECKED);
+    udgm.SUCCESS_RATIO_RX = 0.8;
+    run("UDGM", udgm, createRadios(udgm, simulation), new Random(1));
+
+    DirectedGraphMedium dgrm = new DirectedGraphMedium(simulation);
+    dgrm.setSignalStrengthUpdates(SignalStrengthUpdates.CHECKED);
+    TestRadio[] radios = createRadios(dgrm, simulation);
+    Random random = new Random(2);
+    ArrayList<DirectedGraphMedium.Edge> edges = new ArrayList<DirectedGraphMedium.Edge>();
+    for (TestRadio source: radios) {
+      for (TestRadio dest: radios) {
+        if (source == dest || random.nextInt(3) != 0) {
+          continue;
+        }
+        DGRMDestinationRadio superDest = new DGRMDestinationRadio(dest);
+        superDest.ratio = random.nextInt(4) == 0 ? 0.5 : 1.0;
+        superDest.signal = -10 - random.nextInt(80);
+        edges.add(new DirectedGraphMedium.Edge(source, superDest));
+      }
+    }
+    dgrm.addEdges(edges);
+    run("DGRM", dgrm, radios, random);
+
+    if (failures > 0) {
+      System.err.println("SignalStrengthUpdatesTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("SignalStrengthUpdatesTest: OK");
+  }
+}
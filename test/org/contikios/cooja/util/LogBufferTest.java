@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Checks that {@link LogBuffer} returns the entries added to it, in order,
+ * while entries are added and removed across array wraparound, slab
+ * boundaries and interned messages, and that it frees unused slabs.
+ * Run with "ant test".
+ */
+public class LogBufferTest {
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  private static class Entry {
+    final long time;
+    final int moteID;
+    final String msg;
+    Entry(long time, int moteID, String msg) {
+      this.time = time;
+      this.moteID = moteID;
+      this.msg = msg;
+    }
+  }
+
+  private static void compare(String test, LogBuffer buffer, ArrayDeque<Entry> expected) {
+    check(buffer.size() == expected.size(),
+        test + ": size " + buffer.size() + ", expected " + expected.size());
+    int i = 0;
+    for (Iterator<Entry> iter = expected.iterator(); iter.hasNext() && i < buffer.size(); i++) {
+      Entry e = iter.next();
+      if (buffer.getTime(i) != e.time || buffer.getMoteID(i) != e.moteID ||
+          !buffer.getMessage(i).equals(e.msg)) {
+        check(false, test + ": entry " + i + " is " + buffer.getTime(i) + " " +
+            buffer.getMoteID(i) + " \"" + buffer.getMessage(i) + "\", expected " +
+            e.time + " " + e.moteID + " \"" + e.msg + "\"");
+        return;
+      }
+    }
+  }
+
+  private static String message(Random random) {
+    switch (random.nextInt(4)) {
+    case 0:
+      /* Repeated, interned when dedup is enabled */
+      return "repeated " + random.nextInt(10);
+    case 1:
+      /* Multi-byte UTF-8 */
+      return "åäö " + random.nextInt();
+    case 2:
+      /* Spans several slabs */
+      if (random.nextInt(50) == 0) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < LogBuffer.SLAB_SIZE + 100) {
+          sb.append(random.nextLong());
+        }
+        return sb.toString();
+      }
+      return "";
+    default:
+      return "message " + random.nextLong();
+    }
+  }
+
+  private static void testRandomWorkload(boolean dedup, long seed) {
+    String test = "workload " + seed + (dedup ? " (dedup)" : "");
+    Random random = new Random(seed);
+    LogBuffer buffer = new LogBuffer(Long.MAX_VALUE, dedup);
+    ArrayDeque<Entry> expected = new ArrayDeque<Entry>();
+    long removed = 0;
+    long time = 0;
+
+    for (int step = 0; step < 20000; step++) {
+      /* Alternate between growing and shrinking to wrap around */
+      boolean grow = (step / 1000) % 2 == 0;
+      if (random.nextInt(10) < (grow ? 7 : 3) || expected.isEmpty()) {
+        Entry e = new Entry(time += random.nextInt(3), random.nextInt(50), message(random));
+        buffer.add(e.time, e.moteID, e.msg);
+        expected.add(e);
+      } else {
+        buffer.removeFirst();
+        expected.removeFirst();
+        removed++;
+      }
+      if (step % 500 == 0) {
+        compare(test + ", step " + step, buffer, expected);
+      }
+    }
+    compare(test, buffer, expected);
+    check(buffer.getRemovedCount() == removed,
+        test + ": removed count " + buffer.getRemovedCount() + ", expected " + removed);
+  }
+
+  private static void testSlabFreeing() {
+    LogBuffer buffer = new LogBuffer(Long.MAX_VALUE, false);
+    String msg = new String(new char[1000]).replace('\0', 'x');
+    for (int i = 0; i < 1000; i++) {
+      buffer.add(i, 1, msg + i);
+    }
+    long usage = buffer.getMemoryUsage();
+    check(usage > 15*LogBuffer.SLAB_SIZE, "slabs: usage " + usage + " before removal");
+
+    for (int i = 0; i < 990; i++) {
+      buffer.removeFirst();
+    }
+    usage = buffer.getMemoryUsage();
+    check(usage <= 2*LogBuffer.SLAB_SIZE + 10*LogBuffer.ENTRY_SIZE,
+        "slabs: usage " + usage + " with 10 entries left");
+    check(buffer.getMessage(0).equals(msg + 990), "slabs: first message after removal");
+
+    while (!buffer.isEmpty()) {
+      buffer.removeFirst();
+    }
+    check(buffer.getMemoryUsage() == LogBuffer.SLAB_SIZE,
+        "slabs: usage " + buffer.getMemoryUsage() + " when empty, expected the slab being filled");
+
+    /* A message larger than a slab gets a slab of its own */
+    String large = new String(new char[LogBuffer.SLAB_SIZE*2]).replace('\0', 'y');
+    buffer.add(0, 1, large);
+    buffer.add(1, 1, "small");
+    check(buffer.getMessage(0).equals(large), "slabs: large message");
+    check(buffer.getMessage(1).equals("small"), "slabs: message after large message");
+  }
+
+  private static void testDedup() {
+    LogBuffer plain = new LogBuffer(Long.MAX_VALUE, false);
+    LogBuffer dedup = new LogBuffer(Long.MAX_VALUE, true);
+    String msg = new String(new char[200]).replace('\0', 'z');
+    for (int i = 0; i < 2000; i++) {
+      plain.add(i, 1, msg);
+      dedup.add(i, 1, msg);
+    }
+    check(dedup.getMemoryUsage() < plain.getMemoryUsage()/2,
+        "dedup: usage " + dedup.getMemoryUsage() + " vs " + plain.getMemoryUsage() + " without");
+    check(dedup.getMessage(0).equals(msg) && dedup.getMessage(1999).equals(msg),
+        "dedup: repeated message");
+
+    /* Interned messages outlive the slab that was current when added */
+    String filler = new String(new char[1000]).replace('\0', 'f');
+    for (int i = 0; i < 500; i++) {
+      dedup.add(i, 2, filler + i);
+      if (i % 10 == 0) {
+        dedup.add(i, 3, msg);
+      }
+    }
+    while (dedup.getMoteID(0) != 2) {
+      dedup.removeFirst();
+    }
+    for (int i = 0; i < 400; i++) {
+      dedup.removeFirst();
+    }
+    for (int i = 0; i < dedup.size(); i++) {
+      String expected = dedup.getMoteID(i) == 3 ? msg : filler;
+      check(dedup.getMessage(i).startsWith(expected), "dedup: message " + i + " after slab removal");
+    }
+
+    /* Messages that differ are never merged */
+    LogBuffer buffer = new LogBuffer(Long.MAX_VALUE, true);
+    for (int i = 0; i < 3; i++) {
+      buffer.add(i, 1, "a");
+      buffer.add(i, 1, "b");
+    }
+    for (int i = 0; i < 6; i++) {
+      check(buffer.getMessage(i).equals(i % 2 == 0 ? "a" : "b"), "dedup: message " + i);
+    }
+  }
+
+  private static void testFull() {
+    LogBuffer buffer = new LogBuffer(4*LogBuffer.SLAB_SIZE, false);
+    int added = 0;
+    while (!buffer.isFull()) {
+      buffer.add(added, 1, "message " + added);
+      added++;
+    }
+    check(added > 1000, "full: only " + added + " entries fit");
+    while (buffer.isFull()) {
+      buffer.removeFirst();
+    }
+    check(!buffer.isEmpty(), "full: empty after removing entries until not full");
+  }
+
+  private static void testViews() {
+    LogBuffer buffer = new LogBuffer(Long.MAX_VALUE, true);
+    for (int i = 0; i < 10; i++) {
+      buffer.add(i, i, "message " + i);
+    }
+    LogBuffer.View first = buffer.get(0);
+    LogBuffer.View fifth = buffer.get(5);
+    check(first.isValid() && fifth.isValid(), "views: valid when created");
+
+    buffer.removeFirst();
+    buffer.removeFirst();
+    check(!first.isValid(), "views: valid after entry was removed");
+    check(fifth.isValid() && fifth.getTime() == 5 && fifth.getMoteID() == 5 &&
+        fifth.getMessage().equals("message 5"), "views: entry changed after removing others");
+    try {
+      first.getMessage();
+      check(false, "views: removed entry read");
+    } catch (IllegalStateException e) {
+    }
+
+    long removed = buffer.getRemovedCount();
+    buffer.clear();
+    check(buffer.getRemovedCount() == removed + 8,
+        "views: removed count " + buffer.getRemovedCount() + " after clear, expected " + (removed + 8));
+    check(!fifth.isValid(), "views: valid after clear");
+
+    /* New entries at the same index are other entries */
+    for (int i = 0; i < 10; i++) {
+      buffer.add(100 + i, i, "new " + i);
+    }
+    check(!fifth.isValid(), "views: cleared entry valid after adding new entries");
+    check(buffer.get(3).getMessage().equals("new 3"), "views: view of new entry");
+  }
+
+  public static void main(String[] args) {
+    for (long seed = 0; seed < 5; seed++) {
+      testRandomWorkload(false, seed);
+      testRandomWorkload(true, seed);
+    }
+    testSlabFreeing();
+    testDedup();
+    testFull();
+    testViews();
+
+    if (failures > 0) {
+      System.err.println("LogBufferTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("LogBufferTest: OK");
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2008, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ */
+
+
+package org.contikios.cooja.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Checks that {@link LogStore} reads back the entries appended to it, across
+ * block and segment boundaries, while appending, and when reading the
+ * entries of a single mote. Run with "ant test".
+ */
+public class LogStoreTest {
+  private static final int SEGMENT = LogStore.SEGMENT_ENTRIES;
+  private static final int BLOCK = LogStore.INDEX_INTERVAL;
+  private static final int ENTRIES = 2*SEGMENT + 100;
+
+  private static int failures = 0;
+
+  private static void check(boolean ok, String msg) {
+    if (!ok) {
+      failures++;
+      if (failures <= 10) {
+        System.err.println("FAIL: " + msg);
+      }
+    }
+  }
+
+  /* Entry i: time 10*(i/2), so two entries per time */
+  private static long time(long i) {
+    return 10*(i/2);
+  }
+
+  /* Mote 1 only logs in the first and last segments */
+  private static int moteID(long i) {
+    if (i % 100 == 0 && (i < SEGMENT || i >= 2*SEGMENT)) {
+      return 1;
+    }
+    if (i % 1000 == 999) {
+      return -1;
+    }
+    return 2 + (int) (i % 5);
+  }
+
+  private static String message(long i) {
+    switch ((int) (i % 4)) {
+    case 0:
+      return "";
+    case 1:
+      return "åäö " + i;
+    default:
+      return "message " + i;
+    }
+  }
+
+  private static void checkEntry(String test, LogStore.Entry entry, long i) {
+    check(entry.time == time(i) && entry.moteID == moteID(i) && entry.msg.equals(message(i)),
+        test + ": entry is " + entry.time + " " + entry.moteID + " \"" + entry.msg +
+        "\", expected " + i);
+  }
+
+  private static void append(LogStore store, long from, long to) throws IOException {
+    for (long i = from; i < to; i++) {
+      store.append(time(i), moteID(i), message(i));
+    }
+  }
+
+  private static void testReads(LogStore store) throws IOException {
+    append(store, 0, ENTRIES);
+    check(store.size() == ENTRIES, "size " + store.size() + ", expected " + ENTRIES);
+
+    long[] indices = { 0, 1, BLOCK - 1, BLOCK, BLOCK + 1, SEGMENT - 1, SEGMENT, SEGMENT + 1,
+        2*SEGMENT - BLOCK, 2*SEGMENT, ENTRIES - 1 };
+    for (long i: indices) {
+      checkEntry("get " + i, store.get(i), i);
+    }
+
+    /* Reads crossing block and segment boundaries */
+    long[][] ranges = { { BLOCK - 10, 20 }, { SEGMENT - 70, 140 }, { 2*SEGMENT - 1, 2 },
+        { 0, 3*BLOCK }, { ENTRIES - 10, 10 } };
+    for (long[] range: ranges) {
+      String test = "read " + range[0] + "+" + range[1];
+      LogStore.Entry[] entries = store.read(range[0], (int) range[1]);
+      check(entries.length == range[1], test + ": " + entries.length + " entries");
+      for (int i = 0; i < entries.length; i++) {
+        checkEntry(test, entries[i], range[0] + i);
+      }
+    }
+    check(store.read(ENTRIES - 5, 10).length == 5, "read past end");
+    check(store.read(ENTRIES, 10).length == 0, "read at end");
+
+    /* Time lookup */
+    check(store.indexOf(-1) == 0, "indexOf before first entry");
+    check(store.indexOf(time(SEGMENT + 1)) == SEGMENT, "indexOf at segment start");
+    check(store.indexOf(time(BLOCK*3 + 1) - 5) == BLOCK*3, "indexOf between times");
+    check(store.indexOf(time(ENTRIES) + 10) == ENTRIES, "indexOf after last entry");
+  }
+
+  private static void testMoteReads(LogStore store) throws IOException {
+    /* Only the first and last segments contain mote 1. Removing the middle
+     * segment file fails reads of it, so mote 1 is only found if the
+     * segment is skipped. */
+    check(new File(store.getDirectory(), "log-1.seg").delete(), "remove middle segment file");
+
+    long[] indices = new long[1000];
+    LogStore.Entry[] entries = store.read(0, indices.length, 1, indices);
+    int expected = 0;
+    for (long i = 0; i < ENTRIES; i++) {
+      if (moteID(i) == 1) {
+        expected++;
+      }
+    }
+    check(entries.length == expected, "mote read: " + entries.length + " entries, expected " + expected);
+    long previous = -1;
+    for (int i = 0; i < entries.length; i++) {
+      check(indices[i] > previous, "mote read: indices not increasing");
+      checkEntry("mote read", entries[i], indices[i]);
+      check(entries[i].moteID == 1, "mote read: entry of mote " + entries[i].moteID);
+      previous = indices[i];
+    }
+
+    long first = 2*SEGMENT;
+    while (moteID(first) != 1) {
+      first++;
+    }
+    entries = store.read(SEGMENT + SEGMENT/2, 1, 1, indices);
+    check(entries.length == 1 && indices[0] == first, "mote read from middle: first index " +
+        (entries.length > 0 ? indices[0] : -1) + ", expected " + first);
+
+    entries = store.read(2*SEGMENT, 1000, -1, null);
+    check(entries.length == 0, "mote read of negative mote ID in last segment: " + entries.length);
+  }
+
+  private static void testReadWhileAppending() throws IOException {
+    LogStore store = LogStore.createTemporary("cooja-logstore-test");
+    append(store, 0, BLOCK + 10);
+
+    /* The last block is not complete, and must not be kept as read */
+    LogStore.Entry[] entries = store.read(BLOCK, 100);
+    check(entries.length == 10, "appending: " + entries.length + " entries, expected 10");
+    append(store, BLOCK + 10, SEGMENT + 10);
+    entries = store.read(BLOCK, 100);
+    check(entries.length == 100, "appending: " + entries.length + " entries, expected 100");
+    for (int i = 0; i < entries.length; i++) {
+      checkEntry("appending", entries[i], BLOCK + i);
+    }
+    checkEntry("appending, last entry", store.get(SEGMENT + 9), SEGMENT + 9);
+
+    store.clear();
+    check(store.size() == 0, "clear: size " + store.size());
+    check(store.getDirectory().list().length == 0, "clear: files left");
+    append(store, 0, 10);
+    checkEntry("append after clear", store.get(9), 9);
+
+    store.close();
+    check(!store.getDirectory().exists(), "close: directory left");
+  }
+
+  public static void main(String[] args) throws IOException {
+    LogStore store = LogStore.createTemporary("cooja-logstore-test");
+    try {
+      testReads(store);
+      testMoteReads(store);
+    } finally {
+      store.close();
+    }
+    testReadWhileAppending();
+
+    if (failures > 0) {
+      System.err.println("LogStoreTest: " + failures + " failures");
+      System.exit(1);
+    }
+    System.out.println("LogStoreTest: OK");
+  }
+}